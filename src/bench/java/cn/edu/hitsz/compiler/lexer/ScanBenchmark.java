@@ -0,0 +1,81 @@
+package cn.edu.hitsz.compiler.lexer;
+
+import cn.edu.hitsz.compiler.utils.FilePathConfig;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * 比较逐字符查转移表 (dfa), 连续段逐字节查表 (scalar) 与连续段向量比较 (vector) 三种扫描方式的吞吐量
+ * <br>
+ * 以 {@code ./gradlew benchmark} 运行, 可以用 {@code --args=vector} 只测量其中一种.
+ * 输入为程序生成的带有较深缩进, 较长标识符与数字的源程序, 放在堆外内存中以接近映射文件的情形.
+ *
+ * @author chiro
+ */
+public class ScanBenchmark {
+    private static final int STATEMENTS = 200_000;
+    private static final int WARMUP_ROUNDS = 5;
+    private static final int ROUNDS = 10;
+
+    private static ByteBuffer sampleSource() {
+        final var builder = new StringBuilder();
+        for (int i = 0; i < STATEMENTS; i++) {
+            final var indent = " ".repeat(4 + i % 64);
+            builder.append(indent).append("int accumulated_value_").append(i).append(";\n");
+            builder.append(indent).append("accumulated_value_").append(i).append(" = (previous_value_")
+                .append(i % 97).append(" + ").append(1_000_000 + i).append(") * scale_factor;\n");
+        }
+        builder.append("return accumulated_value_0;\n");
+        final var bytes = builder.toString().getBytes(StandardCharsets.US_ASCII);
+        return ByteBuffer.allocateDirect(bytes.length).put(bytes).flip();
+    }
+
+    /**
+     * @return 扫描到的词法单元数与长度之和, 防止扫描被优化掉
+     */
+    private static long scan(DfaTable dfa, ByteBuffer bytes, RunKernel kernel) {
+        final var scanner = new DfaScanner(dfa, new MappedCharSource(bytes, 0, bytes.limit()), kernel);
+        long checksum = 0;
+        int rule;
+        while ((rule = scanner.scan()) >= 0) {
+            checksum += rule + scanner.tokenLength();
+        }
+        return checksum;
+    }
+
+    private static void measure(String name, DfaTable dfa, ByteBuffer bytes, RunKernel kernel) {
+        long checksum = 0;
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            checksum += scan(dfa, bytes, kernel);
+        }
+        // 取各轮中最快的一轮, 以减少其它进程的干扰
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < ROUNDS; i++) {
+            final var begin = System.nanoTime();
+            checksum += scan(dfa, bytes, kernel);
+            best = Math.min(best, System.nanoTime() - begin);
+        }
+        final var megabytes = (double) bytes.limit() / (1 << 20);
+        System.out.printf("%-8s %8.1f MB/s  (checksum %d)\n", name, megabytes / (best / 1e9), checksum);
+    }
+
+    public static void main(String[] args) {
+        TokenKind.loadTokenKinds();
+        final var dfa = DfaGenerator.fromFile(FilePathConfig.TOKEN_SPEC_PATH);
+        final var bytes = sampleSource();
+        System.out.printf("input: %d bytes\n", bytes.limit());
+        // 同一 JVM 中先后测量多种扫描核心会污染调用点的类型剖析, 因此可以通过参数只测量其中一种
+        final var backends = args.length > 0 ? List.of(args) : List.of("dfa", "scalar", "vector");
+        for (final var backend : backends) {
+            final var kernel = switch (backend) {
+                case "dfa" -> null;
+                case "scalar" -> new RunKernel(dfa, bytes, false);
+                case "vector" -> new RunKernel(dfa, bytes, true);
+                default -> throw new IllegalArgumentException("Unknown backend: " + backend);
+            };
+            measure(backend, dfa, bytes, kernel);
+        }
+    }
+}
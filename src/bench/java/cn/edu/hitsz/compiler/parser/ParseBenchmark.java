@@ -0,0 +1,131 @@
+package cn.edu.hitsz.compiler.parser;
+
+import cn.edu.hitsz.compiler.lexer.LexicalAnalyzer;
+import cn.edu.hitsz.compiler.lexer.Token;
+import cn.edu.hitsz.compiler.lexer.TokenBuffer;
+import cn.edu.hitsz.compiler.lexer.TokenKind;
+import cn.edu.hitsz.compiler.parser.generated.GeneratedParser;
+import cn.edu.hitsz.compiler.parser.table.CompiledLRTable;
+import cn.edu.hitsz.compiler.parser.table.Production;
+import cn.edu.hitsz.compiler.parser.table.Status;
+import cn.edu.hitsz.compiler.parser.table.TableLoader;
+import cn.edu.hitsz.compiler.parser.table.TableOptimizer;
+import cn.edu.hitsz.compiler.symtab.SymbolTable;
+import cn.edu.hitsz.compiler.utils.FilePathConfig;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+/**
+ * 比较查表驱动的 {@link SyntaxAnalyzer} (table) 与生成的直接编码分析器 (direct) 的吞吐量
+ * <br>
+ * 以 {@code ./gradlew parserBenchmark} 运行, 可以用 {@code --args=direct} 只测量其中一种.
+ * 两者使用同一份词法单元序列, 并注册同一个只统计规约的观察者, 测量的主要是驱动程序本身的开销.
+ *
+ * @author chiro
+ */
+public class ParseBenchmark {
+    private static final int STATEMENTS = 200_000;
+    private static final int WARMUP_ROUNDS = 5;
+    private static final int ROUNDS = 10;
+
+    /**
+     * 只统计规约的产生式编号之和的观察者, 防止分析被优化掉
+     */
+    private static class Checksum implements ActionObserver {
+        private long sum = 0;
+
+        @Override
+        public void whenShift(Status currentStatus, Token currentToken) {
+        }
+
+        @Override
+        public void whenReduce(Status currentStatus, Production production) {
+            sum += production.index();
+        }
+
+        @Override
+        public void whenAccept(Status currentStatus) {
+            sum++;
+        }
+
+        @Override
+        public void setSymbolTable(SymbolTable table) {
+        }
+
+        @Override
+        public boolean caresAboutShift() {
+            return false;
+        }
+    }
+
+    private static TokenBuffer sampleTokens(SymbolTable symbolTable) throws IOException {
+        final var builder = new StringBuilder();
+        for (int i = 0; i < STATEMENTS; i++) {
+            builder.append("int v").append(i).append(";\n");
+            builder.append("v").append(i).append(" = (v").append(i / 2).append(" + ").append(i)
+                .append(") * (v").append(i / 3).append(" - 7) + v0;\n");
+        }
+        builder.append("return v0;\n");
+        final var file = Files.createTempFile("parse", ".txt");
+        try {
+            Files.writeString(file, builder, StandardCharsets.US_ASCII);
+            final var lexer = new LexicalAnalyzer(symbolTable);
+            lexer.loadFile(file.toString());
+            lexer.run();
+            return lexer.getTokenBuffer();
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    private static long parse(String backend, SymbolTable symbolTable, TokenBuffer tokens, CompiledLRTable table) {
+        final var checksum = new Checksum();
+        switch (backend) {
+            case "table" -> {
+                final var parser = new SyntaxAnalyzer(symbolTable);
+                parser.loadTokens(tokens.cursor());
+                parser.loadLRTable(table);
+                parser.registerObserver(checksum);
+                parser.run();
+            }
+            case "direct" -> {
+                final var parser = new GeneratedParser(symbolTable);
+                parser.loadTokens(tokens.cursor());
+                parser.registerObserver(checksum);
+                parser.run();
+            }
+            default -> throw new IllegalArgumentException("Unknown backend: " + backend);
+        }
+        return checksum.sum;
+    }
+
+    private static void measure(String backend, SymbolTable symbolTable, TokenBuffer tokens, CompiledLRTable table) {
+        long checksum = 0;
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            checksum += parse(backend, symbolTable, tokens, table);
+        }
+        // 取各轮中最快的一轮, 以减少其它进程的干扰
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < ROUNDS; i++) {
+            final var begin = System.nanoTime();
+            checksum += parse(backend, symbolTable, tokens, table);
+            best = Math.min(best, System.nanoTime() - begin);
+        }
+        System.out.printf("%-8s %8.1f Mtokens/s  (checksum %d)\n", backend, tokens.size() / (best / 1e3), checksum);
+    }
+
+    public static void main(String[] args) throws IOException {
+        TokenKind.loadTokenKinds();
+        final var symbolTable = new SymbolTable();
+        final var tokens = sampleTokens(symbolTable);
+        final var table = TableOptimizer.compile(new TableLoader().load(FilePathConfig.LR1_TABLE_PATH));
+        System.out.printf("input: %d tokens\n", tokens.size());
+        final var backends = args.length > 0 ? List.of(args) : List.of("table", "direct");
+        for (final var backend : backends) {
+            measure(backend, symbolTable, tokens, table);
+        }
+    }
+}
@@ -1,19 +1,26 @@
 package cn.edu.hitsz.compiler;
 
 import cn.edu.hitsz.compiler.asm.AssemblyGenerator;
+import cn.edu.hitsz.compiler.ir.ConstantFolder;
 import cn.edu.hitsz.compiler.lexer.LexicalAnalyzer;
 import cn.edu.hitsz.compiler.lexer.TokenKind;
+import cn.edu.hitsz.compiler.parser.ActionObserver;
 import cn.edu.hitsz.compiler.parser.IRGenerator;
+import cn.edu.hitsz.compiler.parser.ParseEventLog;
 import cn.edu.hitsz.compiler.parser.ProductionCollector;
 import cn.edu.hitsz.compiler.parser.SemanticAnalyzer;
 import cn.edu.hitsz.compiler.parser.SyntaxAnalyzer;
+import cn.edu.hitsz.compiler.parser.table.CompiledLRTable;
 import cn.edu.hitsz.compiler.parser.table.GrammarInfo;
 import cn.edu.hitsz.compiler.parser.table.TableLoader;
+import cn.edu.hitsz.compiler.parser.table.TableOptimizer;
+import cn.edu.hitsz.compiler.parser.table.TableSnapshot;
 import cn.edu.hitsz.compiler.symtab.SymbolTable;
 import cn.edu.hitsz.compiler.utils.FilePathConfig;
 import cn.edu.hitsz.compiler.utils.FileUtils;
 import cn.edu.hitsz.compiler.utils.IREmulator;
 
+import java.util.List;
 import java.util.Objects;
 
 /**
@@ -25,64 +32,106 @@ public class Main {
         TokenKind.loadTokenKinds();
         final var symbolTable = new SymbolTable();
 
-        // 词法分析
-        final var lexer = new LexicalAnalyzer(symbolTable);
-        lexer.loadFile(RunConfigs.OVERRIDE_INPUT_CODE.isEmpty() ? FilePathConfig.SRC_CODE_PATH : RunConfigs.OVERRIDE_INPUT_CODE);
-        lexer.run();
-        lexer.dumpTokens(FilePathConfig.TOKEN_PATH);
-        final var tokens = lexer.getTokens();
-        symbolTable.dumpTable(FilePathConfig.OLD_SYMBOL_TABLE);
-
-        // 读取第三方程序构造的 LR 分析表
-        final var tableLoader = new TableLoader();
-        final var lrTable = tableLoader.load(FilePathConfig.LR1_TABLE_PATH);
-
-        // // 或使用框架自带部分直接从 grammar.txt 构造 LR 分析表
-        // final var tableGenerator = new TableGenerator();
-        // tableGenerator.run();
-        // final var lrTable = tableGenerator.getTable();
-        // lrTable.dumpTable("data/out/lrTable.csv");
-
-        // 加载 LR 分析驱动程序
-        final var parser = new SyntaxAnalyzer(symbolTable);
-        parser.loadTokens(tokens);
-        parser.loadLRTable(lrTable);
-
-        // 加入生成规约列表的 Observer
+        // 生成规约列表的 Observer
         final var productionCollector = new ProductionCollector(GrammarInfo.getBeginProduction());
-        parser.registerObserver(productionCollector);
 
-        // 加入用作语义检查的 Observer
+        // 用作语义检查的 Observer
         final var semanticAnalyzer = new SemanticAnalyzer();
-        parser.registerObserver(semanticAnalyzer);
 
-        // 加入用作 IR 生成的 Observer
+        // 用作 IR 生成的 Observer
         final var irGenerator = new IRGenerator();
-        parser.registerObserver(irGenerator);
 
-        // 执行语法解析并在解析过程中依次调用各 Observer
-        parser.run();
-        if (RunConfigs.DEBUG) {
-            System.out.println("Parser run done!");
+        final List<ActionObserver> observers = List.of(productionCollector, semanticAnalyzer, irGenerator);
+        if (RunConfigs.PARSER_REPLAY_EVENTS) {
+            // 回放之前记录的分析事件, 跳过词法分析与语法分析
+            // 回放时没有 LR 分析表, 观察者收到的 Status 只带有编号, 其 ACTION 与 GOTO 表项均为空
+            final var replayer = new ParseEventLog.Replayer(symbolTable);
+            observers.forEach(replayer::registerObserver);
+            replayer.run(FilePathConfig.PARSE_EVENT_LOG_PATH);
+        } else {
+            runFrontEnd(symbolTable, observers);
         }
 
         // 各 Observer 输出结果
         productionCollector.dumpToFile(FilePathConfig.PARSER_PATH);
         symbolTable.dumpTable(FilePathConfig.NEW_SYMBOL_TABLE);
-        final var instructions = irGenerator.getIR();
+        final var instructions = irGenerator.getIRBuffer();
         irGenerator.dumpIR(FilePathConfig.INTERMEDIATE_CODE_PATH);
 
         // 模拟执行 IR 并输出结果
         final var emulator = IREmulator.load(instructions);
         FileUtils.writeFile(FilePathConfig.EMULATE_RESULT, emulator.execute().map(Objects::toString).orElse("No return value"));
 
+        // 常量传播与折叠, 只影响生成的汇编
+        if (RunConfigs.IR_CONSTANT_FOLDING) {
+            ConstantFolder.fold(instructions);
+        }
+
         // 由 IR 生成汇编
         final var asmGenerator = new AssemblyGenerator();
-        asmGenerator.loadIR(instructions);
+        asmGenerator.loadIR(instructions.toInstructions());
         asmGenerator.run();
         asmGenerator.dump(FilePathConfig.ASSEMBLY_LANGUAGE_PATH);
     }
 
+    /**
+     * 词法分析与语法分析, 在语法分析过程中依次调用各 Observer
+     *
+     * @param symbolTable 符号表
+     * @param observers   Observer
+     */
+    private static void runFrontEnd(SymbolTable symbolTable, List<ActionObserver> observers) {
+        // 词法分析
+        final var lexer = new LexicalAnalyzer(symbolTable);
+        lexer.loadFile(RunConfigs.OVERRIDE_INPUT_CODE.isEmpty() ? FilePathConfig.SRC_CODE_PATH : RunConfigs.OVERRIDE_INPUT_CODE);
+        if (RunConfigs.LEXER_STREAMING) {
+            // 按需分析: 语法分析拉取词法单元时才进行词法分析, 词法单元与语义分析前的符号表顺带写入文件
+            lexer.teeTokens(FilePathConfig.TOKEN_PATH);
+            lexer.teeSymbolTable(FilePathConfig.OLD_SYMBOL_TABLE);
+        } else {
+            lexer.run();
+            lexer.dumpTokens(FilePathConfig.TOKEN_PATH);
+            symbolTable.dumpTable(FilePathConfig.OLD_SYMBOL_TABLE);
+        }
+
+        // 读取第三方程序构造的 LR 分析表, 优先使用由它编译出的快照
+        final CompiledLRTable lrTable;
+        if (RunConfigs.PARSER_TABLE_SNAPSHOT) {
+            lrTable = TableSnapshot.load(FilePathConfig.LR1_TABLE_PATH, FilePathConfig.LR1_TABLE_SNAPSHOT_PATH,
+                RunConfigs.PARSER_OPTIMIZE_TABLE, FilePathConfig.GRAMMAR_PATH, FilePathConfig.CODING_MAP_PATH);
+        } else {
+            final var csv = new TableLoader().load(FilePathConfig.LR1_TABLE_PATH);
+            lrTable = RunConfigs.PARSER_OPTIMIZE_TABLE ? TableOptimizer.compile(csv) : CompiledLRTable.compile(csv);
+        }
+
+        // // 或使用框架自带部分直接从 grammar.txt 构造 LR 分析表 (SLR, LALR 或 LR1)
+        // final var tableGenerator = new TableGenerator(TableGenerator.Mode.LALR);
+        // tableGenerator.run();
+        // final var lrTable = tableGenerator.getTable();
+        // lrTable.dumpTable("data/out/lrTable.csv");
+
+        // 加载 LR 分析驱动程序
+        final var parser = new SyntaxAnalyzer(symbolTable);
+        if (RunConfigs.LEXER_STREAMING) {
+            parser.loadTokens(lexer.getTokenCursor());
+        } else {
+            // 完整的词法单元序列可以在语句之间切分, 按语句并行分析
+            parser.loadTokens(lexer.getTokenBuffer());
+        }
+        parser.loadLRTable(lrTable);
+
+        if (RunConfigs.PARSER_RECORD_EVENTS) {
+            parser.recordEvents(FilePathConfig.PARSE_EVENT_LOG_PATH);
+        }
+        observers.forEach(parser::registerObserver);
+
+        // 执行语法解析并在解析过程中依次调用各 Observer
+        parser.run();
+        if (RunConfigs.DEBUG) {
+            System.out.println("Parser run done!");
+        }
+    }
+
     public static void main(String[] args) {
         if (RunConfigs.RUN_MAIN_WITH_CATCH) {
             try {
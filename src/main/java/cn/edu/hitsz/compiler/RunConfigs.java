@@ -9,6 +9,22 @@ public class RunConfigs {
     // public static final String OVERRIDE_INPUT_CODE = "data/in/reg-alloc.txt";
     public static final String OVERRIDE_INPUT_CODE = "";
     public static final boolean DEBUG = false;
-    public static final int FILE_READER_BUFFER_SIZE = 4;
+    public static final int LEXER_RING_BUFFER_SIZE = 4096;
+    public static final boolean LEXER_MEMORY_MAPPED = true;
+    public static final boolean LEXER_STREAMING = false;
+    public static final boolean LEXER_VECTORIZED = true;
+    public static final boolean LEXER_PARALLEL = false;
+    public static final int LEXER_PARALLEL_CHUNK_SIZE = 64 * 1024;
+    public static final boolean PARSER_TABLE_SNAPSHOT = true;
+    public static final boolean PARSER_OPTIMIZE_TABLE = true;
+    public static final boolean PARSER_SKIP_UNIT_REDUCTIONS = true;
+    public static final boolean PARSER_PROFILE_OBSERVERS = false;
+    public static final boolean PARSER_CONCURRENT_OBSERVERS = false;
+    public static final int PARSER_EVENT_RING_SIZE = 1024;
+    public static final boolean PARSER_RECORD_EVENTS = false;
+    public static final boolean PARSER_REPLAY_EVENTS = false;
+    public static final boolean PARSER_PARALLEL = false;
+    public static final int PARSER_PARALLEL_CHUNK_SIZE = 16 * 1024;
+    public static final boolean IR_CONSTANT_FOLDING = true;
     public static final int REGS_BUFFER_BASE = 0x100;
 }
@@ -28,12 +28,17 @@ public class AssemblyGenerator {
     protected final List<String> assemblyCode = new LinkedList<>();
     protected final List<IRVariable> regMap = new ArrayList<>();
     protected final Map<IRValue, Integer> variableMap = new HashMap<>();
+    /**
+     * 代码生成中额外需要的临时变量, 与前端的变量互不等价
+     */
+    protected final IRVariableFactory scratchVariables = new IRVariableFactory();
     protected final Map<InstructionKind, String> asmTemplates = Map.of(
             InstructionKind.MOV, "mv %rd, %rs1",
             InstructionKind.MUL, "mul %rd, %rs1, %rs2",
             InstructionKind.ADD, "add %rd, %rs1, %rs2",
             InstructionKind.SUB, "sub %rd, %rs1, %rs2",
             InstructionKind.ADDI, "addi %rd, %rs1, %imm",
+            InstructionKind.LI, "li %rd, %imm",
             InstructionKind.LW, "lw %rd, %offset(%rs1)",
             InstructionKind.SW, "sw %rs2, %offset(%rs1)"
     );
@@ -83,7 +88,7 @@ public class AssemblyGenerator {
             if (isEmpty()) {
                 return false;
             }
-            return this.stream().map(i -> i.r == r).reduce((a, b) -> a || b).get();
+            return this.stream().map(i -> i.r.equals(r)).reduce((a, b) -> a || b).get();
         }
 
         public boolean hasValid(IRVariable r) {
@@ -94,7 +99,7 @@ public class AssemblyGenerator {
                 return false;
             }
             return this.stream()
-                    .filter(i -> i.r != r)
+                    .filter(i -> !i.r.equals(r))
                     .map(i -> i.valid)
                     .reduce((a, b) -> a | b)
                     .orElse(false);
@@ -102,7 +107,7 @@ public class AssemblyGenerator {
 
         public int indexOf(IRVariable r) {
             for (int i = 0; i < size(); i++) {
-                if (get(i).r == r) {
+                if (get(i).r.equals(r)) {
                     return i;
                 }
             }
@@ -111,7 +116,7 @@ public class AssemblyGenerator {
 
         public void setValid(IRVariable r) {
             for (int i = 0; i < size(); i++) {
-                if (get(i).r == r) {
+                if (get(i).r.equals(r)) {
                     set(i, new VariableInBuffer(get(i).r, true));
                 }
             }
@@ -119,7 +124,7 @@ public class AssemblyGenerator {
 
         public void setInvalid(IRVariable r) {
             for (int i = 0; i < size(); i++) {
-                if (get(i).r == r) {
+                if (get(i).r.equals(r)) {
                     set(i, new VariableInBuffer(get(i).r, false));
                 }
             }
@@ -314,6 +319,21 @@ public class AssemblyGenerator {
         assemblyCode.add(applyInstructionToAsm(kind, rd, rs1, rs2, imm, true));
     }
 
+    /**
+     * 把立即数装入变量. addi 只能带 12 位有符号立即数, 超出范围时使用伪指令 li
+     */
+    protected void applyLoadImmediate(IRVariable rd, IRImmediate imm) {
+        if (fitsAddi(imm)) {
+            apply(InstructionKind.ADDI, rd, regZero, null, imm);
+        } else {
+            apply(InstructionKind.LI, rd, null, null, imm);
+        }
+    }
+
+    protected static boolean fitsAddi(IRImmediate imm) {
+        return imm.getValue() >= -2048 && imm.getValue() < 2048;
+    }
+
     protected void applyLoad(InstructionKind kind, IRValue rd, IRValue rs1, int offset) {
         updateArrangeRegs(rd, rs1);
         assemblyCode.add(asmTemplates.get(kind)
@@ -412,7 +432,7 @@ public class AssemblyGenerator {
             switch (insn.getKind()) {
                 case MOV -> {
                     if (insn.getFrom().isImmediate()) {
-                        apply(InstructionKind.ADDI, insn.getResult(), regZero, null, (IRImmediate) insn.getFrom());
+                        applyLoadImmediate(insn.getResult(), (IRImmediate) insn.getFrom());
                     } else {
                         apply(insn.getKind(), insn.getResult(), insn.getFrom(), null, null);
                     }
@@ -424,11 +444,11 @@ public class AssemblyGenerator {
                     if (hasImm) {
                         var imm = (IRImmediate) (isImm.get(0) ? insn.getLHS() : insn.getRHS());
                         var r2 = (IRVariable) (isImm.get(1) ? insn.getLHS() : insn.getRHS());
-                        if (insn.getKind() != InstructionKind.ADD) {
+                        if (insn.getKind() != InstructionKind.ADD || !fitsAddi(imm)) {
                             // SUB/MUL has not imm, generate a template to hold it
-                            var temp = IRVariable.temp();
+                            var temp = scratchVariables.temp();
                             // var temp = IRVariable.named("tmp_imm");
-                            apply(InstructionKind.ADDI, temp, regZero, null, imm);
+                            applyLoadImmediate(temp, imm);
                             if (isImm.get(0)) {
                                 apply(insn.getKind(), rd, temp, insn.getRHS(), null);
                             } else {
@@ -448,7 +468,12 @@ public class AssemblyGenerator {
                     applySave(insn.getKind(), insn.getLHS(), insn.getRHS(), 0);
                 }
                 case RET -> {
-                    apply(InstructionKind.MOV, regRet, insn.getReturnValue(), null, null);
+                    if (insn.getReturnValue().isImmediate()) {
+                        // 常量折叠之后可能直接返回立即数
+                        applyLoadImmediate(regRet, (IRImmediate) insn.getReturnValue());
+                    } else {
+                        apply(InstructionKind.MOV, regRet, insn.getReturnValue(), null, null);
+                    }
                 }
                 default -> {
                     throw new RuntimeException(ErrorDescription.NO_INSTR.formatted(insn));
@@ -8,6 +8,8 @@ package cn.edu.hitsz.compiler.error;
 public class ErrorDescription {
     public final static String NO_SYMBOL = "No such symbol: %s";
     public final static String HAS_SYMBOL = "Duplicated symbol: %s";
-    public final static String LEX_NO_STATE = "No such DFA State: %d";
+    public final static String LEX_UNEXPECTED_CHAR = "Unexpected character '%c' at %d";
+    public final static String LEX_INT_OUT_OF_RANGE = "Integer literal out of range at %d";
+    public final static String LEX_BAD_SPEC = "Bad lexer spec at line %d: %s";
     public final static String NO_INSTR = "No such instruction: %s";
 }
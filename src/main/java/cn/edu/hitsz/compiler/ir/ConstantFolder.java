@@ -0,0 +1,95 @@
+package cn.edu.hitsz.compiler.ir;
+
+import java.util.BitSet;
+
+/**
+ * IR 上的常量传播与折叠
+ * <br>
+ * IR 是没有分支的直线代码, 因此按顺序扫描一遍即可: 记录每个变量当前是否为已知的常量, 把读到的已知变量替换为立即数,
+ * 两个操作数都是立即数的 ADD, SUB, MUL 按 32 位补码回绕的语义算出结果, 改写为 MOV 立即数.
+ * <br>
+ * 之后从后向前删除结果不再被读取的指令. 程序唯一可观察的效果是返回值, 所以只保留最后一条 RET, 之前的 RET 会被覆盖, 也一并删除.
+ * 完全由常量组成的程序最终只剩下一条返回立即数的 RET.
+ *
+ * @author chiro
+ */
+public final class ConstantFolder {
+    private ConstantFolder() {
+    }
+
+    /**
+     * 原地折叠, 结束后缓冲区中不留墓碑
+     *
+     * @param code 指令
+     */
+    public static void fold(InstructionBuffer code) {
+        propagate(code);
+        removeDeadCode(code);
+        code.compact();
+    }
+
+    private static void propagate(InstructionBuffer code) {
+        final var values = new int[code.variableCount()];
+        final var known = new BitSet(code.variableCount());
+        final var cursor = code.cursor();
+        while (cursor.advance()) {
+            if (!cursor.isLhsImmediate() && cursor.lhs() != InstructionBuffer.NONE && known.get(cursor.lhs())) {
+                cursor.setLhs(values[cursor.lhs()], true);
+            }
+            if (!cursor.isRhsImmediate() && cursor.rhs() != InstructionBuffer.NONE && known.get(cursor.rhs())) {
+                cursor.setRhs(values[cursor.rhs()], true);
+            }
+            final var kind = cursor.kind();
+            if (kind.isReturn()) {
+                continue;
+            }
+            final var result = cursor.result();
+            final var constant = cursor.isLhsImmediate() && (kind.isUnary() || cursor.isRhsImmediate());
+            if (!constant) {
+                known.clear(result);
+                continue;
+            }
+            final var lhs = cursor.lhs();
+            final var rhs = cursor.rhs();
+            // noinspection AlibabaSwitchStatement
+            final var value = switch (kind) {
+                case MOV -> lhs;
+                case ADD -> lhs + rhs;
+                case SUB -> lhs - rhs;
+                case MUL -> lhs * rhs;
+                default -> throw new RuntimeException("Unexpected instruction kind in IR: " + kind);
+            };
+            cursor.set(InstructionKind.MOV, result, value, true, InstructionBuffer.NONE, false);
+            values[result] = value;
+            known.set(result);
+        }
+    }
+
+    private static void removeDeadCode(InstructionBuffer code) {
+        final var live = new BitSet(code.variableCount());
+        var returned = false;
+        for (int i = code.size() - 1; i >= 0; i--) {
+            if (code.isRemoved(i)) {
+                continue;
+            }
+            if (code.kind(i).isReturn()) {
+                if (returned) {
+                    code.remove(i);
+                    continue;
+                }
+                returned = true;
+            } else if (live.get(code.result(i))) {
+                live.clear(code.result(i));
+            } else {
+                code.remove(i);
+                continue;
+            }
+            if (!code.isLhsImmediate(i) && code.lhs(i) != InstructionBuffer.NONE) {
+                live.set(code.lhs(i));
+            }
+            if (!code.isRhsImmediate(i) && code.rhs(i) != InstructionBuffer.NONE) {
+                live.set(code.rhs(i));
+            }
+        }
+    }
+}
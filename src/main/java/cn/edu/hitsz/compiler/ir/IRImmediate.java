@@ -2,9 +2,24 @@ package cn.edu.hitsz.compiler.ir;
 
 /**
  * IR 中的立即数
+ * <br>
+ * 与 {@link Integer#valueOf(int)} 相同, 较小的立即数会被缓存, 因此不应以 == 比较立即数.
  */
 public class IRImmediate implements IRValue {
+    private static final int CACHE_LOW = -128;
+    private static final int CACHE_HIGH = 127;
+    private static final IRImmediate[] CACHE = new IRImmediate[CACHE_HIGH - CACHE_LOW + 1];
+
+    static {
+        for (int i = 0; i < CACHE.length; i++) {
+            CACHE[i] = new IRImmediate(CACHE_LOW + i);
+        }
+    }
+
     public static IRImmediate of(int value) {
+        if (value >= CACHE_LOW && value <= CACHE_HIGH) {
+            return CACHE[value - CACHE_LOW];
+        }
         return new IRImmediate(value);
     }
 
@@ -1,33 +1,63 @@
 package cn.edu.hitsz.compiler.ir;
 
+import cn.edu.hitsz.compiler.symtab.SymbolTable;
+
 /**
  * IR 中的 "变量"
  * <br>
  * 我们允许 IR 中的变量保存一些有关源语言的信息 -- 比如它在源语言里对应的是具体的源语言变量还是源语言中的临时变量. 这些信息用一个字符串
  * name 来表示. 临时变量的 name 都是 "$[0-9]+", 而非临时变量的 name 都是 "[a-zA-Z_][a-zA-Z0-9_]*"
  * <br>
- * IR 变量的等价性由 name 唯一确定.
+ * 一次编译中的变量由 {@link IRVariableFactory} 创建, 同一个变量只有一个对象, 并带有工厂内从 0 开始的稠密编号,
+ * 因此工厂创建的 IR 变量的等价性就是对象的同一性, 之后的阶段可以用编号索引数组或位图. 源语言变量还可以携带其在符号表中的编号,
+ * 以便之后的阶段直接以编号取得符号表条目.
+ * <br>
+ * 由 {@link #named(String)} 与 {@link #temp()} 创建的变量不属于任何工厂, 它们的等价性仍由 name 唯一确定;
+ * 它们与工厂创建的变量总是不等价的, 即使 name 相同.
  */
 public class IRVariable implements IRValue {
     /**
+     * 不属于任何 {@link IRVariableFactory} 的变量的编号
+     */
+    public static final int NO_ID = -1;
+
+    /**
+     * 创建不属于任何工厂的变量, 用于后端中代表寄存器等的常量, 与同名的不属于任何工厂的变量等价
+     *
      * @param name 源语言中变量的名字
      * @return 一个对应于源语言中具体变量的 IRVariable
      */
     public static IRVariable named(String name) {
-        return new IRVariable(name);
+        return new IRVariable(name, SymbolTable.NO_ID, NO_ID);
     }
 
     /**
+     * 创建不属于任何工厂的临时变量, 编号在整个 JVM 中共享. 编译过程使用本次编译的 {@link IRVariableFactory#temp()}
+     *
      * @return 一个对应于源语言中的临时变量的新 IRVariable
      */
     public static IRVariable temp() {
-        return new IRVariable("$" + count++);
+        return new IRVariable("$" + count++, SymbolTable.NO_ID, NO_ID);
     }
 
     public String getName() {
         return name;
     }
 
+    /**
+     * @return 该变量在符号表中的编号, 临时变量或未知时返回 {@link SymbolTable#NO_ID}
+     */
+    public int getSymbolId() {
+        return symbolId;
+    }
+
+    /**
+     * @return 该变量在创建它的 {@link IRVariableFactory} 中的编号, 不属于任何工厂时返回 {@link #NO_ID}
+     */
+    public int getId() {
+        return id;
+    }
+
     public boolean isTemp() {
         return name.startsWith("$");
     }
@@ -43,18 +73,24 @@ public class IRVariable implements IRValue {
 
     @Override
     public boolean equals(Object obj) {
-        return obj instanceof IRVariable reg && name.equals(reg.name);
+        return this == obj
+            || id == NO_ID && obj instanceof IRVariable variable && variable.id == NO_ID && name.equals(variable.name);
     }
 
     @Override
     public int hashCode() {
-        return name.hashCode();
+        // 以编号作为哈希值, 使哈希表的遍历顺序确定
+        return id == NO_ID ? name.hashCode() : id;
     }
 
-    private IRVariable(String name) {
+    IRVariable(String name, int symbolId, int id) {
         this.name = name;
+        this.symbolId = symbolId;
+        this.id = id;
     }
 
     private final String name;
+    private final int symbolId;
+    private final int id;
     private static int count = 0;
 }
@@ -0,0 +1,90 @@
+package cn.edu.hitsz.compiler.ir;
+
+import cn.edu.hitsz.compiler.symtab.SymbolTable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 一次编译中的 IR 变量
+ * <br>
+ * 源语言变量按名字驻留, 同名的变量总是同一个对象; 临时变量按创建顺序命名为 "$0", "$1", ..., 计数只属于本工厂.
+ * 每个变量都带有按创建顺序分配的稠密编号 (见 {@link IRVariable#getId()}), 所有编号都小于 {@link #size()}.
+ * <br>
+ * 工厂不是线程安全的. 按语句并行生成 IR 时每个语句块使用自己的工厂, 并入时再换成主工厂中的变量.
+ *
+ * @author chiro
+ */
+public final class IRVariableFactory {
+    private static final int INITIAL_SYMBOL_CAPACITY = 256;
+
+    private final List<IRVariable> variables = new ArrayList<>();
+    private final Map<String, IRVariable> namedVariables = new HashMap<>();
+    /**
+     * 符号编号到源语言变量的缓存, 免去按名字查找
+     */
+    private IRVariable[] symbolVariables = new IRVariable[INITIAL_SYMBOL_CAPACITY];
+    private int temps = 0;
+
+    /**
+     * @param name 源语言中变量的名字
+     * @return 该名字对应的源语言变量
+     */
+    public IRVariable named(String name) {
+        return named(name, SymbolTable.NO_ID);
+    }
+
+    /**
+     * @param name     源语言中变量的名字
+     * @param symbolId 该变量在符号表中的编号, 未知时为 {@link SymbolTable#NO_ID}
+     * @return 该名字对应的源语言变量
+     */
+    public IRVariable named(String name, int symbolId) {
+        if (symbolId != SymbolTable.NO_ID && symbolId < symbolVariables.length && symbolVariables[symbolId] != null) {
+            return symbolVariables[symbolId];
+        }
+        var variable = namedVariables.get(name);
+        if (variable == null) {
+            variable = create(name, symbolId);
+            namedVariables.put(name, variable);
+        }
+        if (symbolId != SymbolTable.NO_ID) {
+            if (symbolId >= symbolVariables.length) {
+                symbolVariables = Arrays.copyOf(symbolVariables, Math.max(symbolId + 1, symbolVariables.length * 2));
+            }
+            symbolVariables[symbolId] = variable;
+        }
+        return variable;
+    }
+
+    /**
+     * @return 一个新的临时变量
+     */
+    public IRVariable temp() {
+        return create("$" + temps++, SymbolTable.NO_ID);
+    }
+
+    /**
+     * @param id 变量的编号
+     * @return 该编号对应的变量
+     */
+    public IRVariable get(int id) {
+        return variables.get(id);
+    }
+
+    /**
+     * @return 变量的数量
+     */
+    public int size() {
+        return variables.size();
+    }
+
+    private IRVariable create(String name, int symbolId) {
+        final var variable = new IRVariable(name, symbolId, variables.size());
+        variables.add(variable);
+        return variable;
+    }
+}
@@ -1,6 +1,7 @@
 package cn.edu.hitsz.compiler.ir;
 
 import java.util.Collections;
+import java.util.EnumSet;
 import java.util.List;
 import java.util.Objects;
 import java.util.Set;
@@ -27,6 +28,15 @@ import java.util.stream.Collectors;
  * 那不如直接怎么写死怎么来, 用枚举确定类型, 用 getter 包装不同类型的不同参数的访问, 用 createXXX 方法模拟子类构造函数.
  */
 public class Instruction {
+    /**
+     * 各个 getter 接受的指令种类, 预先构造好以免每次访问都创建集合
+     */
+    private static final Set<InstructionKind> WITH_RESULT =
+        EnumSet.of(InstructionKind.ADD, InstructionKind.SUB, InstructionKind.MUL, InstructionKind.MOV);
+    private static final Set<InstructionKind> BINARY = EnumSet.of(InstructionKind.ADD, InstructionKind.SUB, InstructionKind.MUL);
+    private static final Set<InstructionKind> UNARY = EnumSet.of(InstructionKind.MOV);
+    private static final Set<InstructionKind> RETURN = EnumSet.of(InstructionKind.RET);
+
     //============================== 不同种类 IR 的构造函数 ==============================
     public static Instruction createAdd(IRVariable result, IRValue lhs, IRValue rhs) {
         return new Instruction(InstructionKind.ADD, result, List.of(lhs, rhs));
@@ -55,27 +65,27 @@ public class Instruction {
     }
 
     public IRVariable getResult() {
-        ensureKindMatch(Set.of(InstructionKind.ADD, InstructionKind.SUB, InstructionKind.MUL, InstructionKind.MOV));
+        ensureKindMatch(WITH_RESULT);
         return result;
     }
 
     public IRValue getLHS() {
-        ensureKindMatch(Set.of(InstructionKind.ADD, InstructionKind.SUB, InstructionKind.MUL));
+        ensureKindMatch(BINARY);
         return operands.get(0);
     }
 
     public IRValue getRHS() {
-        ensureKindMatch(Set.of(InstructionKind.ADD, InstructionKind.SUB, InstructionKind.MUL));
+        ensureKindMatch(BINARY);
         return operands.get(1);
     }
 
     public IRValue getFrom() {
-        ensureKindMatch(Set.of(InstructionKind.MOV));
+        ensureKindMatch(UNARY);
         return operands.get(0);
     }
 
     public IRValue getReturnValue() {
-        ensureKindMatch(Set.of(InstructionKind.RET));
+        ensureKindMatch(RETURN);
         return operands.get(0);
     }
 
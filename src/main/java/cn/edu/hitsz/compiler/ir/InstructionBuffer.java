@@ -0,0 +1,386 @@
+package cn.edu.hitsz.compiler.ir;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 以数组结构 (struct of arrays) 紧凑存储的指令序列
+ * <br>
+ * 每条指令只占用四个 int: 操作码, 结果, 左操作数与右操作数. 操作码的低 8 位为 {@link InstructionKind} 的序号,
+ * 其上两位分别标记左右操作数是否为立即数. 变量以其在本缓冲区中的编号存放 (见 {@link #variable(IRVariable)}), 立即数直接存放其值,
+ * 不存在的结果或操作数记为 {@link #NONE}. MOV 的来源与 RET 的返回值存放在左操作数中.
+ * <br>
+ * 遍历与改写通过 {@link #cursor()} 进行, 不会为每条指令创建对象; 被删除的指令先留下墓碑, 由 {@link #compact()} 统一移除.
+ * 需要 {@link Instruction} 形式时可以通过 {@link #get(int)} 或 {@link #toInstructions()} 按需构造, 同一个编号总是对应同一个 IRVariable 对象.
+ *
+ * @author chiro
+ */
+public final class InstructionBuffer {
+    /**
+     * 表示不存在的结果或操作数
+     */
+    public static final int NONE = -1;
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final int KIND_MASK = 0xff;
+    private static final int LHS_IMMEDIATE = 1 << 8;
+    private static final int RHS_IMMEDIATE = 1 << 9;
+    private static final int REMOVED = KIND_MASK;
+    private static final InstructionKind[] KINDS = InstructionKind.values();
+
+    private int[] opcodes = new int[INITIAL_CAPACITY];
+    private int[] results = new int[INITIAL_CAPACITY];
+    private int[] lhs = new int[INITIAL_CAPACITY];
+    private int[] rhs = new int[INITIAL_CAPACITY];
+    private int size = 0;
+    private int removed = 0;
+
+    private final List<IRVariable> variables = new ArrayList<>();
+    private final Map<IRVariable, Integer> variableIds = new HashMap<>();
+
+    /**
+     * @param instructions 指令
+     * @return 按顺序存放这些指令的缓冲区
+     */
+    public static InstructionBuffer of(List<Instruction> instructions) {
+        final var buffer = new InstructionBuffer();
+        instructions.forEach(buffer::add);
+        return buffer;
+    }
+
+    //============================== 变量 ==============================
+
+    /**
+     * 驻留变量
+     *
+     * @param variable IR 变量
+     * @return 该变量在本缓冲区中的编号, 首次出现时分配新编号
+     */
+    public int variable(IRVariable variable) {
+        final var id = variableIds.get(variable);
+        if (id != null) {
+            return id;
+        }
+        variables.add(variable);
+        variableIds.put(variable, variables.size() - 1);
+        return variables.size() - 1;
+    }
+
+    /**
+     * @param id 变量在本缓冲区中的编号
+     * @return 该编号对应的变量
+     */
+    public IRVariable variable(int id) {
+        return variables.get(id);
+    }
+
+    /**
+     * @return 变量的数量, 所有编号都小于它
+     */
+    public int variableCount() {
+        return variables.size();
+    }
+
+    //============================== 追加 ==============================
+
+    /**
+     * 追加一条指令
+     *
+     * @param kind         指令种类
+     * @param result       结果变量的编号, 没有结果时为 {@link #NONE}
+     * @param lhs          左操作数: 变量编号或立即数的值, 不存在时为 {@link #NONE}
+     * @param lhsImmediate 左操作数是否为立即数
+     * @param rhs          右操作数: 变量编号或立即数的值, 不存在时为 {@link #NONE}
+     * @param rhsImmediate 右操作数是否为立即数
+     * @return 追加的指令的下标
+     */
+    public int add(InstructionKind kind, int result, int lhs, boolean lhsImmediate, int rhs, boolean rhsImmediate) {
+        if (size == opcodes.length) {
+            grow(size * 2);
+        }
+        opcodes[size] = opcode(kind, lhsImmediate, rhsImmediate);
+        results[size] = result;
+        this.lhs[size] = lhs;
+        this.rhs[size] = rhs;
+        return size++;
+    }
+
+    /**
+     * 追加一条以对象形式表示的指令, 其中的变量会被驻留
+     *
+     * @param instruction 指令
+     * @return 追加的指令的下标
+     */
+    public int add(Instruction instruction) {
+        final var kind = instruction.getKind();
+        final var operands = instruction.getOperands();
+        final var result = kind.isReturn() ? NONE : variable(instruction.getResult());
+        final var left = operands.get(0);
+        final var right = operands.size() > 1 ? operands.get(1) : null;
+        return add(kind, result, operand(left), left instanceof IRImmediate,
+            operand(right), right instanceof IRImmediate);
+    }
+
+    /**
+     * 将另一个缓冲区中的指令按顺序追加到末尾, 墓碑一并复制
+     *
+     * @param other         另一个缓冲区
+     * @param variableRemap 另一个缓冲区中的变量编号到本缓冲区中的变量编号的映射
+     */
+    public void appendAll(InstructionBuffer other, int[] variableRemap) {
+        final var required = size + other.size;
+        if (required > opcodes.length) {
+            grow(Math.max(required, size * 2));
+        }
+        System.arraycopy(other.opcodes, 0, opcodes, size, other.size);
+        System.arraycopy(other.results, 0, results, size, other.size);
+        System.arraycopy(other.lhs, 0, lhs, size, other.size);
+        System.arraycopy(other.rhs, 0, rhs, size, other.size);
+        for (int i = size; i < required; i++) {
+            if (results[i] != NONE) {
+                results[i] = variableRemap[results[i]];
+            }
+            if ((opcodes[i] & LHS_IMMEDIATE) == 0 && lhs[i] != NONE) {
+                lhs[i] = variableRemap[lhs[i]];
+            }
+            if ((opcodes[i] & RHS_IMMEDIATE) == 0 && rhs[i] != NONE) {
+                rhs[i] = variableRemap[rhs[i]];
+            }
+        }
+        size = required;
+        removed += other.removed;
+    }
+
+    //============================== 读取 ==============================
+
+    /**
+     * @return 指令的数量, 包括尚未移除的墓碑
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return 未被删除的指令的数量
+     */
+    public int liveSize() {
+        return size - removed;
+    }
+
+    public boolean isRemoved(int index) {
+        return opcodes[index] == REMOVED;
+    }
+
+    public InstructionKind kind(int index) {
+        return KINDS[opcodes[index] & KIND_MASK];
+    }
+
+    public int result(int index) {
+        return results[index];
+    }
+
+    public int lhs(int index) {
+        return lhs[index];
+    }
+
+    public boolean isLhsImmediate(int index) {
+        return (opcodes[index] & LHS_IMMEDIATE) != 0;
+    }
+
+    public int rhs(int index) {
+        return rhs[index];
+    }
+
+    public boolean isRhsImmediate(int index) {
+        return (opcodes[index] & RHS_IMMEDIATE) != 0;
+    }
+
+    /**
+     * @param index 下标
+     * @return 以对象形式表示的指令
+     * @throws RuntimeException 该指令已被删除, 或其种类不能由前端生成
+     */
+    public Instruction get(int index) {
+        if (isRemoved(index)) {
+            throw new RuntimeException("Instruction #%d has been removed".formatted(index));
+        }
+        final var left = value(lhs[index], isLhsImmediate(index));
+        return switch (kind(index)) {
+            case ADD -> Instruction.createAdd(variables.get(results[index]), left, value(rhs[index], isRhsImmediate(index)));
+            case SUB -> Instruction.createSub(variables.get(results[index]), left, value(rhs[index], isRhsImmediate(index)));
+            case MUL -> Instruction.createMul(variables.get(results[index]), left, value(rhs[index], isRhsImmediate(index)));
+            case MOV -> Instruction.createMov(variables.get(results[index]), left);
+            case RET -> Instruction.createRet(left);
+            default -> throw new RuntimeException("Unexpected instruction kind in IR: " + kind(index));
+        };
+    }
+
+    /**
+     * @return 按顺序构造的所有未被删除的指令
+     */
+    public List<Instruction> toInstructions() {
+        final var instructions = new ArrayList<Instruction>(liveSize());
+        for (int i = 0; i < size; i++) {
+            if (!isRemoved(i)) {
+                instructions.add(get(i));
+            }
+        }
+        return instructions;
+    }
+
+    //============================== 改写 ==============================
+
+    /**
+     * @return 从头开始的游标, 跳过已删除的指令
+     */
+    public Cursor cursor() {
+        return new Cursor();
+    }
+
+    /**
+     * 删除一条指令, 留下墓碑
+     *
+     * @param index 下标
+     */
+    public void remove(int index) {
+        if (opcodes[index] != REMOVED) {
+            opcodes[index] = REMOVED;
+            removed++;
+        }
+    }
+
+    /**
+     * 移除所有墓碑, 之后的下标会发生变化
+     */
+    public void compact() {
+        if (removed == 0) {
+            return;
+        }
+        var to = 0;
+        for (int from = 0; from < size; from++) {
+            if (opcodes[from] != REMOVED) {
+                opcodes[to] = opcodes[from];
+                results[to] = results[from];
+                lhs[to] = lhs[from];
+                rhs[to] = rhs[from];
+                to++;
+            }
+        }
+        size = to;
+        removed = 0;
+    }
+
+    /**
+     * 指令序列上的游标, 可以读取并原地改写当前指令
+     */
+    public final class Cursor {
+        private int index = -1;
+
+        private Cursor() {
+        }
+
+        /**
+         * 前进到下一条未被删除的指令, 首次调用时前进到第一条
+         *
+         * @return 是否存在下一条指令
+         */
+        public boolean advance() {
+            do {
+                index++;
+            } while (index < size && opcodes[index] == REMOVED);
+            return index < size;
+        }
+
+        public int index() {
+            return index;
+        }
+
+        public InstructionKind kind() {
+            return InstructionBuffer.this.kind(index);
+        }
+
+        public int result() {
+            return results[index];
+        }
+
+        public int lhs() {
+            return lhs[index];
+        }
+
+        public boolean isLhsImmediate() {
+            return InstructionBuffer.this.isLhsImmediate(index);
+        }
+
+        public int rhs() {
+            return rhs[index];
+        }
+
+        public boolean isRhsImmediate() {
+            return InstructionBuffer.this.isRhsImmediate(index);
+        }
+
+        /**
+         * 将当前指令改写为另一条指令, 参数同 {@link InstructionBuffer#add(InstructionKind, int, int, boolean, int, boolean)}
+         */
+        public void set(InstructionKind kind, int result, int lhs, boolean lhsImmediate, int rhs, boolean rhsImmediate) {
+            opcodes[index] = opcode(kind, lhsImmediate, rhsImmediate);
+            results[index] = result;
+            InstructionBuffer.this.lhs[index] = lhs;
+            InstructionBuffer.this.rhs[index] = rhs;
+        }
+
+        public void setLhs(int lhs, boolean immediate) {
+            InstructionBuffer.this.lhs[index] = lhs;
+            opcodes[index] = immediate ? opcodes[index] | LHS_IMMEDIATE : opcodes[index] & ~LHS_IMMEDIATE;
+        }
+
+        public void setRhs(int rhs, boolean immediate) {
+            InstructionBuffer.this.rhs[index] = rhs;
+            opcodes[index] = immediate ? opcodes[index] | RHS_IMMEDIATE : opcodes[index] & ~RHS_IMMEDIATE;
+        }
+
+        /**
+         * 删除当前指令, 留下墓碑
+         */
+        public void remove() {
+            InstructionBuffer.this.remove(index);
+        }
+    }
+
+    //============================== 基础设施 ==============================
+
+    private static int opcode(InstructionKind kind, boolean lhsImmediate, boolean rhsImmediate) {
+        return kind.ordinal() | (lhsImmediate ? LHS_IMMEDIATE : 0) | (rhsImmediate ? RHS_IMMEDIATE : 0);
+    }
+
+    private int operand(IRValue value) {
+        if (value == null) {
+            return NONE;
+        }
+        return value instanceof IRImmediate immediate ? immediate.getValue() : variable((IRVariable) value);
+    }
+
+    private IRValue value(int operand, boolean immediate) {
+        return immediate ? IRImmediate.of(operand) : variables.get(operand);
+    }
+
+    private void grow(int capacity) {
+        opcodes = Arrays.copyOf(opcodes, capacity);
+        results = Arrays.copyOf(results, capacity);
+        lhs = Arrays.copyOf(lhs, capacity);
+        rhs = Arrays.copyOf(rhs, capacity);
+    }
+
+    @Override
+    public String toString() {
+        final var lines = new ArrayList<String>(liveSize());
+        for (int i = 0; i < size; i++) {
+            if (!isRemoved(i)) {
+                lines.add(get(i).toString());
+            }
+        }
+        return String.join("\n", lines);
+    }
+}
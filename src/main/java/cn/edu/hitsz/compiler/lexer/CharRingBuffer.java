@@ -0,0 +1,210 @@
+package cn.edu.hitsz.compiler.lexer;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+/**
+ * 基于 char 数组环形缓冲区的字符来源
+ * <br>
+ * 缓冲区容量恒为 2 的幂, 通过位与取下标; 每次从 {@link Reader} 或 {@link CharBuffer} 中整块读入数据,
+ * 读取字符的过程中不会产生任何装箱或对象分配. 当前瞻距离超出缓冲区容量时缓冲区会自动扩容.
+ * <br>
+ * 缓冲区会保留当前字符之前的 {@code history} 个字符以供 {@link #last(int)} 回看.
+ *
+ * @author chiro
+ */
+public class CharRingBuffer implements CharSource {
+    private final Reader reader;
+    private final CharBuffer charBuffer;
+    private final CharSequence content;
+    private final int history;
+    private char[] ring;
+    private int mask;
+    /**
+     * 当前字符的绝对位置
+     */
+    private int head = 0;
+    /**
+     * 已读入数据的结尾 (不含) 的绝对位置
+     */
+    private int end = 0;
+    private boolean eof = false;
+
+    /**
+     * @param reader   字符流
+     * @param capacity 缓冲区的初始容量, 会被向上取整为 2 的幂
+     * @param history  需要保留以供回看的字符数
+     */
+    public CharRingBuffer(Reader reader, int capacity, int history) {
+        this(reader, null, capacity, history);
+    }
+
+    /**
+     * @param charBuffer 字符缓冲区, 从其 position 开始读取至 limit
+     * @param capacity   缓冲区的初始容量, 会被向上取整为 2 的幂
+     * @param history    需要保留以供回看的字符数
+     */
+    public CharRingBuffer(CharBuffer charBuffer, int capacity, int history) {
+        this(null, charBuffer, capacity, history);
+    }
+
+    private CharRingBuffer(Reader reader, CharBuffer charBuffer, int capacity, int history) {
+        if (history < 0 || history >= capacity) {
+            throw new RuntimeException("History of ring buffer must be in [0, capacity)");
+        }
+        this.reader = reader;
+        this.charBuffer = charBuffer;
+        this.content = charBuffer == null ? null : charBuffer.duplicate();
+        this.history = history;
+        this.ring = new char[ceilPowerOfTwo(capacity)];
+        this.mask = ring.length - 1;
+    }
+
+    static public CharRingBuffer build(String path, int capacity) throws IOException {
+        final var reader = new InputStreamReader(Files.newInputStream(Paths.get(path)), StandardCharsets.UTF_8);
+        return new CharRingBuffer(reader, capacity, 1);
+    }
+
+    @Override
+    public char current() {
+        if (head < end) {
+            return ring[head & mask];
+        }
+        return current(0);
+    }
+
+    @Override
+    public char current(int index) {
+        final var target = head + index;
+        if (target >= end) {
+            ensure(target);
+            if (target >= end) {
+                return DONE;
+            }
+        }
+        return ring[target & mask];
+    }
+
+    @Override
+    public char last(int index) {
+        final var target = head - index;
+        if (index > history || index < 0) {
+            throw new RuntimeException("Can not look back %d chars, history is %d".formatted(index, history));
+        }
+        if (target < 0) {
+            return DONE;
+        }
+        return ring[target & mask];
+    }
+
+    @Override
+    public char next() {
+        if (head < end || current() != DONE) {
+            head++;
+        }
+        return current();
+    }
+
+    @Override
+    public CharSequence content() {
+        return content;
+    }
+
+    @Override
+    public void skip(int count) {
+        if (head + count > end) {
+            ensure(head + count);
+        }
+        head = Math.min(end, head + count);
+    }
+
+    @Override
+    public boolean hasNext() {
+        return current() != DONE;
+    }
+
+    @Override
+    public int position() {
+        return head;
+    }
+
+    /**
+     * 读入数据直到 target 位置可用或输入结束
+     *
+     * @param target 需要可用的绝对位置
+     */
+    private void ensure(int target) {
+        while (target >= end && !eof) {
+            final var lowest = Math.max(0, head - history);
+            if (target - lowest >= ring.length) {
+                grow(target - lowest + 1);
+            }
+            // 可写区间为 [end, lowest + ring.length), 每次只填充环上连续的一段
+            final var offset = end & mask;
+            final var length = Math.min(lowest + ring.length - end, ring.length - offset);
+            final var read = fill(offset, length);
+            if (read <= 0) {
+                eof = true;
+                close();
+            } else {
+                end += read;
+            }
+        }
+    }
+
+    private int fill(int offset, int length) {
+        if (charBuffer != null) {
+            final var read = Math.min(length, charBuffer.remaining());
+            charBuffer.get(ring, offset, read);
+            return read;
+        }
+        try {
+            return reader.read(ring, offset, length);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private void grow(int required) {
+        final var lowest = Math.max(0, head - history);
+        final var newRing = new char[ceilPowerOfTwo(required)];
+        final var newMask = newRing.length - 1;
+        for (int i = lowest; i < end; i++) {
+            newRing[i & newMask] = ring[i & mask];
+        }
+        ring = newRing;
+        mask = newMask;
+    }
+
+    private void close() {
+        if (reader == null) {
+            return;
+        }
+        try {
+            reader.close();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static int ceilPowerOfTwo(int value) {
+        final var atLeast = Math.max(value, 2);
+        final var highest = Integer.highestOneBit(atLeast);
+        return highest == atLeast ? atLeast : highest << 1;
+    }
+
+    @Override
+    public String toString() {
+        final var builder = new StringBuilder();
+        for (int i = Math.max(0, head - history); i < end; i++) {
+            final var c = ring[i & mask];
+            builder.append(c == '\n' ? ' ' : c);
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,72 @@
+package cn.edu.hitsz.compiler.lexer;
+
+import java.text.CharacterIterator;
+
+/**
+ * 词法分析器的字符来源
+ * <br>
+ * 抽象出 "当前字符 + 任意前瞻 + 有限回看" 的访问方式, 使词法分析的自动机不必关心字符究竟来自于文件流, 内存还是映射的文件.
+ * 所有位置均为从源文件开头起算的绝对字符偏移.
+ *
+ * @author chiro
+ */
+public interface CharSource {
+    /**
+     * 读到输入末尾时返回的字符
+     */
+    char DONE = CharacterIterator.DONE;
+
+    /**
+     * @return 当前字符, 若已到达末尾则返回 {@link #DONE}
+     */
+    char current();
+
+    /**
+     * @param index 相对当前字符的前瞻距离, 0 即为当前字符
+     * @return 前瞻处的字符, 若越过末尾则返回 {@link #DONE}
+     */
+    char current(int index);
+
+    /**
+     * @param index 相对当前字符的回看距离, 1 即为上一个字符
+     * @return 回看处的字符
+     */
+    char last(int index);
+
+    /**
+     * 前进一个字符
+     *
+     * @return 前进后的当前字符
+     */
+    char next();
+
+    /**
+     * 前进若干个字符
+     *
+     * @param count 前进的字符数
+     */
+    default void skip(int count) {
+        for (int i = 0; i < count; i++) {
+            next();
+        }
+    }
+
+    /**
+     * @return 是否还有未读取的字符
+     */
+    boolean hasNext();
+
+    /**
+     * @return 当前字符在源文件中的绝对偏移
+     */
+    int position();
+
+    /**
+     * 若整个输入都可以随机访问, 则词素可以直接以偏移和长度引用输入, 而不必复制出来
+     *
+     * @return 以绝对偏移为下标的整个输入的视图, 不可随机访问时返回 null
+     */
+    default CharSequence content() {
+        return null;
+    }
+}
@@ -0,0 +1,468 @@
+package cn.edu.hitsz.compiler.lexer;
+
+import cn.edu.hitsz.compiler.error.ErrorDescription;
+import cn.edu.hitsz.compiler.utils.FileUtils;
+
+import java.util.*;
+
+/**
+ * 词法分析自动机生成器
+ * <br>
+ * 从词法规则文件 (token_spec.txt) 中读取各类词法单元的正则表达式, 经 Thompson 构造得到 NFA, 经子集构造得到 DFA,
+ * 再按接受的规则划分等价状态得到最小化的 DFA, 最终压平为 {@link DfaTable}. 新增一类词法单元只需在规则文件中新增一行.
+ * <br>
+ * 支持的正则语法: 字符, 转义 ({@code \t \n \r \s \d \w} 及对元字符的转义), 字符类 {@code [a-z_]} 与 {@code [^...]},
+ * 任意字符 {@code .}, 分组 {@code ( )}, 选择 {@code |}, 以及 {@code * + ?} 三种重复.
+ *
+ * @author chiro
+ */
+public class DfaGenerator {
+    public static final String SKIP_RULE = "@skip";
+    public static final String SYMBOL_ATTRIBUTE = "@symbol";
+    public static final String INT_ATTRIBUTE = "@int";
+
+    /**
+     * 读取词法规则文件并生成 DFA, 需要在 {@link TokenKind#loadTokenKinds()} 之后调用
+     *
+     * @param path 规则文件路径
+     * @return 生成的 DFA
+     */
+    public static DfaTable fromFile(String path) {
+        return generate(FileUtils.readLines(path));
+    }
+
+    /**
+     * @param lines 规则文件的各行
+     * @return 生成的 DFA
+     */
+    public static DfaTable generate(List<String> lines) {
+        return new DfaGenerator().run(lines);
+    }
+
+    //============================== 字符集合 ==============================
+
+    /**
+     * ASCII 字符集合, 用两个 long 表示 128 位的位图
+     */
+    private static final class CharSet {
+        private long low = 0;
+        private long high = 0;
+
+        static CharSet of(char c) {
+            final var set = new CharSet();
+            set.add(c);
+            return set;
+        }
+
+        static CharSet ofRange(char from, char to) {
+            final var set = new CharSet();
+            for (char c = from; c <= to; c++) {
+                set.add(c);
+            }
+            return set;
+        }
+
+        void add(char c) {
+            if (c < 64) {
+                low |= 1L << c;
+            } else {
+                high |= 1L << (c - 64);
+            }
+        }
+
+        void addAll(CharSet other) {
+            low |= other.low;
+            high |= other.high;
+        }
+
+        void invert() {
+            low = ~low;
+            high = ~high;
+        }
+
+        boolean contains(int c) {
+            return c < 64 ? (low >>> c & 1) != 0 : (high >>> (c - 64) & 1) != 0;
+        }
+    }
+
+    //============================== NFA ==============================
+
+    private static final class Node {
+        private CharSet edge = null;
+        private int target = -1;
+        private final List<Integer> epsilons = new ArrayList<>();
+        private int accept = -1;
+    }
+
+    /**
+     * Thompson 构造中的 NFA 片段
+     *
+     * @param start   入口节点
+     * @param end     出口节点
+     * @param literal 片段只能匹配唯一的字符串时为该字符串, 否则为 null
+     */
+    private record Fragment(int start, int end, String literal) {
+    }
+
+    private final List<Node> nodes = new ArrayList<>();
+    private String regex;
+    private int cursor;
+    private int lineNumber;
+
+    private int newNode() {
+        nodes.add(new Node());
+        return nodes.size() - 1;
+    }
+
+    private void epsilon(int from, int to) {
+        nodes.get(from).epsilons.add(to);
+    }
+
+    private Fragment edge(CharSet set, String literal) {
+        final var start = newNode();
+        final var end = newNode();
+        nodes.get(start).edge = set;
+        nodes.get(start).target = end;
+        return new Fragment(start, end, literal);
+    }
+
+    private RuntimeException specError(String reason) {
+        return new RuntimeException(ErrorDescription.LEX_BAD_SPEC.formatted(lineNumber, reason));
+    }
+
+    private boolean more() {
+        return cursor < regex.length();
+    }
+
+    private char peek() {
+        return regex.charAt(cursor);
+    }
+
+    private Fragment parseAlternation() {
+        var fragment = parseConcatenation();
+        while (more() && peek() == '|') {
+            cursor++;
+            final var other = parseConcatenation();
+            final var start = newNode();
+            final var end = newNode();
+            epsilon(start, fragment.start());
+            epsilon(start, other.start());
+            epsilon(fragment.end(), end);
+            epsilon(other.end(), end);
+            fragment = new Fragment(start, end, null);
+        }
+        return fragment;
+    }
+
+    private Fragment parseConcatenation() {
+        Fragment fragment = null;
+        while (more() && peek() != '|' && peek() != ')') {
+            final var next = parseRepetition();
+            if (fragment == null) {
+                fragment = next;
+            } else {
+                epsilon(fragment.end(), next.start());
+                final var literal = fragment.literal() != null && next.literal() != null
+                    ? fragment.literal() + next.literal() : null;
+                fragment = new Fragment(fragment.start(), next.end(), literal);
+            }
+        }
+        if (fragment == null) {
+            final var node = newNode();
+            return new Fragment(node, node, "");
+        }
+        return fragment;
+    }
+
+    private Fragment parseRepetition() {
+        var fragment = parseAtom();
+        while (more() && (peek() == '*' || peek() == '+' || peek() == '?')) {
+            final var op = regex.charAt(cursor++);
+            final var start = newNode();
+            final var end = newNode();
+            epsilon(start, fragment.start());
+            epsilon(fragment.end(), end);
+            if (op != '+') {
+                epsilon(start, end);
+            }
+            if (op != '?') {
+                epsilon(fragment.end(), fragment.start());
+            }
+            fragment = new Fragment(start, end, null);
+        }
+        return fragment;
+    }
+
+    private Fragment parseAtom() {
+        final var c = regex.charAt(cursor++);
+        return switch (c) {
+            case '(' -> {
+                final var inner = parseAlternation();
+                if (!more() || regex.charAt(cursor++) != ')') {
+                    throw specError("missing ')'");
+                }
+                yield inner;
+            }
+            case '[' -> edge(parseClass(), null);
+            case '.' -> {
+                final var set = CharSet.of('\n');
+                set.invert();
+                yield edge(set, null);
+            }
+            case '\\' -> {
+                final var escaped = parseEscape();
+                final var set = escapeClass(escaped);
+                yield set != null ? edge(set, null) : edge(CharSet.of(escaped), String.valueOf(escaped));
+            }
+            case ')', '*', '+', '?', '|', ']' -> throw specError("unexpected '%c'".formatted(c));
+            default -> edge(CharSet.of(c), String.valueOf(c));
+        };
+    }
+
+    private CharSet parseClass() {
+        final var set = new CharSet();
+        final var negate = more() && peek() == '^';
+        if (negate) {
+            cursor++;
+        }
+        while (more() && peek() != ']') {
+            var c = regex.charAt(cursor++);
+            if (c == '\\') {
+                c = parseEscape();
+                final var escaped = escapeClass(c);
+                if (escaped != null) {
+                    set.addAll(escaped);
+                    continue;
+                }
+            }
+            if (cursor + 1 < regex.length() && peek() == '-' && regex.charAt(cursor + 1) != ']') {
+                cursor++;
+                var to = regex.charAt(cursor++);
+                if (to == '\\') {
+                    to = parseEscape();
+                }
+                set.addAll(CharSet.ofRange(c, to));
+            } else {
+                set.add(c);
+            }
+        }
+        if (!more()) {
+            throw specError("missing ']'");
+        }
+        cursor++;
+        if (negate) {
+            set.invert();
+        }
+        return set;
+    }
+
+    /**
+     * @return 转义后的字符, 字符类转义 (\s \d \w) 原样返回其字母
+     */
+    private char parseEscape() {
+        if (!more()) {
+            throw specError("dangling '\\'");
+        }
+        final var c = regex.charAt(cursor++);
+        return switch (c) {
+            case 't' -> '\t';
+            case 'n' -> '\n';
+            case 'r' -> '\r';
+            default -> c;
+        };
+    }
+
+    private static CharSet escapeClass(char c) {
+        return switch (c) {
+            case 's' -> {
+                final var set = CharSet.of(' ');
+                set.add('\t');
+                set.add('\n');
+                set.add('\r');
+                set.add('\f');
+                yield set;
+            }
+            case 'd' -> CharSet.ofRange('0', '9');
+            case 'w' -> {
+                final var set = CharSet.ofRange('a', 'z');
+                set.addAll(CharSet.ofRange('A', 'Z'));
+                set.addAll(CharSet.ofRange('0', '9'));
+                set.add('_');
+                yield set;
+            }
+            default -> null;
+        };
+    }
+
+    //============================== 生成过程 ==============================
+
+    private DfaTable run(List<String> lines) {
+        final var rules = new ArrayList<DfaTable.Rule>();
+        final var start = newNode();
+        for (int i = 0; i < lines.size(); i++) {
+            lineNumber = i + 1;
+            final var line = lines.get(i).strip();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            final var words = line.split("\\s+");
+            if (words.length < 2 || words.length > 3) {
+                throw specError(line);
+            }
+            final var name = words[0];
+            final var symbol = words.length == 3 && words[2].equals(SYMBOL_ATTRIBUTE);
+            final var integer = words.length == 3 && words[2].equals(INT_ATTRIBUTE);
+            if (words.length == 3 && !symbol && !integer) {
+                throw specError("unknown attribute " + words[2]);
+            }
+            regex = words[1];
+            cursor = 0;
+            final var fragment = parseAlternation();
+            if (more()) {
+                throw specError("unexpected '%c'".formatted(peek()));
+            }
+            final var kind = name.equals(SKIP_RULE) ? null : TokenKind.fromString(name);
+            nodes.get(fragment.end()).accept = rules.size();
+            epsilon(start, fragment.start());
+            rules.add(new DfaTable.Rule(name, kind, fragment.literal() != null, symbol, integer));
+        }
+
+        final var classOf = new int[DfaTable.ASCII_SIZE];
+        final var representatives = computeCharClasses(classOf);
+        final var classCount = representatives.size();
+
+        // 子集构造, 以 NFA 状态集合的位图作为 DFA 状态的键
+        final var states = new ArrayList<BitSet>();
+        final var stateIndex = new HashMap<BitSet, Integer>();
+        final var moves = new ArrayList<int[]>();
+        final var seed = new BitSet();
+        seed.set(start);
+        final var initial = closure(seed);
+        states.add(initial);
+        stateIndex.put(initial, 0);
+        for (int s = 0; s < states.size(); s++) {
+            final var move = new int[classCount];
+            for (int k = 0; k < classCount; k++) {
+                final var target = new BitSet();
+                final char rep = representatives.get(k);
+                states.get(s).stream().forEach(n -> {
+                    final var node = nodes.get(n);
+                    if (node.edge != null && node.edge.contains(rep)) {
+                        target.set(node.target);
+                    }
+                });
+                if (target.isEmpty()) {
+                    move[k] = -1;
+                    continue;
+                }
+                final var next = closure(target);
+                final var existing = stateIndex.get(next);
+                if (existing != null) {
+                    move[k] = existing;
+                } else {
+                    move[k] = states.size();
+                    stateIndex.put(next, states.size());
+                    states.add(next);
+                }
+            }
+            moves.add(move);
+        }
+
+        final var accepts = new int[states.size()];
+        for (int s = 0; s < states.size(); s++) {
+            accepts[s] = states.get(s).stream().map(n -> nodes.get(n).accept).filter(a -> a >= 0).min().orElse(-1);
+        }
+
+        return minimize(classOf, classCount, moves, accepts, rules.toArray(new DfaTable.Rule[0]));
+    }
+
+    private BitSet closure(BitSet set) {
+        final var result = (BitSet) set.clone();
+        final var stack = new ArrayDeque<Integer>();
+        set.stream().forEach(stack::push);
+        while (!stack.isEmpty()) {
+            for (final var next : nodes.get(stack.pop()).epsilons) {
+                if (!result.get(next)) {
+                    result.set(next);
+                    stack.push(next);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 把对所有边都表现一致的 ASCII 字符合并为同一个字符类
+     *
+     * @param classOf 输出: 每个字符所属的字符类
+     * @return 每个字符类的代表字符
+     */
+    private List<Character> computeCharClasses(int[] classOf) {
+        final var edges = nodes.stream().map(node -> node.edge).filter(Objects::nonNull).toList();
+        final var signatures = new HashMap<BitSet, Integer>();
+        final var representatives = new ArrayList<Character>();
+        for (char c = 0; c < DfaTable.ASCII_SIZE; c++) {
+            final var signature = new BitSet(edges.size());
+            for (int i = 0; i < edges.size(); i++) {
+                if (edges.get(i).contains(c)) {
+                    signature.set(i);
+                }
+            }
+            final var existing = signatures.get(signature);
+            if (existing != null) {
+                classOf[c] = existing;
+            } else {
+                classOf[c] = representatives.size();
+                signatures.put(signature, representatives.size());
+                representatives.add(c);
+            }
+        }
+        return representatives;
+    }
+
+    /**
+     * Moore 算法最小化: 初始按接受的规则划分, 反复按 "自身所在块 + 各字符类转移到的块" 细分直至稳定
+     */
+    private static DfaTable minimize(int[] classOf, int classCount, List<int[]> moves, int[] accepts, DfaTable.Rule[] rules) {
+        final var stateCount = accepts.length;
+        var block = new int[stateCount];
+        final var initial = new HashMap<Integer, Integer>();
+        for (int s = 0; s < stateCount; s++) {
+            final var size = initial.size();
+            block[s] = initial.computeIfAbsent(accepts[s], a -> size);
+        }
+        var blockCount = initial.size();
+
+        while (true) {
+            final var refined = new int[stateCount];
+            final var signatures = new HashMap<List<Integer>, Integer>();
+            for (int s = 0; s < stateCount; s++) {
+                final var signature = new ArrayList<Integer>(classCount + 1);
+                signature.add(block[s]);
+                for (final var target : moves.get(s)) {
+                    signature.add(target < 0 ? -1 : block[target]);
+                }
+                final var size = signatures.size();
+                refined[s] = signatures.computeIfAbsent(signature, k -> size);
+            }
+            block = refined;
+            if (signatures.size() == blockCount) {
+                break;
+            }
+            blockCount = signatures.size();
+        }
+
+        // 块编号按状态出现顺序分配, 因此起始状态 0 所在的块恒为 0
+        final var transitions = new int[blockCount * classCount];
+        final var blockAccepts = new int[blockCount];
+        for (int s = 0; s < stateCount; s++) {
+            final var b = block[s];
+            blockAccepts[b] = accepts[s];
+            for (int k = 0; k < classCount; k++) {
+                final var target = moves.get(s)[k];
+                transitions[b * classCount + k] = target < 0 ? -1 : block[target];
+            }
+        }
+        return new DfaTable(classOf, classCount, transitions, blockAccepts, rules);
+    }
+}
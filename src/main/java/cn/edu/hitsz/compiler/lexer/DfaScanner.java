@@ -0,0 +1,207 @@
+package cn.edu.hitsz.compiler.lexer;
+
+import cn.edu.hitsz.compiler.error.ErrorDescription;
+
+/**
+ * 按 {@link DfaTable} 对字符来源做最长匹配的扫描器
+ * <br>
+ * 扫描时沿着转移表前瞻, 记录最后一次经过接受状态时的规则与长度, 无转移时回到该处, 再一次性前进匹配的长度.
+ * 被 {@code @skip} 规则匹配的文本会在扫描器内部直接跳过.
+ * <br>
+ * 为了让词素在需要时才被复制, 扫描到的词法单元要等到下一次扫描时才会被越过, 在此之前它的字符仍可以通过前瞻访问.
+ * 前瞻的同时顺带计算词素的散列值 (与 {@link String#hashCode()} 一致), 供驻留词素时使用而不必再次遍历.
+ * <br>
+ * 若给定了 {@link RunKernel}, 进入带自环的状态后会由它一次性越过整个连续段. 被越过的字符没有参与散列,
+ * 此时词素的散列值推迟到第一次调用 {@link #tokenHash()} 时再计算, 而大部分不需要驻留的词法单元就不必计算散列值了.
+ *
+ * @author chiro
+ */
+class DfaScanner {
+    private final DfaTable table;
+    private final CharSource source;
+    private final RunKernel kernel;
+    private final int end;
+    private int tokenStart = 0;
+    private int tokenLength = 0;
+    private int tokenHash = 0;
+    private boolean tokenHashed = false;
+    private final CharSequence lexemeView = new LexemeView();
+
+    DfaScanner(DfaTable table, CharSource source) {
+        this(table, source, null);
+    }
+
+    /**
+     * @param kernel 自环连续段的扫描核心, 为 null 时逐字符查转移表; 非 null 时字符来源须为 {@link MappedCharSource}
+     */
+    DfaScanner(DfaTable table, CharSource source, RunKernel kernel) {
+        this.table = table;
+        this.source = source;
+        this.kernel = kernel;
+        this.end = kernel != null ? ((MappedCharSource) source).end() : 0;
+    }
+
+    /**
+     * 扫描下一个词法单元
+     *
+     * @return 匹配到的规则下标, 输入结束时返回 -1
+     * @throws RuntimeException 当前位置无法匹配任何规则
+     */
+    int scan() {
+        final var classOf = table.classOf;
+        final var classCount = table.classCount;
+        final var transitions = table.transitions;
+        final var accepts = table.accepts;
+        source.skip(tokenLength);
+        tokenLength = 0;
+        while (true) {
+            int state = 0;
+            int length = 0;
+            int rule = -1;
+            int ruleLength = 0;
+            int hash = 0;
+            int ruleHash = 0;
+            boolean hashed = true;
+            boolean ruleHashed = false;
+            final var start = source.position();
+            while (true) {
+                final var c = source.current(length);
+                if (c >= DfaTable.ASCII_SIZE) {
+                    break;
+                }
+                final var next = transitions[state * classCount + classOf[c]];
+                if (next < 0) {
+                    break;
+                }
+                state = next;
+                length++;
+                hash = 31 * hash + c;
+                if (kernel != null && kernel.hasRun(state)) {
+                    length += kernel.run(state, start + length, end);
+                    hashed = false;
+                }
+                if (accepts[state] >= 0) {
+                    rule = accepts[state];
+                    ruleLength = length;
+                    ruleHash = hash;
+                    ruleHashed = hashed;
+                }
+            }
+
+            if (rule < 0) {
+                if (!source.hasNext()) {
+                    return -1;
+                }
+                throw new RuntimeException(ErrorDescription.LEX_UNEXPECTED_CHAR.formatted(source.current(), source.position()));
+            }
+
+            if (!table.rules[rule].isSkip()) {
+                tokenStart = source.position();
+                tokenLength = ruleLength;
+                tokenHash = ruleHash;
+                tokenHashed = ruleHashed;
+                return rule;
+            }
+            source.skip(ruleLength);
+        }
+    }
+
+    /**
+     * @return 上一次扫描到的词法单元的文本
+     */
+    String lexeme() {
+        final var content = source.content();
+        if (content != null) {
+            return content.subSequence(tokenStart, tokenStart + tokenLength).toString();
+        }
+        final var chars = new char[tokenLength];
+        for (int i = 0; i < tokenLength; i++) {
+            chars[i] = source.current(i);
+        }
+        return new String(chars);
+    }
+
+    /**
+     * @return 上一次扫描到的词法单元的文本的视图, 不复制字符, 只在下一次扫描之前有效
+     */
+    CharSequence lexemeView() {
+        return lexemeView;
+    }
+
+    /**
+     * 借助前瞻读取尚未被越过的词素
+     */
+    private class LexemeView implements CharSequence {
+        @Override
+        public int length() {
+            return tokenLength;
+        }
+
+        @Override
+        public char charAt(int index) {
+            return source.current(index);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return toString().subSequence(start, end);
+        }
+
+        @Override
+        public String toString() {
+            return lexeme();
+        }
+    }
+
+    /**
+     * 将上一次扫描到的词法单元按十进制整数解码
+     *
+     * @return 整数值
+     * @throws RuntimeException 词素不是十进制整数或超出 int 的范围
+     */
+    int intValue() {
+        int value = 0;
+        for (int i = 0; i < tokenLength; i++) {
+            final var digit = source.current(i) - '0';
+            if (digit < 0 || digit > 9) {
+                throw new RuntimeException(ErrorDescription.LEX_UNEXPECTED_CHAR.formatted(source.current(i), tokenStart + i));
+            }
+            if (value > (Integer.MAX_VALUE - digit) / 10) {
+                throw new RuntimeException(ErrorDescription.LEX_INT_OUT_OF_RANGE.formatted(tokenStart));
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    CharSource source() {
+        return source;
+    }
+
+    int tokenStart() {
+        return tokenStart;
+    }
+
+    int tokenLength() {
+        return tokenLength;
+    }
+
+    /**
+     * @return 上一次扫描到的词法单元的散列值
+     */
+    int tokenHash() {
+        if (!tokenHashed) {
+            int hash = 0;
+            for (int i = 0; i < tokenLength; i++) {
+                hash = 31 * hash + source.current(i);
+            }
+            tokenHash = hash;
+            tokenHashed = true;
+        }
+        return tokenHash;
+    }
+
+    DfaTable table() {
+        return table;
+    }
+}
@@ -0,0 +1,107 @@
+package cn.edu.hitsz.compiler.lexer;
+
+import java.util.List;
+
+/**
+ * 压平为 int 数组的词法分析 DFA
+ * <br>
+ * 输入字符先经 {@code classOf} 映射为字符类, 再以 {@code state * classCount + class} 为下标查 {@code transitions}
+ * 得到下一状态, -1 表示无转移. {@code accepts} 记录每个状态接受的规则下标, -1 表示非接受状态. 起始状态恒为 0.
+ * 只有 ASCII 字符会被映射到字符类, 其余字符在任何状态下都没有转移.
+ *
+ * @author chiro
+ * @see DfaGenerator 由词法规则生成该表
+ */
+public final class DfaTable {
+    /**
+     * 词法规则
+     *
+     * @param name    规则名, 即词法单元类型的标识符
+     * @param kind    规则产生的词法单元类型, 为 null 时表示匹配到的文本应被丢弃
+     * @param literal 规则是否只能匹配唯一的字符串, 这种词法单元不需要携带文本
+     * @param symbol  匹配到的文本是否需要登记进符号表
+     * @param integer 匹配到的文本是否为十进制整数, 是则由词法分析器直接解码出其值
+     */
+    public record Rule(String name, TokenKind kind, boolean literal, boolean symbol, boolean integer) {
+        public boolean isSkip() {
+            return kind == null;
+        }
+    }
+
+    public static final int ASCII_SIZE = 128;
+
+    final int[] classOf;
+    final int classCount;
+    final int[] transitions;
+    final int[] accepts;
+    final Rule[] rules;
+
+    DfaTable(int[] classOf, int classCount, int[] transitions, int[] accepts, Rule[] rules) {
+        this.classOf = classOf;
+        this.classCount = classCount;
+        this.transitions = transitions;
+        this.accepts = accepts;
+        this.rules = rules;
+    }
+
+    public int getStateCount() {
+        return accepts.length;
+    }
+
+    public int getClassCount() {
+        return classCount;
+    }
+
+    public List<Rule> getRules() {
+        return List.of(rules);
+    }
+
+    /**
+     * @param state 当前状态
+     * @param c     输入字符
+     * @return 下一状态, 无转移时返回 -1
+     */
+    public int next(int state, char c) {
+        if (c >= ASCII_SIZE) {
+            return -1;
+        }
+        return transitions[state * classCount + classOf[c]];
+    }
+
+    /**
+     * @param state 状态
+     * @return 该状态接受的规则下标, 非接受状态返回 -1
+     */
+    public int accept(int state) {
+        return accepts[state];
+    }
+
+    /**
+     * 判断字符是否为必然的词法单元边界: 它自成一个词法单元, 且不会出现在其它任何词法单元 (包括被跳过的文本) 之中.
+     * 这样的字符后面总是可以安全地切开输入, 分别进行词法分析.
+     *
+     * @param c 字符
+     * @return 是否为必然的词法单元边界
+     */
+    public boolean isDelimiter(char c) {
+        if (c >= ASCII_SIZE) {
+            return false;
+        }
+        final var charClass = classOf[c];
+        final var target = transitions[charClass];
+        if (target < 0 || accepts[target] < 0 || rules[accepts[target]].isSkip()) {
+            return false;
+        }
+        for (int state = 0; state < getStateCount(); state++) {
+            if (state != 0 && transitions[state * classCount + charClass] >= 0) {
+                return false;
+            }
+        }
+        for (int charClassOut = 0; charClassOut < classCount; charClassOut++) {
+            if (transitions[target * classCount + charClassOut] >= 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
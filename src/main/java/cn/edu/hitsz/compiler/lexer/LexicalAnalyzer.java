@@ -1,12 +1,18 @@
 package cn.edu.hitsz.compiler.lexer;
 
 import cn.edu.hitsz.compiler.RunConfigs;
-import cn.edu.hitsz.compiler.error.ErrorDescription;
 import cn.edu.hitsz.compiler.symtab.SymbolTable;
+import cn.edu.hitsz.compiler.utils.FilePathConfig;
 import cn.edu.hitsz.compiler.utils.FileUtils;
 
 import java.io.IOException;
-import java.util.*;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
 
 /**
@@ -17,14 +23,23 @@ import java.util.stream.StreamSupport;
  * @author chiro
  * @see Token 词法单元的实现
  * @see TokenKind 词法单元类型的实现
+ * @see DfaGenerator 由词法规则生成分析所用的 DFA
  */
 public class LexicalAnalyzer {
     private final SymbolTable symbolTable;
-    private FileCharacterIterator iterator = null;
-    private final List<Token> tokens = new LinkedList<>();
+    private final DfaTable dfa;
+    private static final char STATEMENT_DELIMITER = ';';
+
+    private CharSource iterator = null;
+    private TokenBuffer tokens = null;
+    private boolean analyzed = false;
+    private TokenIterator streaming = null;
+    private String teePath = null;
+    private String symbolTeePath = null;
 
     public LexicalAnalyzer(SymbolTable symbolTable) {
         this.symbolTable = symbolTable;
+        this.dfa = DfaGenerator.fromFile(FilePathConfig.TOKEN_SPEC_PATH);
     }
 
     /**
@@ -37,7 +52,15 @@ public class LexicalAnalyzer {
         // 可自由实现各类缓冲区
         // 或直接采用完整读入方法
         try {
-            iterator = FileCharacterIterator.build(path, RunConfigs.FILE_READER_BUFFER_SIZE);
+            if (RunConfigs.LEXER_MEMORY_MAPPED) {
+                // 纯 ASCII 文件直接映射进内存原地分析, 否则退回到按字符流读取
+                final var mapped = MappedCharSource.map(path);
+                if (mapped.isPresent()) {
+                    iterator = mapped.get();
+                    return;
+                }
+            }
+            iterator = CharRingBuffer.build(path, RunConfigs.LEXER_RING_BUFFER_SIZE);
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
@@ -46,124 +69,145 @@ public class LexicalAnalyzer {
     /**
      * 执行词法分析, 准备好用于返回的 token 列表 <br>
      * 需要维护实验一所需的符号表条目, 而得在语法分析中才能确定的符号表条目的成员可以先设置为 null
+     * <br>
+     * 若不调用该方法, {@link #getTokens()} 将返回按需分析的迭代器
      */
     public void run() {
-        // 自动机实现的词法分析过程
-        int state = 0;
-        final var accepts = new HashSet<>(Arrays.asList(15, 17, 19, 20, 22, 23, 25, 26, 27, 28, 29, 30, 31, 32));
-        final var keyWords = new HashSet<>(Arrays.asList(
-                "int",
-                "return"));
-        StringBuilder idCode = new StringBuilder();
-        StringBuilder number = new StringBuilder();
-        while (iterator.hasNext()) {
-            while (!accepts.contains(state) && iterator.hasNext()) {
-                final var c = iterator.current();
-                if (RunConfigs.DEBUG) {
-                    System.out.printf("[%2d] read: %s, buffer: %s\n", state, c == '\n' ? "\\n" : c,
-                            iterator.getBuffer().stream().map(a -> a == '\n' ? ' ' : a).map(Object::toString)
-                                    .reduce((a, b) -> a + b).orElseThrow());
-                }
-                boolean blank = c == ' ' || c == '\t' || c == '\n';
-                boolean digital = '0' <= c && c <= '9';
-                boolean letter = ('a' <= c && c <= 'z') || ('A' <= c && c <= 'Z') || c == '_';
-                boolean semicolon = c == ';';
-                int nextState = switch (state) {
-                    case 0 -> switch (c) {
-                        case '*' -> 18;
-                        case '=' -> 21;
-                        case '\"' -> 24;
-                        case '(' -> 26;
-                        case ')' -> 27;
-                        case ';' -> 28;
-                        case '+' -> 29;
-                        case '-' -> 30;
-                        case '/' -> 31;
-                        case ',' -> 32;
-                        default -> {
-                            if (blank) {
-                                yield 0;
-                            }
-                            if (digital) {
-                                yield 16;
-                            }
-                            if (letter) {
-                                yield 14;
-                            }
-                            yield -1;
-                        }
-                    };
-                    case 14 -> (letter || digital) ? 14 : 15;
-                    case 16 -> digital ? 16 : 17;
-                    case 18 -> c == '*' ? 19 : 20;
-                    case 21 -> c == '=' ? 22 : 23;
-                    case 24 -> (letter || digital) ? 24 : c == '\"' ? 25 : -1;
-                    default -> accepts.contains(state) ? 0 : -1;
-                };
-                switch (state) {
-                    case 0:
-                        if (letter) {
-                            idCode.append(c);
-                        }
-                        if (digital) {
-                            number.append(c);
-                        }
-                        break;
-                    case 14:
-                        if (nextState == 14) {
-                            idCode.append(c);
-                        }
-                    default:
-                        break;
-                }
-                if (accepts.contains(nextState)) {
-                    // System.out.printf("accept [%d] id=%s, num=%s\n", nextState, idCode, number);
-                    tokens.add(switch (nextState) {
-                        case 15 -> {
-                            final var s = idCode.toString();
-                            idCode.setLength(0);
-                            if (!keyWords.contains(s) && !symbolTable.has(s)) {
-                                symbolTable.add(s);
-                            }
-                            yield keyWords.contains(s) ? Token.simple(s) : Token.normal("id", s);
-                        }
-                        case 17 -> {
-                            final var token = Token.normal("IntConst", number.toString());
-                            number.setLength(0);
-                            yield token;
-                        }
-                        case 19 -> Token.simple("**");
-                        case 20 -> Token.simple("*");
-                        case 22 -> Token.simple("==");
-                        case 23 -> Token.simple("=");
-                        case 26 -> Token.simple("(");
-                        case 27 -> Token.simple(")");
-                        case 28 -> Token.simple("Semicolon");
-                        case 29 -> Token.simple("+");
-                        case 30 -> Token.simple("-");
-                        case 31 -> Token.simple("/");
-                        case 32 -> Token.simple(",");
-                        default -> throw new RuntimeException(String.format(ErrorDescription.LEX_NO_STATE, state));
-                    });
-                }
-                if (nextState != 28 && semicolon) {
-                    // System.out.printf("accept [%d] Semicolon\n", nextState);
-                    tokens.add(Token.simple("Semicolon"));
-                }
-                iterator.next();
-                state = nextState;
-                // assert state > 0;
+        run(RunConfigs.LEXER_PARALLEL);
+    }
+
+    /**
+     * @param parallel 是否尝试并行分析, 仅在输入为映射的文件且语句分隔符必然是词法单元边界时生效
+     */
+    void run(boolean parallel) {
+        // 由词法规则生成的 DFA 驱动的词法分析过程
+        if (parallel
+            && iterator instanceof MappedCharSource mapped
+            && dfa.isDelimiter(STATEMENT_DELIMITER)) {
+            runParallel(mapped);
+        } else {
+            tokens = new TokenBuffer(iterator.content(), symbolTable);
+            scanInto(newScanner(iterator), tokens, symbolTable);
+        }
+        tokens.add(TokenKind.eof());
+        analyzed = true;
+    }
+
+    /**
+     * 映射的文件可以直接读取字节, 此时借助自环连续段的扫描核心越过空白, 标识符与数字
+     */
+    private DfaScanner newScanner(CharSource source) {
+        if (source instanceof MappedCharSource mapped) {
+            return new DfaScanner(dfa, source, new RunKernel(dfa, mapped.bytes(), RunConfigs.LEXER_VECTORIZED));
+        }
+        return new DfaScanner(dfa, source);
+    }
+
+    /**
+     * 将字符来源扫描到底, 词法单元依次加入缓冲区, 标识符驻留进给定的符号表
+     */
+    private void scanInto(DfaScanner scanner, TokenBuffer buffer, SymbolTable table) {
+        final var content = scanner.source().content();
+        int rule;
+        while ((rule = scanner.scan()) >= 0) {
+            final var matched = dfa.rules[rule];
+            if (matched.literal()) {
+                buffer.add(matched.kind());
+                continue;
+            }
+            if (matched.symbol()) {
+                final var symbol = table.intern(scanner.lexemeView(), scanner.tokenHash());
+                buffer.addSymbol(matched.kind(), scanner.tokenStart(), scanner.tokenLength(), symbol);
+                continue;
+            }
+            final var index = content != null
+                ? buffer.add(matched.kind(), scanner.tokenStart(), scanner.tokenLength())
+                : buffer.add(matched.kind(), scanner.lexeme());
+            if (matched.integer()) {
+                buffer.setIntValue(index, scanner.intValue());
+            }
+        }
+    }
+
+    /**
+     * 并行词法分析
+     * <br>
+     * 在语句分隔符之后把映射的输入切成若干段, 各段在 ForkJoinPool 中以各自的缓冲区与符号表独立分析,
+     * 再按顺序拼接, 并把各段的符号编号重映射到全局的符号表中. 由于分隔符不会出现在其它词法单元中,
+     * 拼接结果与顺序分析完全一致, 标识符第一次出现的顺序也不变.
+     */
+    private void runParallel(MappedCharSource mapped) {
+        final var content = mapped.content();
+        final var chunks = mapped.split(STATEMENT_DELIMITER, RunConfigs.LEXER_PARALLEL_CHUNK_SIZE);
+        final var pool = ForkJoinPool.commonPool();
+        final var tasks = new ArrayList<ForkJoinTask<Chunk>>(chunks.size());
+        for (final var chunk : chunks) {
+            tasks.add(pool.submit(() -> {
+                final var table = new SymbolTable();
+                final var local = new TokenBuffer(content, table);
+                scanInto(newScanner(chunk), local, table);
+                return new Chunk(local, table);
+            }));
+        }
+        tokens = new TokenBuffer(content, symbolTable);
+        // 按顺序等待, 保证报告的是输入中最靠前的错误
+        for (final var task : tasks) {
+            final var chunk = task.join();
+            final var remap = new int[chunk.symbols().size()];
+            for (int id = 0; id < remap.length; id++) {
+                remap[id] = symbolTable.intern(chunk.symbols().get(id).getText());
             }
-            state = 0;
+            tokens.appendAll(chunk.tokens(), remap);
         }
-        // System.out.println("accept [$] Done");
-        tokens.add(Token.eof());
+    }
+
+    private record Chunk(TokenBuffer tokens, SymbolTable symbols) {
     }
 
     /**
-     * 获得词法分析的结果, 保证在调用了 run 方法之后调用
+     * 扫描出下一个词法单元, 并维护符号表
      *
-     * @return Token 列表
+     * @param scanner 扫描器
+     * @return 下一个词法单元, 输入结束时返回 EOF
+     */
+    private Token nextToken(DfaScanner scanner) {
+        final var rule = scanner.scan();
+        if (rule < 0) {
+            return Token.eof();
+        }
+        final var matched = dfa.rules[rule];
+        final var kind = matched.kind();
+        final var content = iterator.content();
+        final Token token;
+        if (matched.literal()) {
+            token = Token.simple(kind);
+        } else if (matched.symbol()) {
+            final var symbol = symbolTable.intern(scanner.lexemeView(), scanner.tokenHash());
+            token = Token.symbol(kind, symbolTable.get(symbol).getText(), symbol);
+        } else if (content != null) {
+            token = matched.integer()
+                ? Token.integer(kind, content, scanner.tokenStart(), scanner.tokenLength(), scanner.intValue())
+                : Token.slice(kind, content, scanner.tokenStart(), scanner.tokenLength());
+        } else {
+            // 输入不可随机访问时只能把词素复制出来
+            final var text = scanner.lexeme();
+            token = matched.integer()
+                ? Token.integer(kind, text, 0, text.length(), scanner.intValue())
+                : Token.normal(kind, text);
+        }
+        if (RunConfigs.DEBUG) {
+            System.out.printf("accept %s at %d\n", token, scanner.tokenStart());
+        }
+        return token;
+    }
+
+    /**
+     * 获得词法分析的结果
+     * <br>
+     * 若已调用 run 方法, 返回分析完毕的 Token 列表的迭代器; 否则返回按需分析的迭代器,
+     * 每次取下一个 Token 时才进行分析, 符号表也随之逐步建立
+     *
+     * @return Token 迭代器
      */
     public Iterator<Token> getTokens() {
         // 从词法分析过程中获取 Token 列表
@@ -171,11 +215,87 @@ public class LexicalAnalyzer {
         // 亦可以直接分析完整个文件
         // 总之实现过程能转化为一列表即可
         // throw new NotImplementedException();
-        return tokens.iterator();
+        if (analyzed) {
+            return tokens.iterator();
+        }
+        if (streaming != null) {
+            return streaming;
+        }
+        final var scanner = newScanner(iterator);
+        final var symbolPath = symbolTeePath;
+        streaming = new TokenIterator(symbolPath == null ? () -> nextToken(scanner) : () -> {
+            final var token = nextToken(scanner);
+            if (token.getKind() == TokenKind.eof()) {
+                symbolTable.dumpNames(symbolPath);
+            }
+            return token;
+        });
+        if (teePath != null) {
+            streaming.tee(teePath);
+        }
+        return streaming;
+    }
+
+    /**
+     * 获得词法分析结果的游标, 已调用 run 方法时消费过程不会为不带文本的词法单元创建对象
+     *
+     * @return 词法单元游标
+     */
+    public TokenCursor getTokenCursor() {
+        if (analyzed) {
+            return tokens.cursor();
+        }
+        return TokenCursor.of(getTokens());
+    }
+
+    /**
+     * @return 词法分析得到的紧凑存储的词法单元序列, 保证在调用了 run 方法之后调用
+     */
+    public TokenBuffer getTokenBuffer() {
+        return tokens;
+    }
+
+    /**
+     * @return 以 Stream 形式获得词法分析的结果, 语义同 {@link #getTokens()}
+     */
+    public Stream<Token> tokenStream() {
+        final var characteristics = Spliterator.ORDERED | Spliterator.NONNULL | Spliterator.IMMUTABLE;
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(getTokens(), characteristics), false);
+    }
+
+    /**
+     * 按需分析时, 将产生的 Token 顺带写入文件, 须在 {@link #getTokens()} 之前调用
+     *
+     * @param path 文件路径
+     */
+    public void teeTokens(String path) {
+        if (analyzed) {
+            dumpTokens(path);
+        } else {
+            teePath = path;
+        }
+    }
+
+    /**
+     * 按需分析时, 在产生 EOF 词法单元时把符号表写入文件, 须在 {@link #getTokens()} 之前调用.
+     * 此时语义分析可能已经设置了部分条目的类型, 因此只写出符号的名字, 与先分析完整个文件再输出的符号表相同.
+     *
+     * @param path 文件路径
+     */
+    public void teeSymbolTable(String path) {
+        if (analyzed) {
+            symbolTable.dumpTable(path);
+        } else {
+            symbolTeePath = path;
+        }
     }
 
     public void dumpTokens(String path) {
-        FileUtils.writeLines(path, tokens.stream().map(Token::toString).toList());
+        final var lines = new ArrayList<String>(tokens.size());
+        for (final var token : tokens) {
+            lines.add(token.toString());
+        }
+        FileUtils.writeLines(path, lines);
     }
 
 }
@@ -0,0 +1,207 @@
+package cn.edu.hitsz.compiler.lexer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * 基于内存映射文件的零拷贝字符来源
+ * <br>
+ * 通过 {@link FileChannel#map} 映射整个源文件, 直接把 ASCII 字节当作字符读取, 不会把文件内容复制进堆中.
+ * 由于只有 ASCII 文本的字节与字符一一对应, 含非 ASCII 字节的文件无法使用该来源, 此时应退回到 {@link CharRingBuffer}.
+ *
+ * @author chiro
+ */
+public class MappedCharSource implements CharSource {
+    private static final long NON_ASCII_MASK = 0x8080808080808080L;
+
+    private final ByteBuffer bytes;
+    private final int begin;
+    private final int end;
+    private final CharSequence content;
+    private int head;
+
+    /**
+     * @param bytes 字节内容, 下标即为字符的绝对位置
+     * @param begin 读取的开始位置
+     * @param end   读取的结束位置 (不含)
+     */
+    public MappedCharSource(ByteBuffer bytes, int begin, int end) {
+        this(bytes, begin, end, new AsciiSequence(bytes, 0, bytes.limit()));
+    }
+
+    private MappedCharSource(ByteBuffer bytes, int begin, int end, CharSequence content) {
+        this.bytes = bytes;
+        this.begin = begin;
+        this.end = end;
+        this.head = begin;
+        this.content = content;
+    }
+
+    /**
+     * 在分隔符之后将尚未读取的部分切分为若干段, 各段共享同一块映射内存, 位置仍为绝对偏移
+     *
+     * @param delimiter 分隔符, 每段 (除最后一段外) 都以它结尾
+     * @param chunkSize 每段的最小长度
+     * @return 按顺序排列的各段
+     */
+    public List<MappedCharSource> split(char delimiter, int chunkSize) {
+        final var chunks = new ArrayList<MappedCharSource>();
+        int from = head;
+        while (from < end) {
+            int to = Math.min(end, from + chunkSize);
+            while (to < end && bytes.get(to - 1) != delimiter) {
+                to++;
+            }
+            chunks.add(new MappedCharSource(bytes, from, to, content));
+            from = to;
+        }
+        return chunks;
+    }
+
+    /**
+     * 映射文件, 若文件中含非 ASCII 字节则返回空
+     *
+     * @param path 文件路径
+     * @return 映射了整个文件的字符来源
+     * @throws IOException 文件读取失败
+     */
+    static public Optional<MappedCharSource> map(String path) throws IOException {
+        try (final var channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+            final var size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new RuntimeException("File too large to map: " + path);
+            }
+            final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            if (!isAscii(buffer)) {
+                return Optional.empty();
+            }
+            return Optional.of(new MappedCharSource(buffer, 0, (int) size));
+        }
+    }
+
+    /**
+     * 每次检查 8 个字节的最高位, 判断缓冲区内是否全为 ASCII 字节
+     */
+    private static boolean isAscii(ByteBuffer buffer) {
+        final var limit = buffer.limit();
+        final var wide = buffer.duplicate().order(ByteOrder.nativeOrder());
+        int i = 0;
+        for (; i + Long.BYTES <= limit; i += Long.BYTES) {
+            if ((wide.getLong(i) & NON_ASCII_MASK) != 0) {
+                return false;
+            }
+        }
+        for (; i < limit; i++) {
+            if (buffer.get(i) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public char current() {
+        return head < end ? (char) bytes.get(head) : DONE;
+    }
+
+    @Override
+    public char current(int index) {
+        final var target = head + index;
+        return target < end ? (char) bytes.get(target) : DONE;
+    }
+
+    @Override
+    public char last(int index) {
+        final var target = head - index;
+        return target >= begin ? (char) bytes.get(target) : DONE;
+    }
+
+    @Override
+    public char next() {
+        if (head < end) {
+            head++;
+        }
+        return current();
+    }
+
+    /**
+     * @return 映射文件的字节, 下标即为字符的绝对位置
+     */
+    ByteBuffer bytes() {
+        return bytes;
+    }
+
+    /**
+     * @return 读取的结束位置 (不含)
+     */
+    int end() {
+        return end;
+    }
+
+    @Override
+    public CharSequence content() {
+        return content;
+    }
+
+    /**
+     * 把 ASCII 字节原样当作字符的只读视图
+     */
+    private record AsciiSequence(ByteBuffer bytes, int from, int to) implements CharSequence {
+        @Override
+        public int length() {
+            return to - from;
+        }
+
+        @Override
+        public char charAt(int index) {
+            return (char) bytes.get(from + index);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return new AsciiSequence(bytes, from + start, from + end);
+        }
+
+        @Override
+        public String toString() {
+            final var chars = new byte[length()];
+            bytes.get(from, chars);
+            return new String(chars, StandardCharsets.US_ASCII);
+        }
+    }
+
+    @Override
+    public void skip(int count) {
+        head = Math.min(end, head + count);
+    }
+
+    @Override
+    public boolean hasNext() {
+        return head < end;
+    }
+
+    @Override
+    public int position() {
+        return head;
+    }
+
+    @Override
+    public String toString() {
+        final var from = Math.max(begin, head - 1);
+        final var builder = new StringBuilder();
+        for (int i = from; i < Math.min(end, from + 16); i++) {
+            final var c = (char) bytes.get(i);
+            builder.append(c == '\n' ? ' ' : c);
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,157 @@
+package cn.edu.hitsz.compiler.lexer;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+
+/**
+ * 自环连续段的扫描核心
+ * <br>
+ * 源程序中的大部分字符都处在空白, 标识符与数字的连续段中, 而这些连续段在 DFA 中对应的正是带自环的状态:
+ * 一旦进入这样的状态, 只要输入字符仍属于自环的字符集合, 状态就不会改变. 扫描核心对每个带自环的状态预先算出该字符集合,
+ * 扫描器进入该状态后可以一次性求出连续段的长度, 而不必逐字符查转移表.
+ * <br>
+ * 扫描核心直接读取映射文件的字节, 只对 {@link MappedCharSource} 生效. 向量化时借助 vector 源集中的 VectorRuns
+ * 每次比较一整个向量的字节, 否则 (或 {@code jdk.incubator.vector} 模块与 VectorRuns 不可用时) 逐字节查表.
+ * VectorRuns 以反射加载, 因此 main 源集的编译不依赖孵化模块.
+ * 无论哪种方式, 得到的词法单元都与逐字符查转移表完全一致.
+ *
+ * @author chiro
+ */
+final class RunKernel {
+    private static final String VECTOR_MODULE = "jdk.incubator.vector";
+    /**
+     * VectorRuns.skip, 向量模块或 VectorRuns 不可用时为 null
+     */
+    private static final MethodHandle VECTOR_SKIP = findVectorSkip();
+    /**
+     * 自环字符集合至多拆成这么多个连续区间才使用向量比较
+     */
+    static final int MAX_RANGES = 4;
+    /**
+     * 大部分标识符与数字都很短, 连续段的前若干个字节总是逐字节判断, 更长的连续段 (缩进, 长标识符等) 才使用向量比较
+     */
+    private static final int SHORT_RUN = 8;
+
+    private final ByteBuffer bytes;
+    private final boolean vectorized;
+    /**
+     * 以 {@code state * 128 + c} 为下标, 记录字符 c 是否属于该状态的自环字符集合
+     */
+    private final boolean[] members;
+    private final boolean[] runs;
+    /**
+     * 每个状态的自环字符区间的下界与跨度, 不足 {@link #MAX_RANGES} 个的以第一个区间补齐, 为 null 时该状态不使用向量比较
+     */
+    private final byte[][] lowerBounds;
+    private final byte[][] spans;
+
+    /**
+     * @param table      DFA
+     * @param bytes      映射文件的字节
+     * @param vectorized 是否尝试使用向量比较, 向量模块不可用时退回逐字节查表
+     */
+    RunKernel(DfaTable table, ByteBuffer bytes, boolean vectorized) {
+        this.bytes = bytes;
+        this.vectorized = vectorized && VECTOR_SKIP != null;
+        final var stateCount = table.getStateCount();
+        this.members = new boolean[stateCount * DfaTable.ASCII_SIZE];
+        this.runs = new boolean[stateCount];
+        this.lowerBounds = new byte[stateCount][];
+        this.spans = new byte[stateCount][];
+        for (int state = 0; state < stateCount; state++) {
+            final var lowers = new ArrayList<Byte>();
+            final var uppers = new ArrayList<Byte>();
+            for (byte c = 0; c >= 0; c++) {
+                if (table.next(state, (char) c) != state) {
+                    continue;
+                }
+                members[state * DfaTable.ASCII_SIZE + c] = true;
+                runs[state] = true;
+                if (!uppers.isEmpty() && uppers.get(uppers.size() - 1) == c - 1) {
+                    uppers.set(uppers.size() - 1, c);
+                } else {
+                    lowers.add(c);
+                    uppers.add(c);
+                }
+            }
+            if (runs[state] && lowers.size() <= MAX_RANGES) {
+                lowerBounds[state] = new byte[MAX_RANGES];
+                spans[state] = new byte[MAX_RANGES];
+                for (int i = 0; i < MAX_RANGES; i++) {
+                    final var range = i < lowers.size() ? i : 0;
+                    lowerBounds[state][i] = lowers.get(range);
+                    spans[state][i] = (byte) (uppers.get(range) - lowers.get(range));
+                }
+            }
+        }
+    }
+
+    /**
+     * @return 是否在使用向量比较
+     */
+    boolean isVectorized() {
+        return vectorized;
+    }
+
+    /**
+     * @param state 状态
+     * @return 该状态是否带有自环
+     */
+    boolean hasRun(int state) {
+        return runs[state];
+    }
+
+    /**
+     * 求从 from 开始, 属于该状态自环字符集合的连续字节的数量
+     *
+     * @param state 带自环的状态
+     * @param from  开始位置
+     * @param to    结束位置 (不含)
+     * @return 连续段的长度
+     */
+    int run(int state, int from, int to) {
+        final var base = state * DfaTable.ASCII_SIZE;
+        int i = from;
+        final var shortEnd = Math.min(to, from + SHORT_RUN);
+        while (i < shortEnd && isMember(base, bytes.get(i))) {
+            i++;
+        }
+        if (i < shortEnd || i == to) {
+            return i - from;
+        }
+        if (vectorized && lowerBounds[state] != null) {
+            i = vectorSkip(lowerBounds[state], spans[state], i, to);
+        }
+        while (i < to && isMember(base, bytes.get(i))) {
+            i++;
+        }
+        return i - from;
+    }
+
+    private boolean isMember(int base, byte b) {
+        return b >= 0 && members[base + b];
+    }
+
+    private int vectorSkip(byte[] lowers, byte[] spans, int from, int to) {
+        try {
+            return (int) VECTOR_SKIP.invokeExact(bytes, lowers, spans, from, to);
+        } catch (Throwable e) {
+            throw new RuntimeException("Vector scanning failed", e);
+        }
+    }
+
+    private static MethodHandle findVectorSkip() {
+        if (ModuleLayer.boot().findModule(VECTOR_MODULE).isEmpty()) {
+            return null;
+        }
+        try {
+            final var type = MethodType.methodType(int.class, ByteBuffer.class, byte[].class, byte[].class, int.class, int.class);
+            return MethodHandles.lookup().findStatic(Class.forName(RunKernel.class.getPackageName() + ".VectorRuns"), "skip", type);
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return null;
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package cn.edu.hitsz.compiler.lexer;
 
+import cn.edu.hitsz.compiler.symtab.SymbolTable;
+
 /**
  * 词法单元的实现, 你不应该修改该文件
  * <br>
@@ -10,6 +12,10 @@ package cn.edu.hitsz.compiler.lexer;
  * <br>
  * 为了方便与统一词法单元的构造, 我们将词法单元的构造函数设为了私有的, 通过公有静态函数进行构造,
  * 这将提升代码可读性并便于我们在构造时执行一定的检查
+ * <br>
+ * 带文本的 token 可以只引用源文本中的一段 (偏移与长度), 其文本直到第一次调用 {@link #getText()} 时才会被复制出来.
+ * 整数字面量的值可以由词法分析器预先解码, 通过 {@link #getIntValue()} 获得, 而不必再次解析文本.
+ * 标识符则携带其在符号表中的编号, 通过 {@link #getSymbolId()} 获得, 之后的阶段不必再按文本查找符号表.
  *
  * @see TokenKind 词法单元的类型, 其具有一定的复杂结构
  */
@@ -18,10 +24,12 @@ public class Token {
      * @return 代表 EOF 的 token
      */
     public static Token eof() {
-        return new Token(TokenKind.eof(), "");
+        return TokenKind.eof().simpleToken;
     }
 
     /**
+     * 需要按字符串查找 token 类型, 在频繁调用的场合请使用 {@link #simple(TokenKind)}
+     *
      * @param tokenKindId token 类型的字符串表示
      * @return 具有该 token 类型的一简单 token (不带其它文本表示, 比如标点/关键字)
      */
@@ -30,11 +38,13 @@ public class Token {
     }
 
     /**
+     * 简单 token 不可变且只由类型决定, 因此每个类型共享同一个单例, 不会产生新的对象
+     *
      * @param kind token 类型
      * @return 具有该 token 类型的一简单 token (不带其它文本表示, 比如标点/关键字)
      */
     public static Token simple(TokenKind kind) {
-        return normal(kind, "");
+        return kind.simpleToken;
     }
 
     /**
@@ -51,7 +61,40 @@ public class Token {
      * @return 具有该 token 类型的一正常 token (带其它文本, 比如标识符/数字文本)
      */
     public static Token normal(TokenKind kind, String text) {
-        return new Token(kind, text);
+        return new Token(kind, text, null, 0, text.length(), false, 0, SymbolTable.NO_ID);
+    }
+
+    /**
+     * @param kind   token 类型
+     * @param source 源文本
+     * @param offset 词素在源文本中的偏移
+     * @param length 词素的长度
+     * @return 引用源文本中一段的 token, 不会复制词素
+     */
+    public static Token slice(TokenKind kind, CharSequence source, int offset, int length) {
+        return new Token(kind, null, source, offset, length, false, 0, SymbolTable.NO_ID);
+    }
+
+    /**
+     * @param kind   token 类型
+     * @param source 源文本
+     * @param offset 词素在源文本中的偏移
+     * @param length 词素的长度
+     * @param value  词法分析时已解码的整数值
+     * @return 引用源文本中一段且带有整数值的 token
+     */
+    public static Token integer(TokenKind kind, CharSequence source, int offset, int length, int value) {
+        return new Token(kind, null, source, offset, length, true, value, SymbolTable.NO_ID);
+    }
+
+    /**
+     * @param kind     token 类型
+     * @param text     标识符的文本, 通常即为符号表条目中的文本
+     * @param symbolId 标识符在符号表中的编号
+     * @return 携带符号表编号的标识符 token
+     */
+    public static Token symbol(TokenKind kind, String text, int symbolId) {
+        return new Token(kind, text, null, 0, text.length(), false, 0, symbolId);
     }
 
     /**
@@ -72,19 +115,72 @@ public class Token {
      * @return 该 token 的文本, 有可能为空字符串 (但恒不为 null)
      */
     public String getText() {
+        if (text == null) {
+            text = source.subSequence(offset, offset + length).toString();
+        }
         return text;
     }
 
+    /**
+     * @return 该 token 的文本长度
+     */
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * @return 词法分析时是否已解码出整数值
+     */
+    public boolean hasIntValue() {
+        return hasIntValue;
+    }
+
+    /**
+     * @return 该 token 表示的整数值, 若词法分析时未解码则解析其文本
+     */
+    public int getIntValue() {
+        return hasIntValue ? intValue : Integer.parseInt(getText());
+    }
+
     @Override
     public String toString() {
-        return "(%s,%s)".formatted(kind, text);
+        return "(%s,%s)".formatted(kind, getText());
+    }
+
+    /**
+     * @return 该 token 在符号表中的编号, 不是由词法分析器驻留的标识符时返回 {@link SymbolTable#NO_ID}
+     */
+    public int getSymbolId() {
+        return symbolId;
     }
 
-    private Token(TokenKind kind, String text) {
+    /**
+     * 仅供 TokenKind 构造自身的简单 token 单例
+     */
+    static Token simpleOf(TokenKind kind) {
+        return new Token(kind, "", null, 0, 0, false, 0, SymbolTable.NO_ID);
+    }
+
+    private Token(TokenKind kind, String text, CharSequence source, int offset, int length, boolean hasIntValue, int intValue, int symbolId) {
         this.kind = kind;
         this.text = text;
+        this.source = source;
+        this.offset = offset;
+        this.length = length;
+        this.hasIntValue = hasIntValue;
+        this.intValue = intValue;
+        this.symbolId = symbolId;
     }
 
     private final TokenKind kind;
-    private final String text;
+    private final CharSequence source;
+    private final int offset;
+    private final int length;
+    private final boolean hasIntValue;
+    private final int intValue;
+    private final int symbolId;
+    /**
+     * 引用源文本的 token 在第一次取文本时才填充
+     */
+    private String text;
 }
@@ -0,0 +1,300 @@
+package cn.edu.hitsz.compiler.lexer;
+
+import cn.edu.hitsz.compiler.symtab.SymbolTable;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * 以数组结构 (struct of arrays) 紧凑存储的词法单元序列
+ * <br>
+ * 每个词法单元只占用三个 int: 类型的码点 ({@link TokenKind#getCode()}), 以及词素在输入中的偏移与长度.
+ * 不带文本的词法单元偏移记为 -1. 若输入不可随机访问, 词素会被复制进缓冲区自带的字符池, 偏移与长度则指向字符池.
+ * <br>
+ * 另有一个 int 附加值: 整数字面量存放词法分析时解码出的值, 标识符存放其在 {@link SymbolTable} 中的编号,
+ * 这类词法单元的文本直接取自符号表, 偏移与长度只记录其在输入中的位置.
+ * <br>
+ * 通过 {@link #cursor()} 消费时不会为每个词法单元创建对象, 只有调用 {@link TokenCursor#token()} 时才会构造 Token.
+ *
+ * @author chiro
+ */
+public class TokenBuffer implements Iterable<Token> {
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final int NO_TEXT = -1;
+    private static final byte NO_VALUE = 0;
+    private static final byte INT_VALUE = 1;
+    private static final byte SYMBOL_VALUE = 2;
+
+    private final CharSequence source;
+    private final StringBuilder pool;
+    private final SymbolTable symbols;
+    private int[] kinds = new int[INITIAL_CAPACITY];
+    private int[] offsets = new int[INITIAL_CAPACITY];
+    private int[] lengths = new int[INITIAL_CAPACITY];
+    private int[] values = new int[INITIAL_CAPACITY];
+    private byte[] valueKinds = new byte[INITIAL_CAPACITY];
+    private int size = 0;
+
+    /**
+     * @param source  词素所在的输入, 为 null 时词素需通过 {@link #add(TokenKind, CharSequence)} 复制进字符池
+     * @param symbols 标识符所在的符号表, 没有标识符时可以为 null
+     */
+    public TokenBuffer(CharSequence source, SymbolTable symbols) {
+        this.source = source;
+        this.pool = source == null ? new StringBuilder() : null;
+        this.symbols = symbols;
+    }
+
+    private int append(int code, int offset, int length) {
+        if (size == kinds.length) {
+            final var capacity = size * 2;
+            kinds = Arrays.copyOf(kinds, capacity);
+            offsets = Arrays.copyOf(offsets, capacity);
+            lengths = Arrays.copyOf(lengths, capacity);
+            values = Arrays.copyOf(values, capacity);
+            valueKinds = Arrays.copyOf(valueKinds, capacity);
+        }
+        kinds[size] = code;
+        offsets[size] = offset;
+        lengths[size] = length;
+        valueKinds[size] = NO_VALUE;
+        return size++;
+    }
+
+    /**
+     * 加入不带文本的词法单元
+     *
+     * @param kind 类型
+     * @return 加入的词法单元的下标
+     */
+    public int add(TokenKind kind) {
+        return append(kind.getCode(), NO_TEXT, 0);
+    }
+
+    /**
+     * 加入词素直接引用输入的词法单元
+     *
+     * @param kind   类型
+     * @param offset 词素在输入中的偏移
+     * @param length 词素的长度
+     * @return 加入的词法单元的下标
+     */
+    public int add(TokenKind kind, int offset, int length) {
+        if (source == null) {
+            throw new RuntimeException("Token buffer without source can not refer to lexemes by offset");
+        }
+        return append(kind.getCode(), offset, length);
+    }
+
+    /**
+     * 加入词素复制进字符池的词法单元
+     *
+     * @param kind 类型
+     * @param text 词素
+     * @return 加入的词法单元的下标
+     */
+    public int add(TokenKind kind, CharSequence text) {
+        if (pool == null) {
+            throw new RuntimeException("Token buffer with source should refer to lexemes by offset");
+        }
+        final var offset = pool.length();
+        pool.append(text);
+        return append(kind.getCode(), offset, text.length());
+    }
+
+    /**
+     * 加入已驻留进符号表的标识符
+     *
+     * @param kind     类型
+     * @param position 词素在输入中的位置
+     * @param length   词素的长度
+     * @param symbol   标识符在符号表中的编号
+     * @return 加入的词法单元的下标
+     */
+    public int addSymbol(TokenKind kind, int position, int length, int symbol) {
+        if (symbols == null) {
+            throw new RuntimeException("Token buffer without symbol table can not refer to symbols");
+        }
+        final var index = append(kind.getCode(), position, length);
+        values[index] = symbol;
+        valueKinds[index] = SYMBOL_VALUE;
+        return index;
+    }
+
+    /**
+     * 为已加入的词法单元附上词法分析时解码出的整数值
+     *
+     * @param index 下标
+     * @param value 整数值
+     */
+    public void setIntValue(int index, int value) {
+        values[index] = value;
+        valueKinds[index] = INT_VALUE;
+    }
+
+    /**
+     * 将另一个缓冲区中的词法单元按顺序追加到末尾, 两者的词素须引用同一个输入
+     *
+     * @param other       另一个缓冲区
+     * @param symbolRemap 另一个缓冲区的符号表中的编号到本缓冲区的符号表中的编号的映射
+     */
+    public void appendAll(TokenBuffer other, int[] symbolRemap) {
+        if (other.source != source || other.source == null) {
+            throw new RuntimeException("Only token buffers referring to the same source can be concatenated");
+        }
+        final var required = size + other.size;
+        if (required > kinds.length) {
+            final var capacity = Math.max(required, size * 2);
+            kinds = Arrays.copyOf(kinds, capacity);
+            offsets = Arrays.copyOf(offsets, capacity);
+            lengths = Arrays.copyOf(lengths, capacity);
+            values = Arrays.copyOf(values, capacity);
+            valueKinds = Arrays.copyOf(valueKinds, capacity);
+        }
+        System.arraycopy(other.kinds, 0, kinds, size, other.size);
+        System.arraycopy(other.offsets, 0, offsets, size, other.size);
+        System.arraycopy(other.lengths, 0, lengths, size, other.size);
+        System.arraycopy(other.values, 0, values, size, other.size);
+        System.arraycopy(other.valueKinds, 0, valueKinds, size, other.size);
+        for (int i = size; i < required; i++) {
+            if (valueKinds[i] == SYMBOL_VALUE) {
+                values[i] = symbolRemap[values[i]];
+            }
+        }
+        size = required;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int kindCode(int index) {
+        return kinds[index];
+    }
+
+    public TokenKind kind(int index) {
+        return TokenKind.fromCode(kinds[index]);
+    }
+
+    public boolean hasText(int index) {
+        return offsets[index] != NO_TEXT;
+    }
+
+    public int offset(int index) {
+        return offsets[index];
+    }
+
+    public int length(int index) {
+        return lengths[index];
+    }
+
+    public boolean hasIntValue(int index) {
+        return valueKinds[index] == INT_VALUE;
+    }
+
+    /**
+     * @param index 下标
+     * @return 整数字面量的值, 或标识符在符号表中的编号
+     */
+    public int value(int index) {
+        return values[index];
+    }
+
+    /**
+     * @param index 下标
+     * @return 词素, 不带文本的词法单元返回空字符串
+     */
+    public CharSequence text(int index) {
+        if (!hasText(index)) {
+            return "";
+        }
+        if (valueKinds[index] == SYMBOL_VALUE) {
+            return symbols.get(values[index]).getText();
+        }
+        final var text = source != null ? source : pool;
+        return text.subSequence(offsets[index], offsets[index] + lengths[index]);
+    }
+
+    /**
+     * @param index 下标
+     * @return 构造出的 Token, 不带文本的词法单元返回共享的单例, 其余词法单元只引用输入或符号表而不复制文本
+     */
+    public Token token(int index) {
+        final var kind = kind(index);
+        if (!hasText(index)) {
+            return Token.simple(kind);
+        }
+        final var text = source != null ? source : pool;
+        return switch (valueKinds[index]) {
+            case SYMBOL_VALUE -> Token.symbol(kind, symbols.get(values[index]).getText(), values[index]);
+            case INT_VALUE -> Token.integer(kind, text, offsets[index], lengths[index], values[index]);
+            default -> Token.slice(kind, text, offsets[index], lengths[index]);
+        };
+    }
+
+    @Override
+    public Iterator<Token> iterator() {
+        return new Iterator<>() {
+            private int index = 0;
+
+            @Override
+            public boolean hasNext() {
+                return index < size;
+            }
+
+            @Override
+            public Token next() {
+                if (index >= size) {
+                    throw new NoSuchElementException();
+                }
+                return token(index++);
+            }
+        };
+    }
+
+    /**
+     * @return 从头开始的游标
+     */
+    public TokenCursor cursor() {
+        return cursor(0, size);
+    }
+
+    /**
+     * @param from 第一个词法单元的下标
+     * @param to   最后一个词法单元的下标加一
+     * @return 只遍历 [from, to) 中的词法单元的游标
+     */
+    public TokenCursor cursor(int from, int to) {
+        if (from < 0 || to > size || from > to) {
+            throw new IndexOutOfBoundsException("Token range [%d, %d) out of [0, %d)".formatted(from, to, size));
+        }
+        return new TokenCursor() {
+            private int index = from - 1;
+
+            @Override
+            public boolean advance() {
+                if (index + 1 >= to) {
+                    return false;
+                }
+                index++;
+                return true;
+            }
+
+            @Override
+            public TokenKind kind() {
+                return TokenKind.fromCode(kinds[index]);
+            }
+
+            @Override
+            public int code() {
+                return kinds[index];
+            }
+
+            @Override
+            public Token token() {
+                return TokenBuffer.this.token(index);
+            }
+        };
+    }
+}
@@ -0,0 +1,67 @@
+package cn.edu.hitsz.compiler.lexer;
+
+import java.util.Iterator;
+
+/**
+ * 词法单元游标
+ * <br>
+ * 与 {@code Iterator<Token>} 不同, 游标可以只暴露当前词法单元的类型, 只有在确实需要 Token 对象时 (例如通知观察者时)
+ * 才通过 {@link #token()} 构造它, 使得以紧凑形式存储的词法单元在被消费时不必为每个词法单元都创建对象.
+ *
+ * @author chiro
+ * @see TokenBuffer
+ */
+public interface TokenCursor {
+    /**
+     * 前进到下一个词法单元, 首次调用时前进到第一个词法单元
+     *
+     * @return 是否存在下一个词法单元
+     */
+    boolean advance();
+
+    /**
+     * @return 当前词法单元的类型
+     */
+    TokenKind kind();
+
+    /**
+     * @return 当前词法单元类型的码点
+     */
+    default int code() {
+        return kind().getCode();
+    }
+
+    /**
+     * @return 当前词法单元, 不带文本的词法单元返回共享的单例
+     */
+    Token token();
+
+    /**
+     * @param tokens Token 迭代器
+     * @return 在迭代器上的游标
+     */
+    static TokenCursor of(Iterator<Token> tokens) {
+        return new TokenCursor() {
+            private Token current = null;
+
+            @Override
+            public boolean advance() {
+                if (!tokens.hasNext()) {
+                    return false;
+                }
+                current = tokens.next();
+                return true;
+            }
+
+            @Override
+            public TokenKind kind() {
+                return current.getKind();
+            }
+
+            @Override
+            public Token token() {
+                return current;
+            }
+        };
+    }
+}
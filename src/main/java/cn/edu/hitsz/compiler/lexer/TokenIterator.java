@@ -1,4 +1,74 @@
 package cn.edu.hitsz.compiler.lexer;
 
-public class TokenIterator {
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.Supplier;
+
+/**
+ * 按需进行词法分析的 Token 迭代器
+ * <br>
+ * 每次调用 {@link #next()} 时才从字符来源中扫描出下一个词法单元, 使语法分析可以与词法分析交替进行, 而不必先把整个文件的
+ * 词法单元存进列表. 迭代在产生 EOF 词法单元后结束.
+ * <br>
+ * 可以选择把产生的每个词法单元顺带写入文件 (tee), 效果与分析完毕后调用 {@link LexicalAnalyzer#dumpTokens(String)} 相同.
+ *
+ * @author chiro
+ */
+public class TokenIterator implements Iterator<Token> {
+    private final Supplier<Token> producer;
+    private Writer tee = null;
+    private boolean done = false;
+
+    /**
+     * @param producer 每次调用产生下一个词法单元, 输入结束时应产生 EOF 词法单元
+     */
+    TokenIterator(Supplier<Token> producer) {
+        this.producer = producer;
+    }
+
+    /**
+     * 将之后产生的词法单元逐行写入文件, 在产生 EOF 词法单元后关闭该文件
+     *
+     * @param path 文件路径
+     * @return this
+     */
+    public TokenIterator tee(String path) {
+        try {
+            tee = Files.newBufferedWriter(Paths.get(path), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new RuntimeException("IO Exception for " + path, e);
+        }
+        return this;
+    }
+
+    @Override
+    public boolean hasNext() {
+        return !done;
+    }
+
+    @Override
+    public Token next() {
+        if (done) {
+            throw new NoSuchElementException();
+        }
+        final var token = producer.get();
+        done = token.getKind() == TokenKind.eof();
+        if (tee != null) {
+            try {
+                tee.write(token.toString());
+                tee.write(System.lineSeparator());
+                if (done) {
+                    tee.close();
+                }
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+        return token;
+    }
 }
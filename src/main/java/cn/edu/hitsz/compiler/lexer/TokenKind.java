@@ -4,6 +4,7 @@ import cn.edu.hitsz.compiler.parser.table.Term;
 import cn.edu.hitsz.compiler.utils.FilePathConfig;
 import cn.edu.hitsz.compiler.utils.FileUtils;
 
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
@@ -29,6 +30,8 @@ public class TokenKind extends Term {
     // 允许用作 TokenKind 的 id 的字符串集合
     private static final Map<String, TokenKind> allowed = new HashMap<>();
     private static final TokenKind eof = new TokenKind("$", -1);
+    // 按码点索引的 TokenKind, 供紧凑存储码点的 TokenBuffer 还原类型
+    private static TokenKind[] byCode = new TokenKind[0];
 
     /**
      * 从码点文件中读取允许的标识符集合
@@ -47,7 +50,12 @@ public class TokenKind extends Term {
             final var code = Integer.parseInt(words[0]);
             final var id = words[1];
 
-            allowed.put(id, new TokenKind(id, code));
+            final var kind = new TokenKind(id, code);
+            allowed.put(id, kind);
+            if (code >= byCode.length) {
+                byCode = Arrays.copyOf(byCode, code + 1);
+            }
+            byCode[code] = kind;
         }
 
         // EOF
@@ -86,6 +94,22 @@ public class TokenKind extends Term {
         return allowed.get(id);
     }
 
+    /**
+     * @param code 码点
+     * @return 具有该码点的 TokenKind
+     * @throws RuntimeException 码点文件尚未被读取, 或不存在具有该码点的 TokenKind
+     */
+    public static TokenKind fromCode(int code) {
+        if (code == eof.code) {
+            return eof;
+        }
+        if (code < 0 || code >= byCode.length || byCode[code] == null) {
+            throw new RuntimeException("Illegal code: " + code);
+        }
+
+        return byCode[code];
+    }
+
     /**
      * @return 代表 EOF 的 TokenKind
      */
@@ -110,7 +134,10 @@ public class TokenKind extends Term {
     private TokenKind(String id, int code) {
         super(id);
         this.code = code;
+        this.simpleToken = Token.simpleOf(this);
     }
 
     private final int code;
+    // 该类型的不带文本的 token 单例, 见 Token#simple(TokenKind)
+    final Token simpleToken;
 }
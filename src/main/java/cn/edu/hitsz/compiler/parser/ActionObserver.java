@@ -17,7 +17,8 @@ import cn.edu.hitsz.compiler.symtab.SymbolTable;
  * ProductionCollector 类
  * <br>
  * 注意观察者并不能访问到 LR 驱动程序维护着的状态栈, 观察者之间维护的栈信息也不应该互相访问. 每一个实现该接口的观察者需要自己定义自己需要的
- * 状态信息并维护自己的状态栈.
+ * 状态信息并维护自己的状态栈. 唯一的例外是分析栈中的文法符号: 声明了 {@link #needsSymbolStack()} 的观察者可以在回调中通过
+ * {@link SyntaxAnalyzer#symbolAt(int)} 只读地查看它们.
  *
  * @see ProductionCollector
  * @see SyntaxAnalyzer
@@ -54,4 +55,41 @@ public interface ActionObserver {
      * @param table 符号表
      */
     void setSymbolTable(SymbolTable table);
+
+    /**
+     * 驱动程序在开始分析前按各观察者声明的兴趣预先计算分派表, 只通知关心某一动作的观察者.
+     * 不关心移入的观察者不会收到 {@link #whenShift}, 若所有观察者都不关心移入, 驱动程序也不必为移入构造 Token 对象.
+     *
+     * @return 是否需要在移入时被通知
+     */
+    default boolean caresAboutShift() {
+        return true;
+    }
+
+    /**
+     * 观察者只会在规约它关心的产生式时收到 {@link #whenReduce}, 只在 switch 的默认分支中什么都不做的产生式不必关心
+     *
+     * @param production 产生式
+     * @return 是否需要在规约该产生式时被通知
+     */
+    default boolean caresAboutReduce(Production production) {
+        return true;
+    }
+
+    /**
+     * @return 是否需要在接受时被通知
+     */
+    default boolean caresAboutAccept() {
+        return true;
+    }
+
+    /**
+     * 驱动程序默认只维护状态编号栈. 需要查看分析栈中的文法符号的观察者 (例如调试用的观察者) 应返回 true,
+     * 此时驱动程序会额外维护一个平行的文法符号栈, 可通过 {@link SyntaxAnalyzer#symbolAt(int)} 读取.
+     *
+     * @return 是否需要驱动程序维护文法符号栈
+     */
+    default boolean needsSymbolStack() {
+        return false;
+    }
 }
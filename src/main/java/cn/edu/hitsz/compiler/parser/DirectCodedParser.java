@@ -0,0 +1,170 @@
+package cn.edu.hitsz.compiler.parser;
+
+import cn.edu.hitsz.compiler.lexer.Token;
+import cn.edu.hitsz.compiler.lexer.TokenCursor;
+import cn.edu.hitsz.compiler.lexer.TokenKind;
+import cn.edu.hitsz.compiler.parser.table.Action;
+import cn.edu.hitsz.compiler.parser.table.GrammarInfo;
+import cn.edu.hitsz.compiler.parser.table.NonTerminal;
+import cn.edu.hitsz.compiler.parser.table.Production;
+import cn.edu.hitsz.compiler.parser.table.Status;
+import cn.edu.hitsz.compiler.symtab.SymbolTable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * 直接编码的 LR 语法分析器的基类
+ * <br>
+ * 由 {@link cn.edu.hitsz.compiler.parser.table.ParserGenerator} 从 LR 分析表生成的子类把每个状态写成 switch 的一个分支,
+ * 移入与规约直接写成代码, 不再查表. 基类负责其余部分: 观察者的注册与分派 (与 {@link SyntaxAnalyzer} 一样只通知关心某一动作的观察者),
+ * 词法单元游标, 状态栈以及由生成的表项构造的, 通知观察者用的 {@link Status}. 子类只应在生成的 {@link #parse()} 中使用这里的受保护方法.
+ *
+ * @author chiro
+ */
+public abstract class DirectCodedParser {
+    private static final int INITIAL_STACK_SIZE = 256;
+
+    private final SymbolTable symbolTable;
+    private final List<ActionObserver> observers = new ArrayList<>();
+    private final Status[] statuses;
+    private final Production[] productions;
+    private ObserverDispatch dispatch = null;
+    private TokenCursor tokens = null;
+    private int[] states = new int[INITIAL_STACK_SIZE];
+    private int top = -1;
+
+    /**
+     * 以生成的表项构造通知观察者的 Status, 其 ACTION 与 GOTO 与生成时的 LR 分析表相同
+     *
+     * @param symbolTable   符号表
+     * @param statusIndices 以状态编号为下标, 各状态在 LR 分析表中的索引
+     * @param actions       以状态编号为下标, 各状态的 ACTION 表项, 每项为终结符的码点, {@link Action.ActionKind} 的序号与操作数
+     *                      (移入的目标状态编号或规约的产生式编号)
+     * @param nonTerminals  GOTO 表中的非终结符
+     * @param gotos         以状态编号为下标, 各状态的 GOTO 表项, 每项为非终结符在 nonTerminals 中的下标与目标状态编号
+     */
+    protected DirectCodedParser(SymbolTable symbolTable, int[] statusIndices, int[][] actions, String[] nonTerminals, int[][] gotos) {
+        this.symbolTable = symbolTable;
+        final var productionList = GrammarInfo.getProductionsInOrder();
+        this.productions = new Production[productionList.size() + 1];
+        for (final var production : productionList) {
+            productions[production.index()] = production;
+        }
+
+        this.statuses = new Status[statusIndices.length];
+        for (int id = 0; id < statuses.length; id++) {
+            statuses[id] = new Status(statusIndices[id], new HashMap<>(), new HashMap<>());
+        }
+        final var kinds = Action.ActionKind.values();
+        for (int id = 0; id < statuses.length; id++) {
+            final var row = actions[id];
+            for (int i = 0; i < row.length; i += 3) {
+                final var operand = row[i + 2];
+                statuses[id].action().put(TokenKind.fromCode(row[i]), switch (kinds[row[i + 1]]) {
+                    case Shift -> Action.shift(statuses[operand]);
+                    case Reduce -> Action.reduce(productions[operand]);
+                    case Accept -> Action.accept();
+                    case Error -> Action.error();
+                });
+            }
+            for (int i = 0; i < gotos[id].length; i += 2) {
+                statuses[id].goto_().put(new NonTerminal(nonTerminals[gotos[id][i]]), statuses[gotos[id][i + 1]]);
+            }
+        }
+    }
+
+    /**
+     * 注册新的观察者
+     *
+     * @param observer 观察者
+     */
+    public void registerObserver(ActionObserver observer) {
+        observers.add(observer);
+        observer.setSymbolTable(symbolTable);
+        dispatch = null;
+    }
+
+    public void loadTokens(Iterator<Token> tokens) {
+        this.tokens = TokenCursor.of(tokens);
+    }
+
+    public void loadTokens(TokenCursor tokens) {
+        this.tokens = tokens;
+    }
+
+    /**
+     * 执行语法分析, 在遇到移入, 规约与接受时通知观察者
+     */
+    public void run() {
+        if (dispatch == null) {
+            dispatch = new ObserverDispatch(observers);
+        }
+        top = -1;
+        parse();
+    }
+
+    /**
+     * 生成的分析过程
+     */
+    protected abstract void parse();
+
+    /**
+     * @return 是否存在下一个词法单元
+     */
+    protected final boolean advance() {
+        return tokens.advance();
+    }
+
+    /**
+     * @return 当前词法单元类型的码点
+     */
+    protected final int code() {
+        return tokens.code();
+    }
+
+    /**
+     * 压入状态并通知观察者移入了当前词法单元
+     *
+     * @param status 移入后的状态编号
+     */
+    protected final void shift(int status) {
+        if (dispatch.shiftObservers().length > 0) {
+            dispatch.notifyShift(statuses[status], tokens.token());
+        }
+        push(status);
+    }
+
+    /**
+     * 弹出产生式体并通知观察者规约
+     *
+     * @param production 产生式编号
+     * @param length     产生式体的长度
+     * @return 弹出后栈顶的状态编号, 之后应由子类按产生式头部转移并 {@link #push(int)}
+     */
+    protected final int reduce(int production, int length) {
+        top -= length;
+        dispatch.notifyReduce(statuses[states[top]], productions[production]);
+        return states[top];
+    }
+
+    /**
+     * 通知观察者接受
+     */
+    protected final void accept() {
+        dispatch.notifyAccept(statuses[states[top]]);
+    }
+
+    /**
+     * @param status 状态编号
+     */
+    protected final void push(int status) {
+        if (++top == states.length) {
+            states = Arrays.copyOf(states, states.length * 2);
+        }
+        states[top] = status;
+    }
+}
@@ -2,71 +2,119 @@ package cn.edu.hitsz.compiler.parser;
 
 import cn.edu.hitsz.compiler.NotImplementedException;
 import cn.edu.hitsz.compiler.RunConfigs;
-import cn.edu.hitsz.compiler.error.ErrorDescription;
-import cn.edu.hitsz.compiler.ir.IRImmediate;
-import cn.edu.hitsz.compiler.ir.IRValue;
-import cn.edu.hitsz.compiler.ir.IRVariable;
+import cn.edu.hitsz.compiler.ir.IRVariableFactory;
 import cn.edu.hitsz.compiler.ir.Instruction;
+import cn.edu.hitsz.compiler.ir.InstructionBuffer;
+import cn.edu.hitsz.compiler.ir.InstructionKind;
 import cn.edu.hitsz.compiler.lexer.Token;
+import cn.edu.hitsz.compiler.lexer.TokenKind;
 import cn.edu.hitsz.compiler.parser.table.Production;
 import cn.edu.hitsz.compiler.parser.table.Status;
-import cn.edu.hitsz.compiler.parser.table.Term;
 import cn.edu.hitsz.compiler.symtab.SymbolTable;
 import cn.edu.hitsz.compiler.utils.FileUtils;
 
-import java.util.LinkedList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Objects;
-import java.util.Stack;
-import java.util.stream.Collectors;
 
 // 实验三: 实现 IR 生成
 
 /**
- *
+ * IR 生成
+ * <br>
+ * 指令直接生成到 {@link InstructionBuffer} 中, 变量以其在缓冲区中的编号引用.
+ * 语义值栈与分析栈平行, 每一项是一个编码后的 long: 低 2 位为种类 (无值, 立即数, 变量), 其余位为立即数的值或变量在缓冲区中的编号.
+ * 移入时就为标识符与整数常量编码好语义值, 因此 B -> id, B -> IntConst 与单产生式都不必被通知, 分析过程中不为栈中的项或指令创建对象.
+ * <br>
+ * 只有表达式的规约 (以及消费表达式的语句) 会读取栈中的值, 它们按产生式体的长度弹栈; 其余产生式不被通知, 留在栈中的项不会被读到.
  */
-public class IRGenerator implements ActionObserver {
-    public static class TokenWithInfo {
-        private final Token token;
-        private IRValue addr = null;
+public class IRGenerator implements SplittableObserver {
+    private static final int INITIAL_STACK_SIZE = 256;
+    private static final long NONE = 0;
+    private static final int IMMEDIATE = 1;
+    private static final int VARIABLE = 2;
+
+    private final TokenKind idKind = TokenKind.fromString("id");
+    private final TokenKind intConstKind = TokenKind.fromString("IntConst");
+    private SymbolTable symbolTable = null;
+    private long[] values = new long[INITIAL_STACK_SIZE];
+    private int top = -1;
+    private final InstructionBuffer code = new InstructionBuffer();
+    /**
+     * 符号编号到变量在缓冲区中的编号 + 1 的缓存, 0 表示还未驻留
+     */
+    private int[] symbolVariables = new int[INITIAL_STACK_SIZE];
+    /**
+     * 本次编译的 IR 变量. 由 {@link #fork()} 得到的生成器使用自己的工厂, 其中的临时变量只在块内编号
+     */
+    private final IRVariableFactory variables = new IRVariableFactory();
+
+    private long newTemp() {
+        return encode(VARIABLE, code.variable(variables.temp()));
+    }
 
-        public TokenWithInfo(Token token) {
-            this.token = token;
+    private long named(int symbol) {
+        if (symbol >= symbolVariables.length) {
+            symbolVariables = Arrays.copyOf(symbolVariables, Math.max(symbol + 1, symbolVariables.length * 2));
         }
-
-        public IRValue getAddr() {
-            return addr;
+        if (symbolVariables[symbol] == 0) {
+            symbolVariables[symbol] = code.variable(variables.named(symbolTable.get(symbol).getText(), symbol)) + 1;
         }
+        return encode(VARIABLE, symbolVariables[symbol] - 1);
+    }
 
-        public TokenWithInfo setAddr(IRValue addr) {
-            this.addr = addr;
-            return this;
-        }
+    private static long encode(int kind, int operand) {
+        return (long) operand << 2 | kind;
+    }
 
-        public Token getToken() {
-            return token;
-        }
+    private static int operand(long value) {
+        // 算术右移, 保留负的立即数
+        return (int) (value >> 2);
+    }
 
-        @Override
-        public String toString() {
-            return "[%s, %s]".formatted(this.token, this.addr);
+    private static boolean isImmediate(long value) {
+        return ((int) value & 3) == IMMEDIATE;
+    }
+
+    private static int variable(long value) {
+        if (((int) value & 3) != VARIABLE) {
+            throw new RuntimeException("No assignable IR variable on the semantic stack");
         }
+        return operand(value);
     }
 
-    static class TokenShiftStack extends Stack<TokenWithInfo> {
-        @Override
-        public synchronized String toString() {
-            return this.stream().filter(i -> !Objects.equals(i.getToken().getKindId(), "Semicolon")).map(TokenWithInfo::toString).collect(Collectors.joining(", "));
+    private static int source(long value) {
+        if (value == NONE) {
+            throw new RuntimeException("No IR value on the semantic stack");
         }
+        return operand(value);
     }
 
-    private SymbolTable symbolTable = null;
-    private final TokenShiftStack shiftStack = new TokenShiftStack();
-    private final List<Instruction> code = new LinkedList<>();
+    private void emit(InstructionKind kind, long result, long lhs) {
+        code.add(kind, result == NONE ? InstructionBuffer.NONE : variable(result),
+            source(lhs), isImmediate(lhs), InstructionBuffer.NONE, false);
+    }
+
+    private void emit(InstructionKind kind, long result, long lhs, long rhs) {
+        code.add(kind, variable(result), source(lhs), isImmediate(lhs), source(rhs), isImmediate(rhs));
+    }
+
+    private void push(long value) {
+        if (++top == values.length) {
+            values = Arrays.copyOf(values, values.length * 2);
+        }
+        values[top] = value;
+    }
 
     @Override
     public void whenShift(Status currentStatus, Token currentToken) {
-        shiftStack.push(new TokenWithInfo(currentToken));
+        final var kind = currentToken.getKind();
+        if (kind.equals(idKind)) {
+            push(named(symbolTable.resolve(currentToken.getSymbolId(), currentToken.getText())));
+        } else if (kind.equals(intConstKind)) {
+            push(encode(IMMEDIATE, currentToken.getIntValue()));
+        } else {
+            push(NONE);
+        }
     }
 
     @Override
@@ -76,110 +124,72 @@ public class IRGenerator implements ActionObserver {
             // 简单赋值语句中间代码生成 && 算数表达式中间代码生成
             // S -> id = E;
             case 6 -> {
-                var e = shiftStack.pop();
-                var eq = shiftStack.pop();
-                assert (Objects.equals(eq.getToken().getKind().getTermName(), "="));
-                var id = shiftStack.pop();
-                if (!symbolTable.has(id.getToken().getText())) {
-                    throw new RuntimeException(ErrorDescription.NO_SYMBOL.formatted(id.getToken().getText()));
-                }
-                if (id.getAddr() == null) {
-                    id.setAddr(IRVariable.named(id.getToken().getText()));
-                }
-                assert (id.getAddr().isIRVariable());
+                emit(InstructionKind.MOV, values[top - 2], values[top]);
                 if (RunConfigs.DEBUG) {
-                    System.out.printf("S -> id = E | S -> %s = %s\n", id.getAddr(), e.getAddr());
+                    System.out.printf("S -> id = E | %s\n", code.get(code.size() - 1));
                 }
-                var insn = Instruction.createMov((IRVariable) id.getAddr(), e.getAddr());
-                code.add(insn);
+                top -= 2;
+                values[top] = NONE;
             }
             // E -> E + A;
             case 8 -> {
-                var a = shiftStack.pop();
-                var plus = shiftStack.pop();
-                assert (Objects.equals(plus.getToken().getKind().getTermName(), "+"));
-                var e = shiftStack.pop();
-                var result = IRVariable.temp();
-                var insn = Instruction.createAdd(result, a.getAddr(), e.getAddr());
-                code.add(insn);
-                shiftStack.push(e.setAddr(result));
+                final var result = newTemp();
+                emit(InstructionKind.ADD, result, values[top], values[top - 2]);
+                top -= 2;
+                values[top] = result;
             }
             // E -> E - A;
             case 9 -> {
-                var a = shiftStack.pop();
-                var minus = shiftStack.pop();
-                assert (Objects.equals(minus.getToken().getKind().getTermName(), "-"));
-                var e = shiftStack.pop();
-                var result = IRVariable.temp();
-                var insn = Instruction.createSub(result, e.getAddr(), a.getAddr());
-                code.add(insn);
-                shiftStack.push(e.setAddr(result));
+                final var result = newTemp();
+                emit(InstructionKind.SUB, result, values[top - 2], values[top]);
+                top -= 2;
+                values[top] = result;
             }
             // A -> A * B;
             case 11 -> {
-                var b = shiftStack.pop();
-                var mul = shiftStack.pop();
-                assert (Objects.equals(mul.getToken().getKind().getTermName(), "*"));
-                var a = shiftStack.pop();
-                var result = IRVariable.temp();
-                if (b.addr.isImmediate()) {
+                final var result = newTemp();
+                var b = values[top];
+                if (isImmediate(b)) {
                     // there is no muli, so create template variable to hold imm value
-                    var temp = IRVariable.temp();
-                    code.add(Instruction.createMov(temp, b.getAddr()));
-                    var insn = Instruction.createMul(result, a.getAddr(), temp);
-                    code.add(insn);
-                } else {
-                    var insn = Instruction.createMul(result, a.getAddr(), b.getAddr());
-                    code.add(insn);
+                    final var temp = newTemp();
+                    emit(InstructionKind.MOV, temp, b);
+                    b = temp;
                 }
-                shiftStack.push(a.setAddr(result));
-            }
-            // A -> B; | E -> A;
-            case 12, 10 -> {
-                var b = shiftStack.pop();
-                shiftStack.push(new TokenWithInfo(b.getToken()).setAddr(b.getAddr()));
+                emit(InstructionKind.MUL, result, values[top - 2], b);
+                top -= 2;
+                values[top] = result;
             }
             // B -> ( E );
             case 13 -> {
-                var right = shiftStack.pop();
-                assert (Objects.equals(right.getToken().getKind().getTermName(), ")"));
-                var e = shiftStack.pop();
-                var left = shiftStack.pop();
-                assert (Objects.equals(left.getToken().getKind().getTermName(), "("));
-                shiftStack.push(e.setAddr(e.getAddr()));
-            }
-            // B -> id;
-            case 14 -> {
-                var id = shiftStack.pop();
-                if (!symbolTable.has(id.getToken().getText())) {
-                    throw new RuntimeException(ErrorDescription.NO_SYMBOL.formatted(id.getToken().getText()));
-                }
-                var variable = IRVariable.named(symbolTable.get(id.getToken().getText()).getText());
-                shiftStack.push(new TokenWithInfo(id.getToken()).setAddr(variable));
-            }
-            // B -> IntConst;
-            case 15 -> {
-                var intConst = shiftStack.pop();
-                var value = IRImmediate.of(Integer.parseInt(intConst.getToken().getText()));
-                shiftStack.push(new TokenWithInfo(intConst.getToken()).setAddr(value));
+                values[top - 2] = values[top - 1];
+                top -= 2;
             }
             // 返回
             // S -> return E;
             case 7 -> {
-                var e = shiftStack.pop();
-                var insn = Instruction.createRet(e.getAddr());
-                code.add(insn);
+                emit(InstructionKind.RET, NONE, values[top]);
+                top -= 1;
+                values[top] = NONE;
             }
             default -> {
-                shiftStack.pop();
             }
         }
     }
 
+    /**
+     * 只有生成指令或搬移语义值的产生式需要被通知, B -> id, B -> IntConst 在移入时就有了语义值, 单产生式原样传递栈顶的值
+     */
+    @Override
+    public boolean caresAboutReduce(Production production) {
+        return switch (production.index()) {
+            case 6, 7, 8, 9, 11, 13 -> true;
+            default -> false;
+        };
+    }
 
     @Override
     public void whenAccept(Status currentStatus) {
-        shiftStack.clear();
+        top = -1;
     }
 
     @Override
@@ -187,12 +197,49 @@ public class IRGenerator implements ActionObserver {
         symbolTable = table;
     }
 
-    public List<Instruction> getIR() {
+    @Override
+    public SplittableObserver fork() {
+        return new IRGenerator();
+    }
+
+    /**
+     * 按顺序为语句块中的临时变量分配全局编号, 驻留其中的其它变量, 再把它的指令与栈中剩下的项接在已有的之后
+     */
+    @Override
+    public void join(SplittableObserver chunk) {
+        final var other = (IRGenerator) chunk;
+        final var remap = new int[other.code.variableCount()];
+        for (int id = 0; id < remap.length; id++) {
+            final var variable = other.code.variable(id);
+            remap[id] = variable.isTemp() ? operand(newTemp())
+                : code.variable(variables.named(variable.getName(), variable.getSymbolId()));
+        }
+        code.appendAll(other.code, remap);
+        for (int i = 0; i <= other.top; i++) {
+            final var value = other.values[i];
+            push(((int) value & 3) == VARIABLE ? encode(VARIABLE, remap[operand(value)]) : value);
+        }
+    }
+
+    /**
+     * @return 生成的指令中用到的 IR 变量
+     */
+    public IRVariableFactory getVariables() {
+        return variables;
+    }
+
+    /**
+     * @return 生成的指令, 可以用游标原地改写
+     */
+    public InstructionBuffer getIRBuffer() {
         return code;
     }
 
+    public List<Instruction> getIR() {
+        return code.toInstructions();
+    }
+
     public void dumpIR(String path) {
         FileUtils.writeLines(path, getIR().stream().map(Instruction::toString).toList());
     }
 }
-
@@ -0,0 +1,115 @@
+package cn.edu.hitsz.compiler.parser;
+
+import cn.edu.hitsz.compiler.RunConfigs;
+import cn.edu.hitsz.compiler.lexer.Token;
+import cn.edu.hitsz.compiler.parser.table.GrammarInfo;
+import cn.edu.hitsz.compiler.parser.table.Production;
+import cn.edu.hitsz.compiler.parser.table.Status;
+
+import java.util.List;
+import java.util.function.Predicate;
+import java.util.stream.IntStream;
+
+/**
+ * 按观察者声明的兴趣预先计算的分派表, 存放的是观察者在列表中的下标
+ * <br>
+ * 打开 {@link RunConfigs#PARSER_PROFILE_OBSERVERS} 时, 每次通知都会计时, 并可通过 {@link #report()} 输出各观察者的开销.
+ *
+ * @author chiro
+ */
+final class ObserverDispatch {
+    private static final int[] NONE = new int[0];
+
+    private final List<ActionObserver> observers;
+    private final int[] shiftObservers;
+    private final int[] acceptObservers;
+    /**
+     * 以产生式编号为下标
+     */
+    private final int[][] reduceObservers;
+    private final long[] nanos;
+    private final long[] calls;
+
+    ObserverDispatch(List<ActionObserver> observers) {
+        this.observers = observers;
+        this.shiftObservers = select(observers, ActionObserver::caresAboutShift);
+        this.acceptObservers = select(observers, ActionObserver::caresAboutAccept);
+        final var productions = GrammarInfo.getProductionsInOrder();
+        var maxIndex = 0;
+        for (final var production : productions) {
+            maxIndex = Math.max(maxIndex, production.index());
+        }
+        this.reduceObservers = new int[maxIndex + 1][];
+        for (final var production : productions) {
+            reduceObservers[production.index()] = select(observers, o -> o.caresAboutReduce(production));
+        }
+        this.nanos = new long[observers.size()];
+        this.calls = new long[observers.size()];
+    }
+
+    int[] shiftObservers() {
+        return shiftObservers;
+    }
+
+    int[] reduceObservers(int production) {
+        if (production < 0 || production >= reduceObservers.length || reduceObservers[production] == null) {
+            return NONE;
+        }
+        return reduceObservers[production];
+    }
+
+    void notifyShift(Status currentStatus, Token currentToken) {
+        for (final var i : shiftObservers) {
+            if (RunConfigs.PARSER_PROFILE_OBSERVERS) {
+                final var begin = System.nanoTime();
+                observers.get(i).whenShift(currentStatus, currentToken);
+                record(i, begin);
+            } else {
+                observers.get(i).whenShift(currentStatus, currentToken);
+            }
+        }
+    }
+
+    void notifyReduce(Status currentStatus, Production production) {
+        for (final var i : reduceObservers(production.index())) {
+            if (RunConfigs.PARSER_PROFILE_OBSERVERS) {
+                final var begin = System.nanoTime();
+                observers.get(i).whenReduce(currentStatus, production);
+                record(i, begin);
+            } else {
+                observers.get(i).whenReduce(currentStatus, production);
+            }
+        }
+    }
+
+    void notifyAccept(Status currentStatus) {
+        for (final var i : acceptObservers) {
+            if (RunConfigs.PARSER_PROFILE_OBSERVERS) {
+                final var begin = System.nanoTime();
+                observers.get(i).whenAccept(currentStatus);
+                record(i, begin);
+            } else {
+                observers.get(i).whenAccept(currentStatus);
+            }
+        }
+    }
+
+    /**
+     * 输出各观察者被调用的次数与耗时
+     */
+    void report() {
+        for (int i = 0; i < observers.size(); i++) {
+            System.out.printf("%s: %d calls, %d ns, %.1f ns/call\n", observers.get(i).getClass().getSimpleName(),
+                calls[i], nanos[i], calls[i] == 0 ? 0.0 : (double) nanos[i] / calls[i]);
+        }
+    }
+
+    private void record(int observer, long begin) {
+        nanos[observer] += System.nanoTime() - begin;
+        calls[observer]++;
+    }
+
+    private static int[] select(List<ActionObserver> observers, Predicate<ActionObserver> interested) {
+        return IntStream.range(0, observers.size()).filter(i -> interested.test(observers.get(i))).toArray();
+    }
+}
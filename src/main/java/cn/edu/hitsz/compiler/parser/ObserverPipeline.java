@@ -0,0 +1,228 @@
+package cn.edu.hitsz.compiler.parser;
+
+import cn.edu.hitsz.compiler.lexer.Token;
+import cn.edu.hitsz.compiler.parser.table.CompiledLRTable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 并发的观察者流水线
+ * <br>
+ * 驱动程序 (唯一的生产者) 把移入, 规约与接受动作写成紧凑的事件放进环形缓冲区, 每个观察者在各自的线程上按顺序消费全部事件,
+ * 观察者之间互不等待. 缓冲区以序号协调: 生产者发布的最后一个序号记在 {@link #published} 中, 每个消费者各自记录已消费到的序号,
+ * 生产者写入前要等最慢的消费者让出槽位 (背压), 因此缓冲区从不覆盖未被消费的事件, 全程不需要加锁.
+ * <br>
+ * 观察者之间必须相互独立, 它们只通过符号表共享数据. 符号表的驻留与扩容没有同步, 因此驱动程序只在加载了完整的词法单元序列时
+ * (词法分析已经结束, 符号表不再增长) 才启用流水线, 按需分析时仍在驱动程序的线程上通知观察者. 同样, 需要读取文法符号栈的观察者
+ * ({@link ActionObserver#needsSymbolStack()}) 看到的是驱动程序当前的栈而不是事件发生时的栈, 有这样的观察者时也不启用流水线.
+ *
+ * @author chiro
+ */
+final class ObserverPipeline {
+    private static final byte SHIFT = 0;
+    private static final byte REDUCE = 1;
+    private static final byte ACCEPT = 2;
+    private static final byte END = 3;
+    private static final int SPINS_BEFORE_YIELD = 64;
+
+    private final CompiledLRTable table;
+    private final int mask;
+    private final byte[] kinds;
+    private final int[] statuses;
+    private final int[] operands;
+    private final Token[] tokens;
+    private final AtomicLong published = new AtomicLong(-1);
+    private final List<Consumer> consumers = new ArrayList<>();
+    /**
+     * 生产者已写入的最后一个序号, 只由生产者读写
+     */
+    private long cursor = -1;
+    /**
+     * 上次观察到的最慢的消费者的序号, 只由生产者读写
+     */
+    private long slowest = -1;
+
+    /**
+     * @param observers 观察者
+     * @param table     编译后的分析表, 用于把事件中的编号还原为 Status 与 Production
+     * @param capacity  环形缓冲区的容量, 须为 2 的幂
+     */
+    ObserverPipeline(List<ActionObserver> observers, CompiledLRTable table, int capacity) {
+        if (Integer.bitCount(capacity) != 1) {
+            throw new RuntimeException("Capacity of event ring should be a power of 2: " + capacity);
+        }
+        this.table = table;
+        this.mask = capacity - 1;
+        this.kinds = new byte[capacity];
+        this.statuses = new int[capacity];
+        this.operands = new int[capacity];
+        this.tokens = new Token[capacity];
+        for (final var observer : observers) {
+            consumers.add(new Consumer(observer));
+        }
+    }
+
+    /**
+     * 为每个观察者启动消费线程
+     */
+    void start() {
+        for (final var consumer : consumers) {
+            consumer.thread.start();
+        }
+    }
+
+    void shift(int status, Token token) {
+        publish(SHIFT, status, 0, token);
+    }
+
+    void reduce(int status, int production) {
+        publish(REDUCE, status, production, null);
+    }
+
+    void accept(int status) {
+        publish(ACCEPT, status, 0, null);
+    }
+
+    /**
+     * 发布结束事件并等待所有观察者处理完毕
+     *
+     * @throws RuntimeException 某个观察者在处理事件时抛出了异常
+     */
+    void finish() {
+        publish(END, 0, 0, null);
+        RuntimeException failure = null;
+        for (final var consumer : consumers) {
+            try {
+                consumer.thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted while waiting for observers", e);
+            }
+            if (failure == null && consumer.failure != null) {
+                failure = consumer.failure instanceof RuntimeException runtime
+                    ? runtime : new RuntimeException(consumer.failure);
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private void publish(byte kind, int status, int operand, Token token) {
+        final var next = cursor + 1;
+        final var wrap = next - kinds.length;
+        // 槽位仍被最慢的消费者占用时等待
+        if (wrap > slowest) {
+            var spins = 0;
+            while (wrap > (slowest = slowestConsumed())) {
+                spins = idle(spins);
+            }
+        }
+        final var slot = (int) next & mask;
+        kinds[slot] = kind;
+        statuses[slot] = status;
+        operands[slot] = operand;
+        tokens[slot] = token;
+        cursor = next;
+        published.setRelease(next);
+    }
+
+    private long slowestConsumed() {
+        var min = Long.MAX_VALUE;
+        for (final var consumer : consumers) {
+            min = Math.min(min, consumer.consumed.getAcquire());
+        }
+        return min;
+    }
+
+    /**
+     * 先忙等一小段时间, 之后让出处理器, 以免在核心数少于线程数时饿死对方
+     */
+    private static int idle(int spins) {
+        if (spins < SPINS_BEFORE_YIELD) {
+            Thread.onSpinWait();
+        } else {
+            Thread.yield();
+        }
+        return spins + 1;
+    }
+
+    private final class Consumer implements Runnable {
+        private final ActionObserver observer;
+        private final boolean shift;
+        private final boolean accept;
+        private final boolean[] reduce;
+        private final AtomicLong consumed = new AtomicLong(-1);
+        private final Thread thread;
+        private volatile Throwable failure = null;
+
+        Consumer(ActionObserver observer) {
+            this.observer = observer;
+            this.shift = observer.caresAboutShift();
+            this.accept = observer.caresAboutAccept();
+            this.reduce = new boolean[table.getProductionLimit()];
+            for (int index = 0; index < reduce.length; index++) {
+                final var production = table.getProduction(index);
+                reduce[index] = production != null && observer.caresAboutReduce(production);
+            }
+            this.thread = new Thread(this, "observer-" + observer.getClass().getSimpleName());
+            this.thread.setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            try {
+                var next = 0L;
+                while (true) {
+                    var spins = 0;
+                    long available;
+                    while ((available = published.getAcquire()) < next) {
+                        spins = idle(spins);
+                    }
+                    for (; next <= available; next++) {
+                        if (!handle((int) next & mask)) {
+                            consumed.setRelease(next);
+                            return;
+                        }
+                    }
+                    consumed.setRelease(available);
+                }
+            } catch (Throwable e) {
+                failure = e;
+                // 出错的消费者不再阻挡生产者
+                consumed.setRelease(Long.MAX_VALUE);
+            }
+        }
+
+        /**
+         * @return 是否还有后续事件
+         */
+        private boolean handle(int slot) {
+            final var status = statuses[slot];
+            switch (kinds[slot]) {
+                case SHIFT -> {
+                    if (shift) {
+                        observer.whenShift(table.getStatus(status), tokens[slot]);
+                    }
+                }
+                case REDUCE -> {
+                    final var production = operands[slot];
+                    if (reduce[production]) {
+                        observer.whenReduce(table.getStatus(status), table.getProduction(production));
+                    }
+                }
+                case ACCEPT -> {
+                    if (accept) {
+                        observer.whenAccept(table.getStatus(status));
+                    }
+                }
+                default -> {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,306 @@
+package cn.edu.hitsz.compiler.parser;
+
+import cn.edu.hitsz.compiler.lexer.Token;
+import cn.edu.hitsz.compiler.lexer.TokenKind;
+import cn.edu.hitsz.compiler.parser.table.GrammarInfo;
+import cn.edu.hitsz.compiler.parser.table.Production;
+import cn.edu.hitsz.compiler.parser.table.Status;
+import cn.edu.hitsz.compiler.symtab.SymbolTable;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 语法分析事件日志
+ * <br>
+ * {@link Recorder} 作为观察者把驱动程序的移入, 规约与接受动作依次写成紧凑的二进制日志, {@link Replayer} 再把日志回放给任意一组观察者,
+ * 回放时既不需要词法分析器, 也不需要 LR 分析表, 只需要语法文件 (以编号还原产生式) 与码点文件 (以码点还原词法单元类型).
+ * 反复调试语义分析或 IR 生成时, 可以借此跳过整个前端.
+ * <br>
+ * 日志以魔数与版本开头, 之后每个事件以一个字节的标签开始, 其余字段均为变长编码的整数:
+ * <ul>
+ *     <li>移入: 状态编号, 码点 + 1, 以及按标签区分的词素: 无, 词素表中的编号, 整数值 (zigzag 编码), 或内联的文本.
+ *     整数值只在文本是其规范写法时单独记录, 否则 (如 {@code 007}) 与内联的文本一起记录, 回放出的词素与原来完全相同</li>
+ *     <li>规约: 状态编号, 产生式编号</li>
+ *     <li>接受: 状态编号</li>
+ * </ul>
+ * 标识符的文本在第一次出现时以单独的定义事件写入词素表, 之后只记录其编号.
+ *
+ * @author chiro
+ */
+public final class ParseEventLog {
+    private static final int MAGIC = 0x50455654;
+    private static final int VERSION = 2;
+
+    private static final byte SHIFT_SIMPLE = 0;
+    private static final byte SHIFT_SYMBOL = 1;
+    private static final byte SHIFT_INT = 2;
+    private static final byte SHIFT_TEXT = 3;
+    private static final byte REDUCE = 4;
+    private static final byte ACCEPT = 5;
+    private static final byte DEFINE_LEXEME = 6;
+    private static final byte SHIFT_INT_TEXT = 7;
+
+    private ParseEventLog() {
+    }
+
+    /**
+     * 把事件写入日志的观察者, 使用完毕后须调用 {@link #close()}
+     */
+    public static final class Recorder implements ActionObserver, AutoCloseable {
+        private final String path;
+        private final DataOutputStream out;
+        /**
+         * 以符号编号为下标, 记录 "词素表中的编号 + 1", 0 表示尚未写入
+         */
+        private int[] lexemeOfSymbol = new int[64];
+        private int lexemeCount = 0;
+
+        /**
+         * @param path 日志路径
+         */
+        public Recorder(String path) {
+            this.path = path;
+            try {
+                this.out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(Paths.get(path))));
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+            } catch (IOException e) {
+                throw new RuntimeException("IO Exception on " + path, e);
+            }
+        }
+
+        @Override
+        public void whenShift(Status currentStatus, Token currentToken) {
+            try {
+                final var symbol = currentToken.getSymbolId();
+                if (symbol != SymbolTable.NO_ID) {
+                    final var lexeme = defineLexeme(symbol, currentToken.getText());
+                    writeShift(SHIFT_SYMBOL, currentStatus, currentToken);
+                    writeVarInt(out, lexeme);
+                } else if (currentToken.hasIntValue()) {
+                    final var value = currentToken.getIntValue();
+                    final var canonical = currentToken.getText().equals(Integer.toString(value));
+                    writeShift(canonical ? SHIFT_INT : SHIFT_INT_TEXT, currentStatus, currentToken);
+                    writeVarInt(out, (value << 1) ^ (value >> 31));
+                    if (!canonical) {
+                        out.writeUTF(currentToken.getText());
+                    }
+                } else if (currentToken.getText().isEmpty()) {
+                    writeShift(SHIFT_SIMPLE, currentStatus, currentToken);
+                } else {
+                    writeShift(SHIFT_TEXT, currentStatus, currentToken);
+                    out.writeUTF(currentToken.getText());
+                }
+            } catch (IOException e) {
+                throw new RuntimeException("IO Exception on " + path, e);
+            }
+        }
+
+        @Override
+        public void whenReduce(Status currentStatus, Production production) {
+            try {
+                out.writeByte(REDUCE);
+                writeVarInt(out, currentStatus.index());
+                writeVarInt(out, production.index());
+            } catch (IOException e) {
+                throw new RuntimeException("IO Exception on " + path, e);
+            }
+        }
+
+        @Override
+        public void whenAccept(Status currentStatus) {
+            try {
+                out.writeByte(ACCEPT);
+                writeVarInt(out, currentStatus.index());
+            } catch (IOException e) {
+                throw new RuntimeException("IO Exception on " + path, e);
+            }
+        }
+
+        @Override
+        public void setSymbolTable(SymbolTable table) {
+            // 词素直接取自 Token, 不需要符号表
+        }
+
+        @Override
+        public void close() {
+            try {
+                out.close();
+            } catch (IOException e) {
+                throw new RuntimeException("IO Exception on " + path, e);
+            }
+        }
+
+        private void writeShift(byte tag, Status status, Token token) throws IOException {
+            out.writeByte(tag);
+            writeVarInt(out, status.index());
+            writeVarInt(out, token.getKind().getCode() + 1);
+        }
+
+        /**
+         * @return 符号在词素表中的编号, 第一次出现时先写入定义事件
+         */
+        private int defineLexeme(int symbol, String text) throws IOException {
+            if (symbol >= lexemeOfSymbol.length) {
+                lexemeOfSymbol = Arrays.copyOf(lexemeOfSymbol, Math.max(lexemeOfSymbol.length * 2, symbol + 1));
+            }
+            if (lexemeOfSymbol[symbol] == 0) {
+                out.writeByte(DEFINE_LEXEME);
+                out.writeUTF(text);
+                lexemeOfSymbol[symbol] = ++lexemeCount;
+            }
+            return lexemeOfSymbol[symbol] - 1;
+        }
+    }
+
+    /**
+     * 把日志回放给观察者的驱动程序, 与 {@link SyntaxAnalyzer} 一样只通知关心某一动作的观察者
+     * <br>
+     * 回放时没有 LR 分析表, 日志中也只记录了状态编号, 因此观察者收到的 {@link Status} 只带有编号,
+     * 其 {@link Status#getAction} 与 {@link Status#getGoto} 总是返回错误. 需要查看状态中表项的观察者不能通过回放调试.
+     */
+    public static final class Replayer {
+        private final SymbolTable symbolTable;
+        private final List<ActionObserver> observers = new ArrayList<>();
+
+        /**
+         * @param symbolTable 符号表, 回放时日志中的标识符会依次驻留进该表
+         */
+        public Replayer(SymbolTable symbolTable) {
+            this.symbolTable = symbolTable;
+        }
+
+        /**
+         * 注册新的观察者
+         *
+         * @param observer 观察者
+         */
+        public void registerObserver(ActionObserver observer) {
+            observers.add(observer);
+            observer.setSymbolTable(symbolTable);
+        }
+
+        /**
+         * 回放日志
+         *
+         * @param path 日志路径
+         * @throws RuntimeException 日志无法读取或格式不符
+         */
+        public void run(String path) {
+            final var productions = GrammarInfo.getProductionsInOrder();
+            final var shiftObservers = observers.stream().filter(ActionObserver::caresAboutShift).toList();
+            final var acceptObservers = observers.stream().filter(ActionObserver::caresAboutAccept).toList();
+            final var reduceObservers = new ArrayList<List<ActionObserver>>();
+            for (final var production : productions) {
+                while (reduceObservers.size() <= production.index()) {
+                    reduceObservers.add(List.of());
+                }
+                reduceObservers.set(production.index(), observers.stream().filter(o -> o.caresAboutReduce(production)).toList());
+            }
+            final var productionByIndex = new Production[reduceObservers.size()];
+            for (final var production : productions) {
+                productionByIndex[production.index()] = production;
+            }
+
+            final var statuses = new ArrayList<Status>();
+            // 词素表中的编号到符号编号
+            final var symbols = new ArrayList<Integer>();
+            try (final var in = new DataInputStream(new BufferedInputStream(Files.newInputStream(Paths.get(path))))) {
+                if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                    throw new RuntimeException("Not a parse event log: " + path);
+                }
+                while (true) {
+                    final int tag;
+                    try {
+                        tag = in.readByte();
+                    } catch (EOFException e) {
+                        return;
+                    }
+                    switch (tag) {
+                        case DEFINE_LEXEME -> symbols.add(symbolTable.intern(in.readUTF()));
+                        case SHIFT_SIMPLE, SHIFT_SYMBOL, SHIFT_INT, SHIFT_INT_TEXT, SHIFT_TEXT -> {
+                            final var status = status(statuses, readVarInt(in));
+                            final var kind = TokenKind.fromCode(readVarInt(in) - 1);
+                            final var token = switch (tag) {
+                                case SHIFT_SYMBOL -> {
+                                    final var symbol = symbols.get(readVarInt(in));
+                                    yield Token.symbol(kind, symbolTable.get(symbol).getText(), symbol);
+                                }
+                                case SHIFT_INT, SHIFT_INT_TEXT -> {
+                                    final var zigzag = readVarInt(in);
+                                    final var value = (zigzag >>> 1) ^ -(zigzag & 1);
+                                    final var text = tag == SHIFT_INT ? Integer.toString(value) : in.readUTF();
+                                    yield Token.integer(kind, text, 0, text.length(), value);
+                                }
+                                case SHIFT_TEXT -> Token.normal(kind, in.readUTF());
+                                default -> Token.simple(kind);
+                            };
+                            for (final var observer : shiftObservers) {
+                                observer.whenShift(status, token);
+                            }
+                        }
+                        case REDUCE -> {
+                            final var status = status(statuses, readVarInt(in));
+                            final var index = readVarInt(in);
+                            if (index <= 0 || index >= productionByIndex.length || productionByIndex[index] == null) {
+                                throw new RuntimeException("Unknown production %d in %s".formatted(index, path));
+                            }
+                            for (final var observer : reduceObservers.get(index)) {
+                                observer.whenReduce(status, productionByIndex[index]);
+                            }
+                        }
+                        case ACCEPT -> {
+                            final var status = status(statuses, readVarInt(in));
+                            for (final var observer : acceptObservers) {
+                                observer.whenAccept(status);
+                            }
+                        }
+                        default -> throw new RuntimeException("Bad event %d in %s".formatted(tag, path));
+                    }
+                }
+            } catch (IOException e) {
+                throw new RuntimeException("IO Exception on " + path, e);
+            }
+        }
+
+        /**
+         * @return 只带有编号的状态, 见 {@link Replayer}
+         */
+        private static Status status(List<Status> statuses, int index) {
+            while (statuses.size() <= index) {
+                statuses.add(Status.create(statuses.size()));
+            }
+            return statuses.get(index);
+        }
+    }
+
+    private static void writeVarInt(DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7f) != 0) {
+            out.writeByte((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    private static int readVarInt(DataInputStream in) throws IOException {
+        var value = 0;
+        for (int shift = 0; shift < Integer.SIZE; shift += 7) {
+            final var b = in.readByte();
+            value |= (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new RuntimeException("Malformed variable-length integer in parse event log");
+    }
+}
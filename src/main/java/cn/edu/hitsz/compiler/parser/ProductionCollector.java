@@ -15,7 +15,7 @@ import java.util.List;
  * 该类将自己注册为 LR 驱动程序的动作观察者, 在每次 reduce 将规约的产生式存起来, 待到语法分析结束之后便能按规约顺序输出所有规约到产生式.
  * 该类的输出结果会被作为判断实验二代码正误的根据.
  */
-public class ProductionCollector implements ActionObserver {
+public class ProductionCollector implements SplittableObserver {
     public ProductionCollector(Production beginProduction) {
         this.beginProduction = beginProduction;
     }
@@ -43,6 +43,11 @@ public class ProductionCollector implements ActionObserver {
         // do nothing
     }
 
+    @Override
+    public boolean caresAboutShift() {
+        return false;
+    }
+
     @Override
     public void whenAccept(Status currentStatus) {
         // 当接受时, 记录下对起始产生式的规约
@@ -53,4 +58,14 @@ public class ProductionCollector implements ActionObserver {
     public void setSymbolTable(SymbolTable table) {
         // do nothing
     }
+
+    @Override
+    public SplittableObserver fork() {
+        return new ProductionCollector(beginProduction);
+    }
+
+    @Override
+    public void join(SplittableObserver chunk) {
+        reducedProductions.addAll(((ProductionCollector) chunk).reducedProductions);
+    }
 }
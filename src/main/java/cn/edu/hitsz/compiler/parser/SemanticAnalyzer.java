@@ -2,21 +2,37 @@ package cn.edu.hitsz.compiler.parser;
 
 import cn.edu.hitsz.compiler.NotImplementedException;
 import cn.edu.hitsz.compiler.RunConfigs;
-import cn.edu.hitsz.compiler.error.ErrorDescription;
 import cn.edu.hitsz.compiler.ir.Instruction;
 import cn.edu.hitsz.compiler.lexer.Token;
 import cn.edu.hitsz.compiler.parser.table.Production;
 import cn.edu.hitsz.compiler.parser.table.Status;
 import cn.edu.hitsz.compiler.symtab.SourceCodeType;
 import cn.edu.hitsz.compiler.symtab.SymbolTable;
+import cn.edu.hitsz.compiler.symtab.SymbolTableEntry;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Stack;
 
 // 实验三: 实现语义分析
-public class SemanticAnalyzer implements ActionObserver {
+public class SemanticAnalyzer implements SplittableObserver {
     private SymbolTable symbolTable = null;
     private Stack<SourceCodeType> semanticTypeStack = new Stack<>();
     private Stack<Token> shiftStack = new Stack<>();
+    /**
+     * 由 {@link #fork()} 得到的语义分析器只记录声明, 在 join 时才按语句顺序写入符号表
+     */
+    private final boolean forked;
+    private final List<SymbolTableEntry> declared = new ArrayList<>();
+    private final List<SourceCodeType> declaredTypes = new ArrayList<>();
+
+    public SemanticAnalyzer() {
+        this(false);
+    }
+
+    private SemanticAnalyzer(boolean forked) {
+        this.forked = forked;
+    }
 
     @Override
     public void whenAccept(Status currentStatus) {
@@ -33,27 +49,26 @@ public class SemanticAnalyzer implements ActionObserver {
             // S -> D id
             case 4 -> {
                 var id = shiftStack.pop();
-                if (symbolTable.has(id.getText())) {
-                    var p = symbolTable.get(id.getText());
-                    p.setType(semanticTypeStack.pop());
-                    semanticTypeStack.add(SourceCodeType.None);
-                    if (RunConfigs.DEBUG) {
-                        System.out.printf("Set %s as type %s\n", p.getText(), p.getType());
-                    }
-                } else {
-                    throw new RuntimeException(String.format(ErrorDescription.NO_SYMBOL, id.getText()));
-                }
+                // 词法分析时已为标识符分配了编号, 不必再按文本查找
+                var p = symbolTable.get(symbolTable.resolve(id.getSymbolId(), id.getText()));
+                declare(p, semanticTypeStack.pop());
+                semanticTypeStack.add(SourceCodeType.None);
             }
             // D -> int
             case 5 -> {
                 semanticTypeStack.add(SourceCodeType.Int);
             }
-            default -> {
-                semanticTypeStack.add(SourceCodeType.None);
-            }
+            // 驱动程序只通知 caresAboutReduce 中声明的产生式
+            default -> throw new RuntimeException("Unexpected reduction in semantic analysis: " + production);
         }
     }
 
+    @Override
+    public boolean caresAboutReduce(Production production) {
+        // S -> D id 弹出的总是紧邻其前的 D -> int 压入的类型, 其余产生式压入的类型不会被读到
+        return production.index() == 4 || production.index() == 5;
+    }
+
     @Override
     public void whenShift(Status currentStatus, Token currentToken) {
         // 该过程在遇到 shift 时要采取的代码动作
@@ -66,5 +81,35 @@ public class SemanticAnalyzer implements ActionObserver {
         // 如果需要使用符号表的话, 可以将它或者它的一部分信息存起来, 比如使用一个成员变量存储
         symbolTable = table;
     }
+
+    private void declare(SymbolTableEntry entry, SourceCodeType type) {
+        if (forked) {
+            declared.add(entry);
+            declaredTypes.add(type);
+            return;
+        }
+        entry.setType(type);
+        if (RunConfigs.DEBUG) {
+            System.out.printf("Set %s as type %s\n", entry.getText(), entry.getType());
+        }
+    }
+
+    @Override
+    public SplittableObserver fork() {
+        return new SemanticAnalyzer(true);
+    }
+
+    /**
+     * 各块在共享的符号表中查找声明的条目, 并入时再按顺序设置类型, 并把各块栈中剩下的项接在已有的之后
+     */
+    @Override
+    public void join(SplittableObserver chunk) {
+        final var other = (SemanticAnalyzer) chunk;
+        for (int i = 0; i < other.declared.size(); i++) {
+            declare(other.declared.get(i), other.declaredTypes.get(i));
+        }
+        semanticTypeStack.addAll(other.semanticTypeStack);
+        shiftStack.addAll(other.shiftStack);
+    }
 }
 
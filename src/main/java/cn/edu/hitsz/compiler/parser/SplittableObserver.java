@@ -0,0 +1,27 @@
+package cn.edu.hitsz.compiler.parser;
+
+/**
+ * 可以按语句分块并行运行的观察者
+ * <br>
+ * 按语句并行分析时 (见 {@link cn.edu.hitsz.compiler.RunConfigs#PARSER_PARALLEL}), 驱动程序为每个语句块 fork 出一个同类的观察者,
+ * 它只收到该块中的移入与规约事件, 与其它块的观察者在不同的线程上运行, 但共享同一个符号表.
+ * 各块分析完之后, 驱动程序在自己的线程上按语句顺序把它们 join 回原观察者, 再由原观察者收到之后的事件 (对语句列表的规约与接受).
+ * <br>
+ * 因此 join 之后原观察者的状态应当与它按顺序收到这些块的全部事件时相同.
+ *
+ * @author chiro
+ * @see SyntaxAnalyzer
+ */
+public interface SplittableObserver extends ActionObserver {
+    /**
+     * @return 一个新的同类观察者, 只用于分析一个语句块
+     */
+    SplittableObserver fork();
+
+    /**
+     * 并入一个语句块的分析结果, 各块按语句顺序依次并入
+     *
+     * @param chunk 由 {@link #fork()} 得到的, 已分析完一个语句块的观察者
+     */
+    void join(SplittableObserver chunk);
+}
@@ -2,14 +2,18 @@ package cn.edu.hitsz.compiler.parser;
 
 import cn.edu.hitsz.compiler.RunConfigs;
 import cn.edu.hitsz.compiler.lexer.Token;
+import cn.edu.hitsz.compiler.lexer.TokenBuffer;
+import cn.edu.hitsz.compiler.lexer.TokenCursor;
 import cn.edu.hitsz.compiler.lexer.TokenKind;
 import cn.edu.hitsz.compiler.parser.table.*;
 import cn.edu.hitsz.compiler.symtab.SymbolTable;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
-import java.util.Stack;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 // 实验二: 实现 LR 语法分析驱动程序
 
@@ -24,8 +28,25 @@ import java.util.Stack;
 public class SyntaxAnalyzer {
     private final SymbolTable symbolTable;
     private final List<ActionObserver> observers = new ArrayList<>();
-    private Iterator<Token> tokens = null;
-    private LRTable lrTable = null;
+    private TokenCursor tokens = null;
+    /**
+     * 完整的词法单元序列, 只有以 {@link #loadTokens(TokenBuffer)} 加载时才有, 按语句并行分析时需要随机访问
+     */
+    private TokenBuffer buffer = null;
+    private CompiledLRTable lrTable = null;
+    /**
+     * 状态栈, 只存放状态编号, 需要通知观察者时才取出对应的 Status 对象
+     */
+    private int[] states = new int[INITIAL_STACK_SIZE];
+    /**
+     * 与状态栈平行的文法符号栈, 只有在某个观察者需要时才维护, 否则为 null
+     */
+    private Term[] symbols = null;
+    private int top = -1;
+    private ObserverDispatch dispatch = null;
+    private ObserverPipeline pipeline = null;
+    private ParseEventLog.Recorder recorder = null;
+    private static final int INITIAL_STACK_SIZE = 256;
 
     public SyntaxAnalyzer(SymbolTable symbolTable) {
         this.symbolTable = symbolTable;
@@ -39,6 +60,37 @@ public class SyntaxAnalyzer {
     public void registerObserver(ActionObserver observer) {
         observers.add(observer);
         observer.setSymbolTable(symbolTable);
+        dispatch = null;
+        if (observer.needsSymbolStack() && symbols == null) {
+            symbols = new Term[states.length];
+        }
+    }
+
+    /**
+     * 在分析时把移入, 规约与接受事件记录到日志中, 之后可以用 {@link ParseEventLog.Replayer} 回放给观察者
+     *
+     * @param path 日志路径
+     */
+    public void recordEvents(String path) {
+        recorder = new ParseEventLog.Recorder(path);
+        registerObserver(recorder);
+    }
+
+    /**
+     * 获取分析栈中的文法符号, 只对声明了 {@link ActionObserver#needsSymbolStack()} 的观察者可用
+     *
+     * @param depth 距栈顶的深度, 栈顶为 0
+     * @return 该位置上的文法符号, 初始状态对应 EOF
+     * @throws RuntimeException 没有观察者需要文法符号栈, 或深度超出了栈的范围
+     */
+    public Term symbolAt(int depth) {
+        if (symbols == null) {
+            throw new RuntimeException("Symbol stack is not tracked, no observer needs it");
+        }
+        if (depth < 0 || depth > top) {
+            throw new RuntimeException("Symbol stack depth out of range: " + depth);
+        }
+        return symbols[top - depth];
     }
 
     /**
@@ -48,9 +100,7 @@ public class SyntaxAnalyzer {
      * @param currentToken  当前词法单元
      */
     public void callWhenInShift(Status currentStatus, Token currentToken) {
-        for (final var listener : observers) {
-            listener.whenShift(currentStatus, currentToken);
-        }
+        dispatch().notifyShift(currentStatus, currentToken);
     }
 
     /**
@@ -60,9 +110,8 @@ public class SyntaxAnalyzer {
      * @param production    待规约的产生式
      */
     public void callWhenInReduce(Status currentStatus, Production production) {
-        for (final var listener : observers) {
-            listener.whenReduce(currentStatus, production);
-        }
+        // 只通知关心该产生式的观察者
+        dispatch().notifyReduce(currentStatus, production);
     }
 
     /**
@@ -71,9 +120,7 @@ public class SyntaxAnalyzer {
      * @param currentStatus 当前状态
      */
     public void callWhenInAccept(Status currentStatus) {
-        for (final var listener : observers) {
-            listener.whenAccept(currentStatus);
-        }
+        dispatch().notifyAccept(currentStatus);
     }
 
     public void loadTokens(Iterator<Token> tokens) {
@@ -81,14 +128,43 @@ public class SyntaxAnalyzer {
         // 你可以自行选择要如何存储词法单元, 譬如使用迭代器, 或是栈, 或是干脆使用一个 list 全存起来
         // 需要注意的是, 在实现驱动程序的过程中, 你会需要面对只读取一个 token 而不能消耗它的情况,
         // 在自行设计的时候请加以考虑此种情况
+        this.tokens = TokenCursor.of(tokens);
+    }
+
+    /**
+     * 以游标形式加载词法单元, 驱动程序只在移入时才向游标索取 Token 对象
+     *
+     * @param tokens 词法单元游标
+     */
+    public void loadTokens(TokenCursor tokens) {
         this.tokens = tokens;
     }
 
+    /**
+     * 加载完整的词法单元序列. 打开 {@link RunConfigs#PARSER_PARALLEL} 且各观察者都是 {@link SplittableObserver} 时按语句并行分析
+     *
+     * @param tokens 词法单元序列, 以 EOF 结尾
+     */
+    public void loadTokens(TokenBuffer tokens) {
+        this.buffer = tokens;
+        this.tokens = tokens.cursor();
+    }
+
     public void loadLRTable(LRTable table) {
         // 加载 LR 分析表
         // 你可以自行选择要如何使用该表格:
         // 是直接对 LRTable 调用 getAction/getGoto, 抑或是直接将 initStatus 存起来使用
         // throw new NotImplementedException();
+        // 驱动程序只在编译后的分析表上运行, 不再逐步查询 Status 中的 HashMap
+        this.lrTable = CompiledLRTable.compile(table);
+    }
+
+    /**
+     * 加载编译后的 LR 分析表
+     *
+     * @param table 编译后的 LR 分析表
+     */
+    public void loadLRTable(CompiledLRTable table) {
         this.lrTable = table;
     }
 
@@ -97,61 +173,298 @@ public class SyntaxAnalyzer {
         // 你需要根据上面的输入来实现 LR 语法分析的驱动程序
         // 请分别在遇到 Shift, Reduce, Accept 的时候调用上面的 callWhenInShift, callWhenInReduce, callWhenInAccept
         // 否则用于为实验二打分的产生式输出可能不会正常工作
-        class StatusTokenTuple {
-            public final Status state;
-            public final Term term;
+        run(RunConfigs.PARSER_PARALLEL, RunConfigs.PARSER_PARALLEL_CHUNK_SIZE);
+    }
+
+    /**
+     * @param parallel  是否尝试按语句并行分析, 仅在 {@link #splittable(boolean)} 时生效
+     * @param chunkSize 并行分析时每块至少包含的词法单元数
+     */
+    void run(boolean parallel, int chunkSize) {
+        run(parallel, chunkSize, RunConfigs.PARSER_CONCURRENT_OBSERVERS, RunConfigs.PARSER_EVENT_RING_SIZE);
+    }
+
+    /**
+     * @param parallel            是否尝试按语句并行分析, 仅在 {@link #splittable(boolean)} 时生效
+     * @param chunkSize           并行分析时每块至少包含的词法单元数
+     * @param concurrentObservers 是否让各观察者在自己的线程上消费事件, 仅在 {@link #concurrent()} 时生效
+     * @param ringSize            观察者流水线的环形缓冲区的容量, 须为 2 的幂
+     */
+    void run(boolean parallel, int chunkSize, boolean concurrentObservers, int ringSize) {
+        final var notifyShift = dispatch().shiftObservers().length > 0;
+        final var table = RunConfigs.PARSER_SKIP_UNIT_REDUCTIONS ? withoutUnitReductions() : lrTable;
+        if (parallel && splittable(concurrentObservers)) {
+            runStatements(notifyShift, table, chunkSize);
+            return;
+        }
+        if (concurrentObservers && concurrent()) {
+            // 各观察者在自己的线程上消费事件, 在分析结束 (接受或出错) 时汇合
+            pipeline = new ObserverPipeline(observers, lrTable, ringSize);
+            pipeline.start();
+        }
+        try {
+            // 初始状态为 (Status 0, eof)
+            top = -1;
+            push(table.getInit(), TokenKind.eof());
+            parse(notifyShift, table);
+        } finally {
+            if (pipeline != null) {
+                final var running = pipeline;
+                pipeline = null;
+                running.finish();
+            }
+            if (RunConfigs.PARSER_PROFILE_OBSERVERS) {
+                dispatch.report();
+            }
+            if (recorder != null) {
+                recorder.close();
+                observers.remove(recorder);
+                recorder = null;
+                dispatch = null;
+            }
+        }
+    }
 
-            public StatusTokenTuple(Status state, Term term) {
-                this.state = state;
-                this.term = term;
+    /**
+     * 没有观察者关心的单产生式 (如 E -> A, A -> B) 的规约可以略过, 见 {@link CompiledLRTable#collapseUnitChains(boolean[])}.
+     * 维护文法符号栈时不略过, 否则栈中会留下链底部的非终结符.
+     *
+     * @return 合并了可以略过的单产生式链的分析表
+     */
+    private CompiledLRTable withoutUnitReductions() {
+        if (symbols != null) {
+            return lrTable;
+        }
+        final var skippable = new boolean[lrTable.getProductionLimit()];
+        var any = false;
+        for (int index = 0; index < skippable.length; index++) {
+            final var production = lrTable.getProduction(index);
+            if (production != null && production.body().size() == 1 && production.body().get(0) instanceof NonTerminal
+                && dispatch.reduceObservers(index).length == 0) {
+                skippable[index] = true;
+                any = true;
             }
         }
-        Stack<StatusTokenTuple> stack = new Stack<>();
-        // 初始状态为 (Status 0, eof)
-        stack.add(new StatusTokenTuple(lrTable.getInit(), TokenKind.eof()));
-        while (tokens.hasNext()) {
-            final var token = tokens.next();
+        return any ? lrTable.collapseUnitChains(skippable) : lrTable;
+    }
+
+    /**
+     * 观察者线程与驱动程序之间只通过发布的事件同步. 按需分析时词法分析器会在驱动程序的线程上向符号表追加符号,
+     * 文法符号栈也只属于驱动程序的线程, 两者都不能安全地交给观察者线程读取, 此时仍在驱动程序的线程上通知观察者.
+     *
+     * @return 是否可以让观察者在各自的线程上消费事件: 有完整的词法单元序列 (分析开始前符号表已不再增长), 且不需要文法符号栈
+     */
+    private boolean concurrent() {
+        return buffer != null && symbols == null;
+    }
+
+    /**
+     * @param concurrentObservers 是否要求观察者在自己的线程上消费事件
+     * @return 是否可以按语句并行分析: 有完整的词法单元序列, 所有观察者都能分块, 且不需要文法符号栈, 观察者线程或计时
+     */
+    private boolean splittable(boolean concurrentObservers) {
+        return buffer != null && symbols == null
+            && !concurrentObservers && !RunConfigs.PARSER_PROFILE_OBSERVERS
+            && observers.stream().allMatch(SplittableObserver.class::isInstance);
+    }
+
+    /**
+     * 按语句并行分析
+     * <br>
+     * 程序为 P -> S_list, 每条语句都以分号结尾, 分析完 "S ;" 后总是回到同一个状态 (语句入口状态), 且此时栈中尚未规约出 S_list.
+     * 因此在分号之后把词法单元切成若干块, 第一块从初始状态开始, 其余各块从语句入口状态开始, 在 ForkJoinPool 中由各自的驱动程序与
+     * fork 出的观察者独立分析. 之后按顺序 join 各块的观察者并拼接各块的状态栈, 最后由本驱动程序分析剩下的词法单元,
+     * 完成对语句列表的规约与接受.
+     * <br>
+     * 若某一块出错或没有停在语句入口状态, 从该块开始改为顺序分析, 观察者收到的事件与顺序分析时相同.
+     */
+    private void runStatements(boolean notifyShift, CompiledLRTable table, int chunkSize) {
+        top = -1;
+        push(table.getInit(), null);
+        final var cuts = splitStatements(chunkSize);
+        var resumeFrom = 0;
+        if (cuts.length > 0) {
+            // 分析第一条语句得到语句入口状态, 不通知任何观察者
+            final var probe = new SyntaxAnalyzer(symbolTable);
+            probe.tokens = buffer.cursor(0, nextStatementEnd(0));
+            probe.push(table.getInit(), null);
+            final var entry = probe.parse(false, table) ? probe.states[probe.top] : -1;
+            if (entry >= 0) {
+                resumeFrom = joinChunks(notifyShift, table, cuts, entry);
+            }
+        }
+        tokens = buffer.cursor(resumeFrom, buffer.size());
+        parse(notifyShift, table);
+    }
+
+    /**
+     * 并行分析各块, 再按顺序 join 各块的观察者, 拼接状态栈时略去各块栈底的入口状态
+     *
+     * @return 已并入的最后一块的结束位置, 之后的词法单元需要顺序分析
+     */
+    private int joinChunks(boolean notifyShift, CompiledLRTable table, int[] cuts, int entry) {
+        final var pool = ForkJoinPool.commonPool();
+        final var tasks = new ArrayList<ForkJoinTask<SyntaxAnalyzer>>(cuts.length);
+        for (int i = 0; i < cuts.length; i++) {
+            final var from = i == 0 ? 0 : cuts[i - 1];
+            final var to = cuts[i];
+            final var start = i == 0 ? table.getInit() : entry;
+            tasks.add(pool.submit(() -> {
+                final var chunk = new SyntaxAnalyzer(symbolTable);
+                observers.forEach(observer -> chunk.registerObserver(((SplittableObserver) observer).fork()));
+                chunk.tokens = buffer.cursor(from, to);
+                chunk.push(start, null);
+                return chunk.parse(notifyShift, table) && chunk.states[chunk.top] == entry ? chunk : null;
+            }));
+        }
+        var joined = 0;
+        for (int i = 0; i < cuts.length; i++) {
+            final var chunk = tasks.get(i).join();
+            if (chunk == null) {
+                tasks.subList(i + 1, cuts.length).forEach(task -> task.cancel(false));
+                break;
+            }
+            for (int o = 0; o < observers.size(); o++) {
+                ((SplittableObserver) observers.get(o)).join((SplittableObserver) chunk.observers.get(o));
+            }
+            for (int depth = 1; depth <= chunk.top; depth++) {
+                push(chunk.states[depth], null);
+            }
+            joined = cuts[i];
+        }
+        return joined;
+    }
+
+    /**
+     * @return 各块的结束位置 (某个分号的下一个下标), 除最后一块外每块至少有 chunkSize 个词法单元.
+     * 最后一个分号之后的词法单元 (至少有 EOF) 不属于任何块
+     */
+    private int[] splitStatements(int chunkSize) {
+        final var cuts = new ArrayList<Integer>();
+        var from = 0;
+        var last = 0;
+        for (var end = nextStatementEnd(0); end > 0; end = nextStatementEnd(end)) {
+            last = end;
+            if (end - from >= chunkSize) {
+                cuts.add(end);
+                from = end;
+            }
+        }
+        if (last > from) {
+            cuts.add(last);
+        }
+        return cuts.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * @return from 之后第一个分号的下一个下标, 没有分号时返回 -1
+     */
+    private int nextStatementEnd(int from) {
+        final var semicolon = TokenKind.fromString("Semicolon").getCode();
+        for (int i = from; i < buffer.size(); i++) {
+            if (buffer.kindCode(i) == semicolon) {
+                return i + 1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 从栈顶的状态开始分析, 直到接受, 出错或词法单元耗尽
+     *
+     * @return 是否因词法单元耗尽而停止
+     */
+    private boolean parse(boolean notifyShift, CompiledLRTable lrTable) {
+        while (tokens.advance()) {
+            final var code = tokens.code();
             var stepToken = false;
             while (!stepToken) {
-                var action = lrTable.getAction(stack.peek().state, token);
+                final var action = lrTable.action(states[top], code);
                 // noinspection AlibabaSwitchStatement
-                switch (action.getKind()) {
-                    case Shift -> {
-                        final var shiftTo = action.getStatus();
+                switch (CompiledLRTable.kind(action)) {
+                    case CompiledLRTable.SHIFT -> {
+                        final var shiftTo = CompiledLRTable.operand(action);
                         if (RunConfigs.DEBUG) {
-                            System.out.printf("Shift to state %s\n", shiftTo);
+                            System.out.printf("Shift to state %s\n", lrTable.getStatus(shiftTo));
                         }
-                        callWhenInShift(shiftTo, token);
-                        stack.add(new StatusTokenTuple(shiftTo, token.getKind()));
+                        // 没有观察者关心移入时, 不必构造 Token 对象
+                        if (notifyShift) {
+                            if (pipeline != null) {
+                                pipeline.shift(shiftTo, tokens.token());
+                            } else {
+                                callWhenInShift(lrTable.getStatus(shiftTo), tokens.token());
+                            }
+                        }
+                        push(shiftTo, symbols == null ? null : tokens.kind());
                         stepToken = true;
                     }
-                    case Reduce -> {
-                        final var production = action.getProduction();
+                    case CompiledLRTable.REDUCE -> {
+                        final var index = CompiledLRTable.operand(action);
+                        final var production = lrTable.getProduction(index);
                         if (RunConfigs.DEBUG) {
                             System.out.printf("Reduce: %s\n", production);
                         }
-                        for (int i = 0; i < production.body().size(); i++) {
-                            stack.pop();
+                        top -= lrTable.lengthOf(index);
+                        final var gotoStatus = lrTable.goTo(states[top], lrTable.headOf(index));
+                        if (gotoStatus < 0) {
+                            if (RunConfigs.DEBUG) {
+                                System.out.println("Error parsing!");
+                            }
+                            return false;
+                        }
+                        if (pipeline == null) {
+                            callWhenInReduce(lrTable.getStatus(states[top]), production);
+                        } else if (dispatch.reduceObservers(index).length > 0) {
+                            pipeline.reduce(states[top], index);
                         }
-                        final var gotoStatus = lrTable.getGoto(stack.peek().state, production.head());
-                        callWhenInReduce(stack.peek().state, production);
-                        stack.add(new StatusTokenTuple(gotoStatus, production.head()));
+                        push(gotoStatus, production.head());
                     }
-                    case Accept -> {
+                    case CompiledLRTable.ACCEPT -> {
                         if (RunConfigs.DEBUG) {
                             System.out.println("Accept!");
                         }
-                        callWhenInAccept(stack.peek().state);
-                        return;
+                        if (pipeline != null) {
+                            pipeline.accept(states[top]);
+                        } else {
+                            callWhenInAccept(lrTable.getStatus(states[top]));
+                        }
+                        return false;
                     }
-                    case Error -> {
+                    default -> {
                         if (RunConfigs.DEBUG) {
                             System.out.println("Error parsing!");
                         }
-                        return;
+                        return false;
                     }
                 }
             }
         }
+        return true;
+    }
+
+    /**
+     * 压入状态, 栈满时倍增扩容
+     *
+     * @param status 状态编号
+     * @param symbol 对应的文法符号, 不维护文法符号栈时忽略
+     */
+    private void push(int status, Term symbol) {
+        if (++top == states.length) {
+            states = Arrays.copyOf(states, states.length * 2);
+            if (symbols != null) {
+                symbols = Arrays.copyOf(symbols, states.length);
+            }
+        }
+        states[top] = status;
+        if (symbols != null) {
+            symbols[top] = symbol;
+        }
+    }
+
+    private ObserverDispatch dispatch() {
+        if (dispatch == null) {
+            dispatch = new ObserverDispatch(observers);
+        }
+        return dispatch;
     }
 }
@@ -0,0 +1,532 @@
+package cn.edu.hitsz.compiler.parser.table;
+
+import cn.edu.hitsz.compiler.lexer.TokenKind;
+
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+
+/**
+ * 编译后的 LR 分析表
+ * <br>
+ * {@link LRTable} 的每次查询都要经过 {@code HashMap<TokenKind, Action>}, 并为此对文法符号的名字计算散列值.
+ * 编译后的分析表为状态, 终结符与非终结符分配从 0 开始的稠密编号, 把 ACTION 与 GOTO 表看作一张以
+ * "终结符, 非终结符" 为列的二维表, 每个单元格编码为一个 int:
+ * <ul>
+ *     <li>低 2 位为动作类型: {@link #ERROR}, {@link #SHIFT}, {@link #REDUCE}, {@link #ACCEPT}</li>
+ *     <li>其余位为操作数: 移入 (及 GOTO) 的目标状态编号, 或规约的产生式编号</li>
+ * </ul>
+ * 分析表中的大部分单元格都是错误动作, 因此按行位移 (row displacement) 压缩: 每个状态有一个基址 base,
+ * 单元格 (s, c) 存放在 {@code entries[base[s] + c]}, 并以 {@code owners[base[s] + c] == s} 校验其归属,
+ * 不属于该状态的位置即为错误动作. 各行交错地放进同一个数组, 只要它们的非错误单元格互不重叠.
+ * <br>
+ * 启用默认规约时, 非错误动作都是规约同一条产生式的状态不再在压缩数组中存放 ACTION 部分,
+ * 而是记录一个默认动作, 在这样的状态下不查看向前看符号直接规约.
+ *
+ * @author chiro
+ */
+public final class CompiledLRTable {
+    public static final int ERROR = 0;
+    public static final int SHIFT = 1;
+    public static final int REDUCE = 2;
+    public static final int ACCEPT = 3;
+    private static final int KIND_BITS = 2;
+    private static final int KIND_MASK = (1 << KIND_BITS) - 1;
+
+    private final Status[] statuses;
+    private final Production[] productions;
+    private final int[] productionHeads;
+    private final int[] productionLengths;
+    private final int terminalCount;
+    private final int nonTerminalCount;
+    /**
+     * 以 "码点 + 1" 为下标的终结符编号, EOF 的码点为 -1, 不在表中的为 -1
+     */
+    private final int[] terminalOfCode;
+    /**
+     * 以状态编号为下标的默认动作, 没有默认规约的状态为 {@link #ERROR}
+     */
+    private final int[] defaults;
+    private final int[] bases;
+    private final int[] owners;
+    private final int[] entries;
+
+    /**
+     * 编译 LR 分析表, 不启用默认规约
+     *
+     * @param table LR 分析表
+     * @return 编译后的分析表
+     */
+    public static CompiledLRTable compile(LRTable table) {
+        return compile(table, false);
+    }
+
+    /**
+     * 编译 LR 分析表
+     *
+     * @param table             LR 分析表
+     * @param defaultReductions 是否为只规约同一条产生式的状态启用默认规约
+     * @return 编译后的分析表
+     */
+    public static CompiledLRTable compile(LRTable table, boolean defaultReductions) {
+        final var statusList = table.getStatuses();
+        final var terminals = table.getTerminals();
+        final var nonTerminals = table.getNonTerminals();
+        final var statusIds = new HashMap<Status, Integer>();
+        for (int id = 0; id < statusList.size(); id++) {
+            statusIds.put(statusList.get(id), id);
+        }
+
+        final var productionList = GrammarInfo.getProductionsInOrder();
+        final var productions = new Production[productionList.size() + 1];
+        for (final var production : productionList) {
+            productions[production.index()] = production;
+        }
+
+        final var rows = new int[statusList.size()][terminals.size() + nonTerminals.size()];
+        for (int id = 0; id < statusList.size(); id++) {
+            final var status = statusList.get(id);
+            for (int t = 0; t < terminals.size(); t++) {
+                final var action = status.getAction(terminals.get(t));
+                rows[id][t] = switch (action.getKind()) {
+                    case Shift -> encode(SHIFT, statusIds.get(action.getStatus()));
+                    case Reduce -> encode(REDUCE, action.getProduction().index());
+                    case Accept -> encode(ACCEPT, 0);
+                    case Error -> ERROR;
+                };
+            }
+            for (int n = 0; n < nonTerminals.size(); n++) {
+                final var target = status.getGoto(nonTerminals.get(n));
+                rows[id][terminals.size() + n] = target.isError() ? ERROR : encode(SHIFT, statusIds.get(target));
+            }
+        }
+
+        final var defaults = new int[rows.length];
+        if (defaultReductions) {
+            for (int id = 0; id < rows.length; id++) {
+                final var production = TableOptimizer.defaultReduction(statusList.get(id), terminals);
+                if (production != null) {
+                    defaults[id] = encode(REDUCE, production.index());
+                    Arrays.fill(rows[id], 0, terminals.size(), ERROR);
+                }
+            }
+        }
+
+        var maxCode = -1;
+        for (final var terminal : terminals) {
+            maxCode = Math.max(maxCode, terminal.getCode());
+        }
+        final var terminalOfCode = new int[maxCode + 2];
+        Arrays.fill(terminalOfCode, -1);
+        for (int t = 0; t < terminals.size(); t++) {
+            terminalOfCode[terminals.get(t).getCode() + 1] = t;
+        }
+
+        final var nonTerminalIds = new HashMap<NonTerminal, Integer>();
+        for (int n = 0; n < nonTerminals.size(); n++) {
+            nonTerminalIds.put(nonTerminals.get(n), n);
+        }
+        final var productionHeads = new int[productions.length];
+        final var productionLengths = new int[productions.length];
+        for (final var production : productionList) {
+            // 增广文法的开始产生式不一定出现在 GOTO 表中
+            productionHeads[production.index()] = nonTerminalIds.getOrDefault(production.head(), -1);
+            productionLengths[production.index()] = production.body().size();
+        }
+
+        final var bases = new int[rows.length];
+        final var packed = pack(rows, terminals.size() + nonTerminals.size(), bases);
+        return new CompiledLRTable(statusList.toArray(new Status[0]), productions, productionHeads, productionLengths,
+            terminals.size(), nonTerminals.size(), terminalOfCode, defaults, bases, packed[0], packed[1]);
+    }
+
+    /**
+     * @param status 状态编号
+     * @param code   终结符的码点, 见 {@link TokenKind#getCode()}
+     * @return 编码后的动作
+     */
+    public int action(int status, int code) {
+        final var fallback = defaults[status];
+        if (fallback != ERROR) {
+            return fallback;
+        }
+        final var index = code + 1;
+        if (index < 0 || index >= terminalOfCode.length || terminalOfCode[index] < 0) {
+            return ERROR;
+        }
+        return entry(status, terminalOfCode[index]);
+    }
+
+    /**
+     * @param status      状态编号
+     * @param nonTerminal 非终结符编号
+     * @return 应转移到的状态编号, 不存在时为 -1
+     */
+    public int goTo(int status, int nonTerminal) {
+        final var entry = entry(status, terminalCount + nonTerminal);
+        return entry == ERROR ? -1 : operand(entry);
+    }
+
+    /**
+     * @param status 状态编号
+     * @return 该状态的默认动作, 没有默认规约时为 {@link #ERROR}
+     */
+    public int defaultAction(int status) {
+        return defaults[status];
+    }
+
+    /**
+     * 合并单产生式链: 若 GOTO(s, B) 的目标状态默认规约单产生式 A -> B, 且该产生式可以略过,
+     * 则直接以 GOTO(s, A) 作为 GOTO(s, B) 的目标, 如此反复. 于是 E -> A, A -> B 这样的链在规约出 B 之后一步到达.
+     * 只有启用了默认规约的分析表才有可以合并的链.
+     *
+     * @param skippable 以产生式编号为下标, 该产生式的规约是否可以略过 (没有观察者关心)
+     * @return 合并后的分析表, 与本表共享除 GOTO 单元格以外的全部数据
+     */
+    public CompiledLRTable collapseUnitChains(boolean[] skippable) {
+        final var collapsed = entries.clone();
+        for (int status = 0; status < statuses.length; status++) {
+            for (int n = 0; n < nonTerminalCount; n++) {
+                var target = goTo(status, n);
+                if (target < 0) {
+                    continue;
+                }
+                // 每个非终结符至多经过一次, 防止 A -> B, B -> A 这样的环
+                for (int step = 0; step < nonTerminalCount; step++) {
+                    final var fallback = defaults[target];
+                    if (kind(fallback) != REDUCE) {
+                        break;
+                    }
+                    final var production = operand(fallback);
+                    if (production >= skippable.length || !skippable[production]
+                        || productionLengths[production] != 1 || productionHeads[production] < 0) {
+                        break;
+                    }
+                    final var next = goTo(status, productionHeads[production]);
+                    if (next < 0) {
+                        break;
+                    }
+                    target = next;
+                }
+                collapsed[bases[status] + terminalCount + n] = encode(SHIFT, target);
+            }
+        }
+        return new CompiledLRTable(statuses, productions, productionHeads, productionLengths,
+            terminalCount, nonTerminalCount, terminalOfCode, defaults, bases, owners, collapsed);
+    }
+
+    /**
+     * @param action 编码后的动作
+     * @return 动作类型
+     */
+    public static int kind(int action) {
+        return action & KIND_MASK;
+    }
+
+    /**
+     * @param action 编码后的动作
+     * @return 动作的操作数
+     */
+    public static int operand(int action) {
+        return action >>> KIND_BITS;
+    }
+
+    /**
+     * @return 初始状态的编号
+     */
+    public int getInit() {
+        return 0;
+    }
+
+    /**
+     * @param status 状态编号
+     * @return 对应的状态对象, 供通知观察者使用
+     */
+    public Status getStatus(int status) {
+        return statuses[status];
+    }
+
+    /**
+     * @param index 产生式编号
+     * @return 对应的产生式, 不存在时为 null
+     */
+    public Production getProduction(int index) {
+        return productions[index];
+    }
+
+    /**
+     * @return 产生式编号的上界, 所有产生式的编号都小于它
+     */
+    public int getProductionLimit() {
+        return productions.length;
+    }
+
+    /**
+     * @param production 产生式编号
+     * @return 产生式头部的非终结符编号
+     */
+    public int headOf(int production) {
+        return productionHeads[production];
+    }
+
+    /**
+     * @param production 产生式编号
+     * @return 产生式体的长度
+     */
+    public int lengthOf(int production) {
+        return productionLengths[production];
+    }
+
+    /**
+     * @return 状态的数量
+     */
+    public int getStatusCount() {
+        return statuses.length;
+    }
+
+    /**
+     * @return 压缩后存放单元格的数组长度
+     */
+    public int getPackedSize() {
+        return entries.length;
+    }
+
+    /**
+     * @return 以 int 计的快照长度, 见 {@link #write(IntBuffer)}
+     */
+    int snapshotSize() {
+        var size = 3 + statuses.length + 3 + terminalOfCode.length + productionHeads.length + productionLengths.length
+            + defaults.length + bases.length + 2 + owners.length + entries.length;
+        for (final var status : statuses) {
+            size += 2 + 2 * actionCount(status) + 2 * gotoCount(status);
+        }
+        return size;
+    }
+
+    /**
+     * 依次写入状态编号, 终结符与非终结符数量, 以及各个数组 (除 defaults 与 bases 外都以长度开头),
+     * 最后写入每个状态的 ACTION 与 GOTO 表项. 默认规约会清除压缩数组中的 ACTION 部分, 因此状态的表项单独存放,
+     * 每项为列号与编码后的动作, 以便读取时重建与编译时相同的 {@link Status}
+     *
+     * @param out 输出
+     */
+    void write(IntBuffer out) {
+        out.put(statuses.length);
+        for (final var status : statuses) {
+            out.put(status.index());
+        }
+        out.put(terminalCount).put(nonTerminalCount);
+        putArray(out, terminalOfCode);
+        putArray(out, productionHeads);
+        putArray(out, productionLengths);
+        out.put(defaults);
+        out.put(bases);
+        putArray(out, owners);
+        putArray(out, entries);
+
+        final var statusIds = new HashMap<Status, Integer>();
+        for (int id = 0; id < statuses.length; id++) {
+            statusIds.put(statuses[id], id);
+        }
+        final var nonTerminalIds = new HashMap<NonTerminal, Integer>();
+        for (final var production : productions) {
+            if (production != null && productionHeads[production.index()] >= 0) {
+                nonTerminalIds.put(production.head(), productionHeads[production.index()]);
+            }
+        }
+        for (final var status : statuses) {
+            // 显式存放的错误动作与 GOTO 和不存在的表项等价, 不必写入
+            out.put(actionCount(status));
+            for (final var entry : status.action().entrySet()) {
+                final var action = entry.getValue();
+                if (action.getKind() == Action.ActionKind.Error) {
+                    continue;
+                }
+                out.put(terminalOfCode[entry.getKey().getCode() + 1]);
+                out.put(switch (action.getKind()) {
+                    case Shift -> encode(SHIFT, statusIds.get(action.getStatus()));
+                    case Reduce -> encode(REDUCE, action.getProduction().index());
+                    case Accept -> encode(ACCEPT, 0);
+                    case Error -> ERROR;
+                });
+            }
+            out.put(gotoCount(status));
+            for (final var entry : status.goto_().entrySet()) {
+                if (!entry.getValue().isError()) {
+                    out.put(nonTerminalIds.get(entry.getKey())).put(statusIds.get(entry.getValue()));
+                }
+            }
+        }
+    }
+
+    private static int actionCount(Status status) {
+        return (int) status.action().values().stream().filter(action -> action.getKind() != Action.ActionKind.Error).count();
+    }
+
+    private static int gotoCount(Status status) {
+        return (int) status.goto_().values().stream().filter(target -> !target.isError()).count();
+    }
+
+    /**
+     * 读取 {@link #write(IntBuffer)} 写入的快照
+     *
+     * @param in 输入
+     * @return 编译后的分析表
+     * @throws RuntimeException 快照与当前的文法不符
+     */
+    static CompiledLRTable read(IntBuffer in) {
+        final var statuses = new Status[in.get()];
+        for (int id = 0; id < statuses.length; id++) {
+            statuses[id] = Status.create(in.get());
+        }
+        final var terminalCount = in.get();
+        final var nonTerminalCount = in.get();
+        final var terminalOfCode = getArray(in);
+        final var productionHeads = getArray(in);
+        final var productionLengths = getArray(in);
+        final var defaults = new int[statuses.length];
+        in.get(defaults);
+        final var bases = new int[statuses.length];
+        in.get(bases);
+        final var owners = getArray(in);
+        final var entries = getArray(in);
+
+        final var productionList = GrammarInfo.getProductionsInOrder();
+        final var productions = new Production[productionList.size() + 1];
+        if (productions.length != productionHeads.length) {
+            throw new RuntimeException("LR table snapshot does not match the grammar");
+        }
+        for (final var production : productionList) {
+            productions[production.index()] = production;
+        }
+
+        // 由列号还原终结符与非终结符: 终结符来自码点, 非终结符来自以它为头部的产生式
+        final var terminals = new TokenKind[terminalCount];
+        for (int index = 0; index < terminalOfCode.length; index++) {
+            if (terminalOfCode[index] >= 0) {
+                terminals[terminalOfCode[index]] = TokenKind.fromCode(index - 1);
+            }
+        }
+        final var nonTerminals = new NonTerminal[nonTerminalCount];
+        for (final var production : productionList) {
+            if (productionHeads[production.index()] >= 0) {
+                nonTerminals[productionHeads[production.index()]] = production.head();
+            }
+        }
+        for (final var status : statuses) {
+            final var actionCount = in.get();
+            for (int i = 0; i < actionCount; i++) {
+                final var terminal = terminals[in.get()];
+                final var action = in.get();
+                status.setAction(terminal, switch (kind(action)) {
+                    case SHIFT -> Action.shift(statuses[operand(action)]);
+                    case REDUCE -> Action.reduce(productions[operand(action)]);
+                    case ACCEPT -> Action.accept();
+                    default -> Action.error();
+                });
+            }
+            final var gotoCount = in.get();
+            for (int i = 0; i < gotoCount; i++) {
+                final var nonTerminal = nonTerminals[in.get()];
+                status.setGoto(nonTerminal, statuses[in.get()]);
+            }
+        }
+        return new CompiledLRTable(statuses, productions, productionHeads, productionLengths,
+            terminalCount, nonTerminalCount, terminalOfCode, defaults, bases, owners, entries);
+    }
+
+    private static void putArray(IntBuffer out, int[] array) {
+        out.put(array.length).put(array);
+    }
+
+    private static int[] getArray(IntBuffer in) {
+        final var array = new int[in.get()];
+        in.get(array);
+        return array;
+    }
+
+    private int entry(int status, int column) {
+        final var index = bases[status] + column;
+        return owners[index] == status ? entries[index] : ERROR;
+    }
+
+    private static int encode(int kind, int operand) {
+        return operand << KIND_BITS | kind;
+    }
+
+    CompiledLRTable(Status[] statuses, Production[] productions, int[] productionHeads, int[] productionLengths,
+                    int terminalCount, int nonTerminalCount, int[] terminalOfCode,
+                    int[] defaults, int[] bases, int[] owners, int[] entries) {
+        this.statuses = statuses;
+        this.productions = productions;
+        this.productionHeads = productionHeads;
+        this.productionLengths = productionLengths;
+        this.terminalCount = terminalCount;
+        this.nonTerminalCount = nonTerminalCount;
+        this.terminalOfCode = terminalOfCode;
+        this.defaults = defaults;
+        this.bases = bases;
+        this.owners = owners;
+        this.entries = entries;
+    }
+
+    /**
+     * 按非错误单元格数量从多到少依次为各行寻找不重叠的最小基址 (first fit)
+     *
+     * @param rows    未压缩的各行
+     * @param columns 列数
+     * @param bases   输出各行的基址
+     * @return 压缩后的归属数组与单元格数组
+     */
+    private static int[][] pack(int[][] rows, int columns, int[] bases) {
+        final var order = new Integer[rows.length];
+        final var filled = new int[rows.length];
+        for (int s = 0; s < rows.length; s++) {
+            order[s] = s;
+            for (final var entry : rows[s]) {
+                if (entry != ERROR) {
+                    filled[s]++;
+                }
+            }
+        }
+        Arrays.sort(order, Comparator.comparingInt((Integer s) -> filled[s]).reversed());
+
+        var owners = new int[columns * 2];
+        Arrays.fill(owners, -1);
+        var entries = new int[columns * 2];
+        var used = columns;
+        for (final var s : order) {
+            final var row = rows[s];
+            var base = 0;
+            while (!fits(row, owners, base)) {
+                base++;
+            }
+            if (base + columns > owners.length) {
+                final var oldLength = owners.length;
+                owners = Arrays.copyOf(owners, Math.max(oldLength * 2, base + columns));
+                Arrays.fill(owners, oldLength, owners.length, -1);
+                entries = Arrays.copyOf(entries, owners.length);
+            }
+            for (int c = 0; c < columns; c++) {
+                if (row[c] != ERROR) {
+                    owners[base + c] = s;
+                    entries[base + c] = row[c];
+                }
+            }
+            bases[s] = base;
+            used = Math.max(used, base + columns);
+        }
+        // 保留到最后一个基址加上列数, 查询时不必检查越界
+        return new int[][]{Arrays.copyOf(owners, used), Arrays.copyOf(entries, used)};
+    }
+
+    private static boolean fits(int[] row, int[] owners, int base) {
+        for (int c = 0; c < row.length; c++) {
+            if (row[c] != ERROR && base + c < owners.length && owners[base + c] != -1) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
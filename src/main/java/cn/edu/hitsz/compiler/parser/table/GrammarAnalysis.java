@@ -0,0 +1,380 @@
+package cn.edu.hitsz.compiler.parser.table;
+
+import cn.edu.hitsz.compiler.lexer.TokenKind;
+import cn.edu.hitsz.compiler.utils.FileUtils;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 文法分析: 文法符号的稠密编号, 以及各非终结符的可空性, first 集合与 follow 集合
+ * <br>
+ * 终结符按码点排序编号为 {@code 0 .. terminalCount - 1}, 非终结符按在文法中首次出现的顺序接在其后.
+ * first 与 follow 均为以终结符编号为位下标的 {@code long[]} 位集, 用工作表迭代到不动点:
+ * 某个集合发生变化时, 只重新传播依赖它的那些集合, 因此与产生式的条数和左递归都无关.
+ * <br>
+ * 各种分析表构造方法 ({@link TableGenerator}) 都从这里取得上述信息; 公开的方法以 {@link Term} 的形式提供结果, 便于查看与调试.
+ *
+ * @author chiro
+ */
+public final class GrammarAnalysis {
+    private final List<Production> productions;
+    private final List<TokenKind> terminals;
+    private final List<NonTerminal> nonTerminals;
+    private final Map<Term, Integer> symbolIds = new HashMap<>();
+    private final int words;
+
+    /**
+     * 以产生式序号 (在产生式列表中的下标) 为下标, 产生式头部与产生式体的符号编号
+     */
+    private final int[] heads;
+    private final int[][] bodies;
+    /**
+     * 以非终结符序号 (符号编号减去终结符个数) 为下标
+     */
+    private final int[][] productionsOf;
+    private final boolean[] nullable;
+    private final long[][] first;
+    private final long[][] follow;
+
+    /**
+     * 分析 grammar.txt 中的文法
+     */
+    public GrammarAnalysis() {
+        this(GrammarInfo.getProductionsInOrder());
+    }
+
+    /**
+     * @param productions 产生式, 第一条产生式的头部为起始符号
+     */
+    public GrammarAnalysis(List<Production> productions) {
+        this.productions = productions;
+        this.terminals = new ArrayList<>(TokenKind.allAllowedTokenKinds().values());
+        terminals.sort(Comparator.comparingInt(TokenKind::getCode));
+        final var nonTerminalSet = new LinkedHashSet<NonTerminal>();
+        productions.forEach(production -> nonTerminalSet.add(production.head()));
+        productions.forEach(production -> production.body().stream()
+            .filter(NonTerminal.class::isInstance).map(NonTerminal.class::cast).forEach(nonTerminalSet::add));
+        this.nonTerminals = new ArrayList<>(nonTerminalSet);
+        for (final var terminal : terminals) {
+            symbolIds.put(terminal, symbolIds.size());
+        }
+        for (final var nonTerminal : nonTerminals) {
+            symbolIds.put(nonTerminal, symbolIds.size());
+        }
+        this.words = (terminals.size() + 63) >>> 6;
+
+        this.heads = new int[productions.size()];
+        this.bodies = new int[productions.size()][];
+        final var byHead = new ArrayList<List<Integer>>();
+        nonTerminals.forEach(nonTerminal -> byHead.add(new ArrayList<>()));
+        for (int p = 0; p < productions.size(); p++) {
+            final var production = productions.get(p);
+            heads[p] = symbolIds.get(production.head());
+            bodies[p] = production.body().stream().mapToInt(symbolIds::get).toArray();
+            byHead.get(heads[p] - terminals.size()).add(p);
+        }
+        this.productionsOf = byHead.stream()
+            .map(list -> list.stream().mapToInt(Integer::intValue).toArray())
+            .toArray(int[][]::new);
+
+        this.nullable = new boolean[nonTerminals.size()];
+        this.first = new long[nonTerminals.size()][words];
+        this.follow = new long[nonTerminals.size()][words];
+        calcNullable();
+        calcFirst();
+        calcFollow();
+    }
+
+    //==================== 查看结果 ==============================//
+
+    public List<TokenKind> getTerminals() {
+        return terminals;
+    }
+
+    public List<NonTerminal> getNonTerminals() {
+        return nonTerminals;
+    }
+
+    public boolean isNullable(NonTerminal nonTerminal) {
+        return nullable[nonTerminalIndex(nonTerminal)];
+    }
+
+    /**
+     * @param term 文法符号
+     * @return 其 first 集合, 终结符的 first 就是它自身
+     */
+    public Set<TokenKind> getFirst(Term term) {
+        if (term instanceof TokenKind tokenKind) {
+            return Set.of(tokenKind);
+        }
+        return toSet(first[nonTerminalIndex((NonTerminal) term)]);
+    }
+
+    public Set<TokenKind> getFollow(NonTerminal nonTerminal) {
+        return toSet(follow[nonTerminalIndex(nonTerminal)]);
+    }
+
+    /**
+     * 将各非终结符的可空性, first 与 follow 集合写入文件, 用于调试
+     *
+     * @param path 文件路径
+     */
+    public void dump(String path) {
+        final var lines = new ArrayList<String>();
+        for (final var nonTerminal : nonTerminals) {
+            lines.add("%s%s first: %s follow: %s".formatted(nonTerminal, isNullable(nonTerminal) ? " (nullable)" : "",
+                getFirst(nonTerminal), getFollow(nonTerminal)));
+        }
+        FileUtils.writeLines(path, lines);
+    }
+
+    //==================== 供分析表构造方法使用的稠密编码 ==============================//
+
+    int symbolCount() {
+        return symbolIds.size();
+    }
+
+    int symbolId(Term term) {
+        return symbolIds.get(term);
+    }
+
+    boolean isTerminal(int symbol) {
+        return symbol < terminals.size();
+    }
+
+    /**
+     * @return 终结符位集所需的 long 个数
+     */
+    int words() {
+        return words;
+    }
+
+    int[] heads() {
+        return heads;
+    }
+
+    int[][] bodies() {
+        return bodies;
+    }
+
+    /**
+     * @param nonTerminal 非终结符序号
+     * @return 以其为头部的产生式序号
+     */
+    int[] productionsOf(int nonTerminal) {
+        return productionsOf[nonTerminal];
+    }
+
+    boolean nullable(int nonTerminal) {
+        return nullable[nonTerminal];
+    }
+
+    long[] followBits(int nonTerminal) {
+        return follow[nonTerminal];
+    }
+
+    /**
+     * @return 产生式体 body[from..] 是否可空
+     */
+    boolean isNullable(int[] body, int from) {
+        for (int i = from; i < body.length; i++) {
+            if (isTerminal(body[i]) || !nullable[body[i] - terminals.size()]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return 符号串 body[from..] 后接终结符 lookahead 的 first 集合
+     */
+    long[] firstOfSequence(int[] body, int from, int lookahead) {
+        final var result = new long[words];
+        if (addFirstOfSequence(result, body, from)) {
+            setBit(result, lookahead);
+        }
+        return result;
+    }
+
+    //==================== 不动点计算 ==============================//
+
+    /**
+     * 每条产生式记录体中尚未确定可空的符号个数, 归零时其头部可空, 再通知体中含有该头部的产生式
+     */
+    private void calcNullable() {
+        final var remaining = new int[bodies.length];
+        // 以非终结符序号为下标, 体中含有该非终结符的产生式 (出现几次就记几次)
+        final var occurrences = new ArrayList<List<Integer>>();
+        nonTerminals.forEach(nonTerminal -> occurrences.add(new ArrayList<>()));
+        final var worklist = new ArrayDeque<Integer>();
+        for (int p = 0; p < bodies.length; p++) {
+            var hasTerminal = false;
+            for (final var symbol : bodies[p]) {
+                if (isTerminal(symbol)) {
+                    hasTerminal = true;
+                } else {
+                    occurrences.get(symbol - terminals.size()).add(p);
+                }
+            }
+            remaining[p] = hasTerminal ? -1 : bodies[p].length;
+            if (remaining[p] == 0) {
+                worklist.add(p);
+            }
+        }
+
+        while (!worklist.isEmpty()) {
+            final var head = heads[worklist.poll()] - terminals.size();
+            if (nullable[head]) {
+                continue;
+            }
+            nullable[head] = true;
+            for (final var p : occurrences.get(head)) {
+                if (remaining[p] > 0 && --remaining[p] == 0) {
+                    worklist.add(p);
+                }
+            }
+        }
+    }
+
+    /**
+     * 对 A -> X1 X2 ... Xn, 若 X1 .. Xi-1 均可空: Xi 为终结符时将其加入 first(A), 为非终结符时 first(A) 依赖 first(Xi)
+     */
+    private void calcFirst() {
+        final var dependents = dependents();
+        for (int p = 0; p < bodies.length; p++) {
+            final var head = heads[p] - terminals.size();
+            for (final var symbol : bodies[p]) {
+                if (isTerminal(symbol)) {
+                    setBit(first[head], symbol);
+                    break;
+                }
+                add(dependents, symbol - terminals.size(), head);
+                if (!nullable[symbol - terminals.size()]) {
+                    break;
+                }
+            }
+        }
+        propagate(first, dependents);
+    }
+
+    /**
+     * 起始符号的 follow 为 EOF; 对 A -> alpha B beta, first(beta) 加入 follow(B), 若 beta 可空则 follow(B) 依赖 follow(A)
+     */
+    private void calcFollow() {
+        final var dependents = dependents();
+        if (!productions.isEmpty()) {
+            setBit(follow[heads[0] - terminals.size()], symbolIds.get(TokenKind.eof()));
+        }
+        for (int p = 0; p < bodies.length; p++) {
+            final var body = bodies[p];
+            for (int i = 0; i < body.length; i++) {
+                if (isTerminal(body[i])) {
+                    continue;
+                }
+                final var nonTerminal = body[i] - terminals.size();
+                if (addFirstOfSequence(follow[nonTerminal], body, i + 1)) {
+                    add(dependents, heads[p] - terminals.size(), nonTerminal);
+                }
+            }
+        }
+        propagate(follow, dependents);
+    }
+
+    private List<List<Integer>> dependents() {
+        final var dependents = new ArrayList<List<Integer>>();
+        nonTerminals.forEach(nonTerminal -> dependents.add(new ArrayList<>()));
+        return dependents;
+    }
+
+    private static void add(List<List<Integer>> dependents, int from, int to) {
+        if (from != to) {
+            dependents.get(from).add(to);
+        }
+    }
+
+    /**
+     * 以工作表把每个集合并入所有依赖它的集合, 直到不再变化
+     */
+    private static void propagate(long[][] sets, List<List<Integer>> dependents) {
+        final var queued = new boolean[sets.length];
+        final var worklist = new ArrayDeque<Integer>();
+        for (int n = 0; n < sets.length; n++) {
+            worklist.add(n);
+            queued[n] = true;
+        }
+        while (!worklist.isEmpty()) {
+            final int n = worklist.poll();
+            queued[n] = false;
+            for (final var dependent : dependents.get(n)) {
+                if (or(sets[dependent], sets[n]) && !queued[dependent]) {
+                    worklist.add(dependent);
+                    queued[dependent] = true;
+                }
+            }
+        }
+    }
+
+    /**
+     * 将 first(body[from..]) 并入 to
+     *
+     * @return body[from..] 是否可空
+     */
+    private boolean addFirstOfSequence(long[] to, int[] body, int from) {
+        for (int i = from; i < body.length; i++) {
+            final var symbol = body[i];
+            if (isTerminal(symbol)) {
+                setBit(to, symbol);
+                return false;
+            }
+            or(to, first[symbol - terminals.size()]);
+            if (!nullable[symbol - terminals.size()]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int nonTerminalIndex(NonTerminal nonTerminal) {
+        final var id = symbolIds.get(nonTerminal);
+        if (id == null) {
+            throw new RuntimeException("Unknown non-terminal: " + nonTerminal);
+        }
+        return id - terminals.size();
+    }
+
+    private Set<TokenKind> toSet(long[] bits) {
+        final var result = new LinkedHashSet<TokenKind>();
+        for (int w = 0; w < bits.length; w++) {
+            for (var rest = bits[w]; rest != 0; rest &= rest - 1) {
+                result.add(terminals.get(w << 6 | Long.numberOfTrailingZeros(rest)));
+            }
+        }
+        return result;
+    }
+
+    static boolean setBit(long[] bits, int index) {
+        final var old = bits[index >>> 6];
+        bits[index >>> 6] = old | 1L << index;
+        return bits[index >>> 6] != old;
+    }
+
+    /**
+     * @return to 是否因此改变
+     */
+    static boolean or(long[] to, long[] from) {
+        var changed = false;
+        for (int i = 0; i < to.length; i++) {
+            final var merged = to[i] | from[i];
+            changed |= merged != to[i];
+            to[i] = merged;
+        }
+        return changed;
+    }
+}
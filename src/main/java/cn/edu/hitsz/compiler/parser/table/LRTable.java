@@ -76,6 +76,18 @@ public class LRTable {
         }
     }
 
+    List<Status> getStatuses() {
+        return statusInIndexOrder;
+    }
+
+    List<TokenKind> getTerminals() {
+        return terminals;
+    }
+
+    List<NonTerminal> getNonTerminals() {
+        return nonTerminals;
+    }
+
     LRTable(List<Status> statusInIndexOrder, List<TokenKind> terminals, List<NonTerminal> nonTerminals) {
         this.statusInIndexOrder = statusInIndexOrder;
         this.terminals = terminals;
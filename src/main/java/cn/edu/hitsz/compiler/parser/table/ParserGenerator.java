@@ -0,0 +1,249 @@
+package cn.edu.hitsz.compiler.parser.table;
+
+import cn.edu.hitsz.compiler.lexer.TokenKind;
+import cn.edu.hitsz.compiler.utils.FilePathConfig;
+import cn.edu.hitsz.compiler.utils.FileUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * 直接编码的语法分析器生成器
+ * <br>
+ * 由 LR 分析表生成 {@link cn.edu.hitsz.compiler.parser.DirectCodedParser} 的子类的 Java 源代码: 每个状态是外层 switch 的一个分支,
+ * 其中再按当前词法单元的码点 switch, 移入与规约 (连同产生式编号与产生式体长度) 直接写成代码; 每个非终结符的 GOTO 列生成为一个方法.
+ * 只规约同一条产生式的状态 (见 {@link TableOptimizer}) 不再按码点 switch, 直接规约.
+ * 生成的分析器与 {@link cn.edu.hitsz.compiler.parser.SyntaxAnalyzer} 调用完全相同的观察者回调.
+ * <br>
+ * 各状态的 ACTION 与 GOTO 表项也以数组的形式写进生成的类, 用于构造通知观察者的 {@link Status}, 与查表驱动的分析器通知的状态内容相同.
+ * 码点与产生式编号都被写进了生成的代码, 因此码点文件, 语法文件或分析表变化后需要重新生成, Gradle 的 generateParser 任务会据此自动重新生成.
+ *
+ * @author chiro
+ */
+public final class ParserGenerator {
+    public static final String DEFAULT_PACKAGE = "cn.edu.hitsz.compiler.parser.generated";
+    public static final String DEFAULT_CLASS = "GeneratedParser";
+
+    private ParserGenerator() {
+    }
+
+    /**
+     * 生成分析器的源代码
+     *
+     * @param table       LR 分析表, 可以来自 {@link TableLoader} 或 {@link TableGenerator}
+     * @param packageName 生成的类所在的包
+     * @param className   生成的类名
+     * @return Java 源代码
+     */
+    public static String generate(LRTable table, String packageName, String className) {
+        final var statuses = table.getStatuses();
+        final var terminals = table.getTerminals();
+        final var nonTerminals = table.getNonTerminals();
+        final var statusIds = new HashMap<Status, Integer>();
+        for (int id = 0; id < statuses.size(); id++) {
+            statusIds.put(statuses.get(id), id);
+        }
+        final var nonTerminalIds = new HashMap<NonTerminal, Integer>();
+        for (int n = 0; n < nonTerminals.size(); n++) {
+            nonTerminalIds.put(nonTerminals.get(n), n);
+        }
+
+        final var code = new StringBuilder();
+        code.append("package ").append(packageName).append(";\n\n")
+            .append("import cn.edu.hitsz.compiler.parser.DirectCodedParser;\n")
+            .append("import cn.edu.hitsz.compiler.symtab.SymbolTable;\n\n")
+            .append("/**\n")
+            .append(" * 由 ").append(ParserGenerator.class.getName()).append(" 从 LR 分析表生成, 不要手动修改\n")
+            .append(" */\n")
+            .append("public final class ").append(className).append(" extends DirectCodedParser {\n")
+            .append("    private static final int[] STATUS_INDICES = {")
+            .append(statuses.stream().map(s -> Integer.toString(s.index())).collect(Collectors.joining(", ")))
+            .append("};\n")
+            .append("    private static final int[][] STATUS_ACTIONS = {\n")
+            .append(statuses.stream().map(s -> "        {" + actionEntries(s, statusIds) + "},\n").collect(Collectors.joining()))
+            .append("    };\n")
+            .append("    private static final String[] NON_TERMINALS = {")
+            .append(nonTerminals.stream().map(n -> "\"" + n + "\"").collect(Collectors.joining(", ")))
+            .append("};\n")
+            .append("    private static final int[][] STATUS_GOTOS = {\n")
+            .append(statuses.stream().map(s -> "        {" + gotoEntries(s, statusIds, nonTerminalIds) + "},\n").collect(Collectors.joining()))
+            .append("    };\n\n")
+            .append("    public ").append(className).append("(SymbolTable symbolTable) {\n")
+            .append("        super(symbolTable, STATUS_INDICES, STATUS_ACTIONS, NON_TERMINALS, STATUS_GOTOS);\n")
+            .append("    }\n\n")
+            .append("    @Override\n")
+            .append("    protected void parse() {\n")
+            .append("        var state = 0;\n")
+            .append("        push(state);\n")
+            .append("        if (!advance()) {\n")
+            .append("            return;\n")
+            .append("        }\n")
+            .append("        var code = code();\n")
+            .append("        while (true) {\n")
+            .append("            switch (state) {\n");
+
+        for (int id = 0; id < statuses.size(); id++) {
+            final var status = statuses.get(id);
+            final var defaultReduction = TableOptimizer.defaultReduction(status, terminals);
+            if (defaultReduction != null) {
+                // 默认规约的状态不必查看向前看符号
+                code.append("                case ").append(id).append(" -> {\n")
+                    .append(actionCode(Action.reduce(defaultReduction), statusIds, nonTerminalIds, "                    "))
+                    .append("                }\n");
+                continue;
+            }
+            // 动作相同的码点合并为同一个分支, 保持码点在表中出现的顺序
+            final Map<String, List<Integer>> branches = new LinkedHashMap<>();
+            for (final var terminal : terminals) {
+                final var action = status.getAction(terminal);
+                if (action.getKind() != Action.ActionKind.Error) {
+                    branches.computeIfAbsent(actionCode(action, statusIds, nonTerminalIds, "                            "),
+                        k -> new ArrayList<>()).add(terminal.getCode());
+                }
+            }
+            code.append("                case ").append(id).append(" -> {\n")
+                .append("                    switch (code) {\n");
+            for (final var branch : branches.entrySet()) {
+                code.append("                        case ")
+                    .append(branch.getValue().stream().map(Object::toString).collect(Collectors.joining(", ")))
+                    .append(" -> {\n")
+                    .append(branch.getKey())
+                    .append("                        }\n");
+            }
+            code.append("                        default -> {\n")
+                .append("                            return;\n")
+                .append("                        }\n")
+                .append("                    }\n")
+                .append("                }\n");
+        }
+        code.append("                default -> {\n")
+            .append("                    return;\n")
+            .append("                }\n")
+            .append("            }\n")
+            .append("        }\n")
+            .append("    }\n");
+
+        for (int n = 0; n < nonTerminals.size(); n++) {
+            final var nonTerminal = nonTerminals.get(n);
+            code.append("\n")
+                .append("    /**\n")
+                .append("     * GOTO ").append(nonTerminal).append("\n")
+                .append("     */\n")
+                .append("    private static int goTo").append(n).append("(int state) {\n")
+                .append("        return switch (state) {\n");
+            for (int id = 0; id < statuses.size(); id++) {
+                final var target = statuses.get(id).getGoto(nonTerminal);
+                if (!target.isError()) {
+                    code.append("            case ").append(id).append(" -> ").append(statusIds.get(target)).append(";\n");
+                }
+            }
+            code.append("            default -> -1;\n")
+                .append("        };\n")
+                .append("    }\n");
+        }
+        code.append("}\n");
+        return code.toString();
+    }
+
+    /**
+     * @return 状态的 ACTION 表项, 每项为码点, 动作类型与操作数, 见 {@link cn.edu.hitsz.compiler.parser.DirectCodedParser}
+     */
+    private static String actionEntries(Status status, Map<Status, Integer> statusIds) {
+        final var entries = new ArrayList<String>();
+        for (final var entry : status.action().entrySet()) {
+            final var action = entry.getValue();
+            final var operand = switch (action.getKind()) {
+                case Shift -> statusIds.get(action.getStatus());
+                case Reduce -> action.getProduction().index();
+                case Accept -> 0;
+                case Error -> null;
+            };
+            if (operand != null) {
+                entries.add("%d, %d, %d".formatted(entry.getKey().getCode(), action.getKind().ordinal(), operand));
+            }
+        }
+        return String.join(", ", entries);
+    }
+
+    /**
+     * @return 状态的 GOTO 表项, 每项为非终结符在 NON_TERMINALS 中的下标与目标状态编号
+     */
+    private static String gotoEntries(Status status, Map<Status, Integer> statusIds, Map<NonTerminal, Integer> nonTerminalIds) {
+        final var entries = new ArrayList<String>();
+        for (final var entry : status.goto_().entrySet()) {
+            if (!entry.getValue().isError()) {
+                entries.add("%d, %d".formatted(nonTerminalIds.get(entry.getKey()), statusIds.get(entry.getValue())));
+            }
+        }
+        return String.join(", ", entries);
+    }
+
+    /**
+     * @return 一个动作对应的语句, 每行以 indent 缩进
+     */
+    private static String actionCode(Action action, Map<Status, Integer> statusIds, Map<NonTerminal, Integer> nonTerminalIds,
+                                     String indent) {
+        return switch (action.getKind()) {
+            case Shift -> {
+                final var target = statusIds.get(action.getStatus());
+                yield indent + "shift(" + target + ");\n"
+                    + indent + "state = " + target + ";\n"
+                    + indent + "if (!advance()) {\n"
+                    + indent + "    return;\n"
+                    + indent + "}\n"
+                    + indent + "code = code();\n";
+            }
+            case Reduce -> {
+                final var production = action.getProduction();
+                final var head = nonTerminalIds.get(production.head());
+                if (head == null) {
+                    throw new RuntimeException("Reduce to %s without GOTO column".formatted(production.head()));
+                }
+                yield indent + "// " + production + "\n"
+                    + indent + "state = goTo" + head + "(reduce(" + production.index() + ", " + production.body().size() + "));\n"
+                    + indent + "if (state < 0) {\n"
+                    + indent + "    return;\n"
+                    + indent + "}\n"
+                    + indent + "push(state);\n";
+            }
+            case Accept -> indent + "accept();\n"
+                + indent + "return;\n";
+            case Error -> throw new RuntimeException("Error action has no code");
+        };
+    }
+
+    /**
+     * 生成分析器并写入源代码目录
+     *
+     * @param args 源代码根目录, 以及可选的分析表来源: csv (默认, 读取 LR1_table.csv) 或 grammar (由 grammar.txt 构造),
+     *             后者还可以再指定构造方法 slr, lalr (默认) 或 lr1
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            throw new RuntimeException("Usage: ParserGenerator <source dir> [csv|grammar [slr|lalr|lr1]]");
+        }
+        TokenKind.loadTokenKinds();
+        final var source = args.length > 1 ? args[1] : "csv";
+        final var table = switch (source) {
+            case "csv" -> new TableLoader().load(FilePathConfig.LR1_TABLE_PATH);
+            case "grammar" -> {
+                final var mode = args.length > 2 ? TableGenerator.Mode.valueOf(args[2].toUpperCase()) : TableGenerator.Mode.LALR;
+                final var generator = new TableGenerator(mode);
+                generator.run();
+                yield generator.getTable();
+            }
+            default -> throw new RuntimeException("Unknown table source: " + source);
+        };
+        final var directory = Paths.get(args[0], DEFAULT_PACKAGE.split("\\."));
+        Files.createDirectories(directory);
+        FileUtils.writeFile(directory.resolve(DEFAULT_CLASS + ".java").toString(),
+            generate(TableOptimizer.optimize(table), DEFAULT_PACKAGE, DEFAULT_CLASS));
+    }
+}
@@ -1,54 +1,112 @@
 package cn.edu.hitsz.compiler.parser.table;
 
+import cn.edu.hitsz.compiler.RunConfigs;
 import cn.edu.hitsz.compiler.lexer.TokenKind;
 import cn.edu.hitsz.compiler.utils.FileUtils;
 
 import java.util.*;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
 /**
  * 根据语法文件构造 LR 分析表.
  * <br>
  * 此文件为非必需的框架文件, 用于提升整个编译器处理流程的统一性以及为学生提供 SLR(1) 分析表生成程序的参考. 正常情况下你不需要了解该文件.
+ * <br>
+ * 除 SLR(1) 外还支持 LALR(1) 与规范 LR(1) 两种构造方法, 见 {@link Mode}. 文法符号的稠密编号与可空性, first, follow 集合均取自 {@link GrammarAnalysis},
+ * 一个 LR(0) 项目被压缩成一个 int (产生式序号与点的位置), LR(1) 项目在此之上带一个向前看符号, 合成一个 long;
+ * 项目集以排序后的核为键在哈希表中去重. LALR(1) 不构造 LR(1) 项目集族, 而是在 LR(0) 自动机上按 DeRemer 与 Pennello 的方法
+ * 由 reads, includes 与 lookback 三个关系传播向前看符号.
  */
 public class TableGenerator {
+    /**
+     * 分析表的构造方法
+     */
+    public enum Mode {
+        /**
+         * LR(0) 自动机, 按 FOLLOW 集合规约
+         */
+        SLR,
+        /**
+         * LR(0) 自动机, 按 DeRemer-Pennello 方法计算的 LALR(1) 向前看符号规约
+         */
+        LALR,
+        /**
+         * 规范 LR(1) 自动机, 状态数可能远多于前两者
+         */
+        LR1
+    }
+
     public TableGenerator() {
-        this.productions = GrammarInfo.getProductionsInOrder();
-        this.terminals = new HashSet<>(TokenKind.allAllowedTokenKinds().values());
-        this.nonTerminals = new HashSet<>(GrammarInfo.getNonTerminals().values());
+        this(Mode.SLR);
+    }
+
+    public TableGenerator(Mode mode) {
+        this(GrammarInfo.getProductionsInOrder(), mode);
+    }
+
+    /**
+     * @param productions 产生式, 第一条须为增广文法的起始产生式
+     * @param mode        构造方法
+     */
+    public TableGenerator(List<Production> productions, Mode mode) {
+        this.mode = mode;
+        this.productions = productions;
 
         if (productions.get(0).body().size() != 1) {
             throw new RuntimeException("The first production in grammar file must like S -> S'");
         }
+
+        this.analysis = new GrammarAnalysis(productions);
+        this.terminals = analysis.getTerminals();
+        this.nonTerminals = analysis.getNonTerminals();
+        this.eofId = analysis.symbolId(TokenKind.eof());
+        this.symbolCount = analysis.symbolCount();
+        this.words = analysis.words();
+        this.heads = analysis.heads();
+        this.bodies = analysis.bodies();
+        for (final var production : productions) {
+            if (production.body().size() > DOT_MASK) {
+                throw new RuntimeException("Production body too long: " + production);
+            }
+        }
     }
 
     /**
      * 主体方法
      */
     public void run() {
-        calcFirst();
-        calcFollow();
-        constructDFA();
-        dumpItems();
+        constructAutomaton();
+        if (mode == Mode.LALR) {
+            calcLookaheads();
+        }
         genTable();
+        if (RunConfigs.DEBUG) {
+            dumpItems();
+            analysis.dump("data/out/first_follow.txt");
+        }
     }
 
     /**
-     * 将该分析表生成的 LR(0) 规范集族打印到某个文件之中, 用于调试
+     * 将该分析表生成的规范项目集族打印到某个文件之中, 用于调试
      */
     public void dumpItems() {
         final var lines = new ArrayList<String>();
-        for (final var status : allStatusInIndexOrder) {
-            lines.add("%d: ".formatted(status.index()));
-            for (final var item : including.get(status)) {
-                lines.add("    " + item);
+        for (int state = 0; state < closures.size(); state++) {
+            lines.add("%d: ".formatted(state));
+            for (final var item : closures.get(state)) {
+                lines.add("    " + itemToString(item));
             }
         }
 
         FileUtils.writeLines("data/out/items.txt", lines);
     }
 
+    /**
+     * @return 构造分析表所用的文法分析结果
+     */
+    public GrammarAnalysis getAnalysis() {
+        return analysis;
+    }
+
     /**
      * @return 构造出的 LR 表
      */
@@ -56,355 +114,485 @@ public class TableGenerator {
         return new LRTable(allStatusInIndexOrder, new ArrayList<>(terminals), new ArrayList<>(nonTerminals));
     }
 
+    private final Mode mode;
     private final List<Production> productions;
-    private final Set<TokenKind> terminals;
-    private final Set<NonTerminal> nonTerminals;
+    private final GrammarAnalysis analysis;
+    private final List<TokenKind> terminals;
+    private final List<NonTerminal> nonTerminals;
 
-    private final Map<Term, Set<TokenKind>> first = new HashMap<>();
-    private final Map<Term, Set<TokenKind>> follow = new HashMap<>();
+    //==================== 项目的压缩表示 ==============================//
 
-    private final Set<Term> visited = new HashSet<>();
+    /**
+     * 一个 LR(0) 项目 (以下称为核心) 为 {@code 产生式序号 << DOT_BITS | 点的位置}, 其中产生式序号为其在产生式列表中的下标
+     * <br>
+     * 对于 A -> B . C, 点的位置为 1 (其下一个项 C 的索引) <br>
+     * 对于 A -> B C ., 点的位置为 2 (其产生式体的项数量) <br>
+     * 项目集中的项目为 {@code 核心 << 32 | 向前看符号}, 只有 LR(1) 模式使用向前看符号, 其余模式下恒为 0.
+     */
+    private static final int DOT_BITS = 8;
+    private static final int DOT_MASK = (1 << DOT_BITS) - 1;
 
+    private final int eofId;
+    private final int symbolCount;
     /**
-     * 计算所有符号的 first 集合 <br>
-     * 终结符的 first 就是它自身, 非终结符的 first 则递归计算
+     * 终结符位集所需的 long 个数
      */
-    private void calcFirst() {
-        for (final var terminal : terminals) {
-            first.put(terminal, Set.of(terminal));
-        }
+    private final int words;
+    /**
+     * 以产生式序号为下标, 产生式头部与产生式体的符号编号, 见 {@link GrammarAnalysis}
+     */
+    private final int[] heads;
+    private final int[][] bodies;
 
-        for (final var nonTerminal : nonTerminals) {
-            visited.clear();
-            calcFirst(nonTerminal);
-        }
+    private static int core(int production, int dot) {
+        return production << DOT_BITS | dot;
+    }
 
+    private static long item(int core, int lookahead) {
+        return (long) core << 32 | lookahead;
     }
 
-    /**
-     * 递归计算特定非终结符的 first
-     *
-     * @param nonTerminal 非终结符
-     * @return 其 first 集合
-     */
-    private Set<TokenKind> calcFirst(Term nonTerminal) {
-        // 如果已经被计算, 则直接返回缓存的结果
-        if (first.containsKey(nonTerminal)) {
-            return first.get(nonTerminal);
-        }
+    private static int coreOf(long item) {
+        return (int) (item >>> 32);
+    }
 
-        final var result = new LinkedHashSet<TokenKind>();
-        for (final var production : productions) {
-            if (nonTerminal == production.head()) {
-                // 在文法中寻找以该非终结符为头的产生式
-                final var firstSymbol = production.body().get(0);
-                // 记录已经在栈中的递归过的非终结符, 防止直接或间接的左递归导致程序死循环
-                if (!visited.contains(firstSymbol)) {
-                    // 随后递归查找该产生式体的第一个文法符号的 first 集合
-                    // 它的 first 集合也是该非终结符的 first 集合
-                    visited.add(firstSymbol);
-                    result.addAll(calcFirst(firstSymbol));
-                }
-            }
-        }
+    private static int lookaheadOf(long item) {
+        return (int) item;
+    }
 
-        first.put(nonTerminal, result);
-        return result;
+    private static int productionOf(int core) {
+        return core >>> DOT_BITS;
     }
 
+    private static int dotOf(int core) {
+        return core & DOT_MASK;
+    }
+
+    private boolean isTerminal(int symbol) {
+        return symbol < terminals.size();
+    }
+
+    //==================== 项目集族 ==============================//
 
     /**
-     * 计算所有非终结符的 follow 集合
+     * 排序后的核, 作为项目集的键
      */
-    private void calcFollow() {
-        for (final var nonTerminal : nonTerminals) {
-            visited.clear();
-            calcFollow(nonTerminal);
+    private record Kernel(long[] items) {
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Kernel kernel && Arrays.equals(kernel.items, items);
         }
 
-        // 对于找完所有产生式了都还没没有 follow 的非终结符
-        // 它必然是一个没有被使用的非终结符, 这意味着它的 follow 就是 EOF
-        nonTerminals.stream()
-            .map(follow::get).filter(Set::isEmpty)
-            .forEach(set -> set.add(TokenKind.eof()));
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(items);
+        }
     }
 
+    private final Map<Kernel, Integer> belongTo = new HashMap<>();
+    private final List<long[]> kernels = new ArrayList<>();
+    private final List<long[]> closures = new ArrayList<>();
     /**
-     * 递归计算给定非终结符的 follow 集合
-     *
-     * @param nonTerminal 给定的非终止符
-     * @return 其 follow 集合
+     * 以状态编号为下标, 再以符号编号为下标的转移函数 GO(I, X), -1 表示没有转移
      */
-    private Set<TokenKind> calcFollow(NonTerminal nonTerminal) {
-        // 与 first 类似, 先查找缓存
-        if (follow.containsKey(nonTerminal)) {
-            return follow.get(nonTerminal);
-        }
-
-        final var result = new LinkedHashSet<TokenKind>();
-        for (final var production : productions) {
-            final var body = production.body();
+    private final List<int[]> transitions = new ArrayList<>();
+    private final List<Status> allStatusInIndexOrder = new ArrayList<>();
 
-            // 对该非终结符在每条产生式体中的可能出现, 我们都要将紧跟在该出现后面的项的 first 加入其 follow 集合
-            // 我们直接枚举每条产生式体的每个项
-            for (int i = 0; i < body.size() - 1; i++) {
-                // 如果发现目前的 curr 的话, 后面跟着的符号的 first 就是它的 follow
-                final var symbol = body.get(i);
-                final var next = body.get(i + 1);
+    /**
+     * 以 BFS 构造 LR(0) 或 LR(1) 规范项目集族, 状态编号即其被发现的顺序
+     */
+    private void constructAutomaton() {
+        final var withLookahead = mode == Mode.LR1;
+        // 闭包中加入的新项目的点总在开头, 因此只需以 (产生式, 向前看符号) 去重
+        final var stamps = new int[productions.size() * (withLookahead ? terminals.size() : 1)];
+        final var buckets = new LongList[symbolCount];
+        for (int symbol = 0; symbol < symbolCount; symbol++) {
+            buckets[symbol] = new LongList();
+        }
 
-                if (symbol.equals(nonTerminal)) {
-                    result.addAll(first.get(next));
+        stateOf(new long[]{item(core(0, 0), withLookahead ? eofId : 0)});
+        for (int state = 0; state < kernels.size(); state++) {
+            final var closure = constructClosure(kernels.get(state), stamps, state + 1);
+            closures.add(closure);
+
+            // 按点后面的符号把后继项分组, 每一组就是相应后继项目集的核
+            for (final var item : closure) {
+                final var core = coreOf(item);
+                final var body = bodies[productionOf(core)];
+                final var dot = dotOf(core);
+                if (dot < body.length) {
+                    buckets[body[dot]].add(item(core + 1, lookaheadOf(item)));
                 }
             }
 
-            // 如果该非终结符出现在产生式的末尾, 那么该产生式的头的 follow 集合也要加入其 follow 集合中
-            final var lastInBody = body.get(body.size() - 1);
-            if (lastInBody.equals(nonTerminal)) {
-                final var head = production.head();
-                if (visited.contains(head)) {
-                    // 如果该产生式头已经在栈中了, 那么意味着这个非终结符有可能一直展开自己
-                    // 这时候 EOF 也可能是它的 Follow
-                    result.add(TokenKind.eof());
+            final var targets = new int[symbolCount];
+            for (int symbol = 0; symbol < symbolCount; symbol++) {
+                final var bucket = buckets[symbol];
+                if (bucket.size() == 0) {
+                    targets[symbol] = -1;
                 } else {
-                    // 否则直接递归查找
-                    visited.add(head);
-                    result.addAll(calcFollow(head));
+                    final var kernel = bucket.toArray();
+                    Arrays.sort(kernel);
+                    targets[symbol] = stateOf(kernel);
+                    bucket.clear();
                 }
             }
+            transitions.add(targets);
         }
+    }
 
-        follow.put(nonTerminal, result);
-        return result;
+    /**
+     * @return 以该核为核的项目集的状态编号, 若尚未出现则新建
+     */
+    private int stateOf(long[] kernel) {
+        return belongTo.computeIfAbsent(new Kernel(kernel), key -> {
+            kernels.add(kernel);
+            return kernels.size() - 1;
+        });
     }
 
     /**
-     * 表示一个项目
-     * <br>
-     * 对于 A -> B . C, 其 production 为 A -> B C, dot 为 1 (其下一个项 C 的索引) <br>
-     * 对于 A -> B C ., 其 production 为 A -> B C, dot 为 2 (其产生式体的项数量) <br>
+     * 构造核的闭包, 相当于理论课中的 CLOSURE(I) 函数
      *
-     * @param production 产生式
-     * @param dot        目前解析到的位置
+     * @param kernel     核
+     * @param stamps     以 (产生式, 向前看符号) 为下标的去重标记, 在多次调用间复用
+     * @param generation 本次调用的标记值, 每次调用须不同
+     * @return 闭包, 核中的项目在前
      */
-    private record Item(Production production, int dot) {
-        /**
-         * @return 点的位置是否在产生式的末尾
-         */
-        public boolean isDotAtEnd() {
-            return production.body().size() == dot;
-        }
-
-        /**
-         * @return 获得点后面的文法符号; 若点的位置在末尾则返回空
-         */
-        public Optional<Term> getAfterDot() {
-            if (isDotAtEnd()) {
-                return Optional.empty();
-            } else {
-                return Optional.of(production.body().get(dot));
+    private long[] constructClosure(long[] kernel, int[] stamps, int generation) {
+        final var withLookahead = mode == Mode.LR1;
+        final var width = withLookahead ? terminals.size() : 1;
+        final var result = new LongList();
+        for (final var item : kernel) {
+            result.add(item);
+            final var core = coreOf(item);
+            if (dotOf(core) == 0) {
+                stamps[productionOf(core) * width + lookaheadOf(item)] = generation;
             }
         }
 
-        /**
-         * @return 获得当前项目的后继项; 若点的位置在末尾则返回空
-         */
-        public Optional<Item> getNextItem() {
-            if (isDotAtEnd()) {
-                return Optional.empty();
-            } else {
-                return Optional.of(new Item(production, dot + 1));
+        // result 本身就是 BFS 的队列
+        for (int i = 0; i < result.size(); i++) {
+            final var item = result.get(i);
+            final var core = coreOf(item);
+            final var body = bodies[productionOf(core)];
+            final var dot = dotOf(core);
+            if (dot == body.length || isTerminal(body[dot])) {
+                continue;
             }
-        }
-
-        @Override
-        public String toString() {
-            final var builder = new StringBuilder();
 
-            builder.append(production.head());
-            builder.append(" -> ");
-
-            final var body = production.body();
-            for (int i = 0; i < body.size(); i++) {
-                if (i == dot) {
-                    builder.append(" .");
+            final var expansions = analysis.productionsOf(body[dot] - terminals.size());
+            if (withLookahead) {
+                // [A -> alpha . B beta, a] 展开出的 [B -> . gamma, b] 中, b 取遍 FIRST(beta a)
+                final var lookaheads = analysis.firstOfSequence(body, dot + 1, lookaheadOf(item));
+                for (int w = 0; w < words; w++) {
+                    for (var bits = lookaheads[w]; bits != 0; bits &= bits - 1) {
+                        final var lookahead = w << 6 | Long.numberOfTrailingZeros(bits);
+                        for (final var p : expansions) {
+                            if (stamps[p * width + lookahead] != generation) {
+                                stamps[p * width + lookahead] = generation;
+                                result.add(item(core(p, 0), lookahead));
+                            }
+                        }
+                    }
+                }
+            } else {
+                for (final var p : expansions) {
+                    if (stamps[p] != generation) {
+                        stamps[p] = generation;
+                        result.add(item(core(p, 0), 0));
+                    }
                 }
-                builder.append(" ").append(body.get(i));
-            }
-
-            if (dot == body.size()) {
-                builder.append(" .");
             }
-
-            return builder.toString();
         }
+
+        return result.toArray();
     }
 
-    private final Map<Set<Item>, Status> belongTo = new HashMap<>();
-    private final Map<Status, Set<Item>> including = new HashMap<>();
-    private final List<Status> allStatusInIndexOrder = new ArrayList<>();
+    //==================== LALR(1) 向前看符号 ==============================//
 
     /**
-     * 构造出所有状态并维护状态与项集之间的对应关系
+     * LALR(1) 模式下, 以 {@code 状态 << 32 | 产生式序号} 为键的完成项目的向前看符号位集
      */
-    private void constructDFA() {
-        final var argumentProduction = productions.get(0);
-        final var initItem = new Item(argumentProduction, 0);
-        final var collections = constructCanonicalLRCollection(initItem);
+    private final Map<Long, long[]> lookaheads = new HashMap<>();
 
-        for (int idx = 0; idx < collections.size(); idx++) {
-            final var status = Status.create(idx);
-            allStatusInIndexOrder.add(status);
+    /**
+     * 按 DeRemer 与 Pennello 的方法计算 LALR(1) 向前看符号
+     * <br>
+     * 对每个非终结符转移 (p, A): <br>
+     * DR(p, A) 为 GO(p, A) 上可以移入的终结符; (p, A) reads (r, C) 当且仅当 r = GO(p, A) 且 C 可空;
+     * Read 为 DR 沿 reads 的传递闭包. <br>
+     * (p, A) includes (p', B) 当且仅当 B -> beta A gamma, gamma 可空且 p' 沿 beta 到达 p;
+     * Follow 为 Read 沿 includes 的传递闭包. <br>
+     * (q, A -> omega) lookback (p, A) 当且仅当 p 沿 omega 到达 q, 完成项目的向前看符号就是它 lookback 的所有转移的 Follow 之并.
+     */
+    private void calcLookaheads() {
+        final var base = terminals.size();
+        // 为所有非终结符转移编号
+        final var transitionIds = new int[kernels.size()][nonTerminals.size()];
+        final var from = new IntList();
+        final var on = new IntList();
+        for (int state = 0; state < kernels.size(); state++) {
+            final var targets = transitions.get(state);
+            for (int n = 0; n < nonTerminals.size(); n++) {
+                if (targets[base + n] >= 0) {
+                    transitionIds[state][n] = from.size();
+                    from.add(state);
+                    on.add(base + n);
+                } else {
+                    transitionIds[state][n] = -1;
+                }
+            }
+        }
+        // 增广文法的起始符号在初始状态上的 (虚拟) 转移, 其后只能是 EOF
+        final var start = heads[0] - base;
+        if (transitionIds[0][start] < 0) {
+            transitionIds[0][start] = from.size();
+            from.add(0);
+            on.add(heads[0]);
+        }
 
-            final var items = collections.get(idx);
-            including.put(status, items);
-            belongTo.put(items, status);
+        final var count = from.size();
+        final var sets = new long[count][words];
+        GrammarAnalysis.setBit(sets[transitionIds[0][start]], eofId);
+        final var reads = new IntList[count];
+        for (int x = 0; x < count; x++) {
+            final var target = transitions.get(from.get(x))[on.get(x)];
+            if (target < 0) {
+                continue;
+            }
+            final var targets = transitions.get(target);
+            for (int t = 0; t < base; t++) {
+                if (targets[t] >= 0) {
+                    GrammarAnalysis.setBit(sets[x], t);
+                }
+            }
+            for (int n = 0; n < nonTerminals.size(); n++) {
+                if (analysis.nullable(n) && transitionIds[target][n] >= 0) {
+                    add(reads, x, transitionIds[target][n]);
+                }
+            }
         }
-    }
+        digraph(reads, sets);
+
+        final var includes = new IntList[count];
+        final var lookback = new HashMap<Long, IntList>();
+        for (int y = 0; y < count; y++) {
+            for (final var p : analysis.productionsOf(on.get(y) - base)) {
+                final var body = bodies[p];
+                var state = from.get(y);
+                for (int i = 0; i < body.length; i++) {
+                    if (!isTerminal(body[i]) && analysis.isNullable(body, i + 1)) {
+                        add(includes, transitionIds[state][body[i] - base], y);
+                    }
+                    state = transitions.get(state)[body[i]];
+                }
+                lookback.computeIfAbsent((long) state << 32 | p, key -> new IntList()).add(y);
+            }
+        }
+        digraph(includes, sets);
 
-    /**
-     * @param head 头部符号
-     * @return 返回一个流, 其中的元素都是以 head 为头的产生式
-     */
-    private Stream<Production> getProductionsByHead(Term head) {
-        return productions.stream().filter(production -> production.head().equals(head));
+        lookback.forEach((key, ys) -> {
+            final var result = new long[words];
+            for (int i = 0; i < ys.size(); i++) {
+                GrammarAnalysis.or(result, sets[ys.get(i)]);
+            }
+            lookaheads.put(key, result);
+        });
     }
 
-    /**
-     * 构造项集 {@code sourceItem} 的闭包, 相当于理论课中的 CLOSURE(I) 函数
-     *
-     * @param sourceItem 项集 I
-     * @return 闭包
-     */
-    private Set<Item> constructClosure(Set<Item> sourceItem) {
-        // 采用 BFS 的方法来避免每次都检测集合的更改
-        final var result = new LinkedHashSet<>(sourceItem);
-        // 已经找到, 但是还未完全探索其能展开的项的项
-        // 类似于 BFS 的队列或者是 mark-and-sweep GC 算法里的灰色列表
-        final var unexpanded = new ArrayDeque<>(sourceItem);
-
-        while (!unexpanded.isEmpty()) {
-            final var top = unexpanded.pollFirst();
-            // 获得当前项中点后面的符号
-            top.getAfterDot().ifPresent(afterDot ->
-                // 随后查找以该符号作为头部的产生式
-                getProductionsByHead(afterDot)
-                    // 构造点在对应产生式开头的新项
-                    .map(production -> new Item(production, 0))
-                    // 对于不在 result 中的新项
-                    .filter(item -> !result.contains(item))
-                    // 加入队列并加入结果中
-                    .peek(unexpanded::add)
-                    .forEach(result::add));
-        }
-
-        return result;
+    private static void add(IntList[] relation, int x, int y) {
+        if (relation[x] == null) {
+            relation[x] = new IntList();
+        }
+        relation[x].add(y);
     }
 
     /**
-     * 相当于理论课中的 GO(I, X) 函数 (转移函数)
-     *
-     * @param items 当前项集 I
-     * @param term  文法符号 X
-     * @return I 关于 X 的后继项目集
+     * DeRemer 与 Pennello 的 Digraph 算法: 原地把 sets[x] 扩充为沿 relation 可达的所有 sets[y] 之并,
+     * 同一强连通分量中的结点得到相同的集合
      */
-    private Set<Item> constructGoto(Set<Item> items, Term term) {
-        final var kernelForGoto = items.stream()
-            // 先筛选出 I 中所有点后面是 term 的项
-            .filter(item -> item.getAfterDot().map(term::equals).orElse(false))
-            // 然后分别求出每一个项的后继项
-            // 这个项集就是后继项目集的核
-            .map(Item::getNextItem).flatMap(Optional::stream)
-            .collect(Collectors.toSet());
-
-        // 随后从后继项目集的核中构造闭包即可得到后继项目集
-        return constructClosure(kernelForGoto);
+    private static void digraph(IntList[] relation, long[][] sets) {
+        final var depth = new int[sets.length];
+        final var stack = new IntList();
+        for (int x = 0; x < sets.length; x++) {
+            if (depth[x] == 0) {
+                traverse(x, relation, sets, depth, stack);
+            }
+        }
     }
 
-    /**
-     * 构造 LR(0) 规范项目集族
-     *
-     * @param initItem 起始项目 S -> . S'
-     * @return 规范项目集族
-     */
-    private List<Set<Item>> constructCanonicalLRCollection(Item initItem) {
-        // 先收集所有的文法符号备用
-        final var terms = new LinkedHashSet<Term>();
-        terms.addAll(nonTerminals);
-        terms.addAll(terminals);
-
-        // 构造初始项目集族
-        final var initClosure = constructClosure(Set.of(initItem));
-
-        // 同样以 BFS 形式搜索
-        final var result = new LinkedHashSet<>(Set.of(initClosure));
-        final var unexpanded = new ArrayDeque<>(Set.of(initClosure));
-
-        while (!unexpanded.isEmpty()) {
-            final var items = unexpanded.pollFirst();
-
-            // 对于每个未被探索的集族
-            for (final var term : terms) {
-                // 尝试对每一个文法符号都求一个后继项目集
-                final var to = constructGoto(items, term);
-                // 如果还没被加入到 result 中
-                if (!to.isEmpty() && !result.contains(to)) {
-                    // 就加入 result 和待探索列表中
-                    result.add(to);
-                    unexpanded.addLast(to);
+    private static void traverse(int x, IntList[] relation, long[][] sets, int[] depth, IntList stack) {
+        stack.add(x);
+        final var d = stack.size();
+        depth[x] = d;
+        if (relation[x] != null) {
+            for (int i = 0; i < relation[x].size(); i++) {
+                final var y = relation[x].get(i);
+                if (depth[y] == 0) {
+                    traverse(y, relation, sets, depth, stack);
                 }
+                depth[x] = Math.min(depth[x], depth[y]);
+                GrammarAnalysis.or(sets[x], sets[y]);
+            }
+        }
+        if (depth[x] == d) {
+            while (true) {
+                final var top = stack.pop();
+                depth[top] = Integer.MAX_VALUE;
+                if (top == x) {
+                    break;
+                }
+                System.arraycopy(sets[x], 0, sets[top], 0, sets[x].length);
             }
         }
-
-        return new ArrayList<>(result);
     }
 
+    //==================== 填表 ==============================//
+
     /**
      * 构造 LR 分析表 (填充各个 status 中的 action 与 goto)
      */
     private void genTable() {
-        // 依索引顺序对每个状态的每个项目
-        for (final var status : allStatusInIndexOrder) {
-            for (final var item : including.get(status)) {
-                final var afterDotOpt = item.getAfterDot();
-
-                // 根据项目的点的位置和点后面跟着的文法符号进行分类
-                if (afterDotOpt.isEmpty()) {
-                    final var argumentProduction = productions.get(0);
-                    if (item.production().equals(argumentProduction)) {
-                        // S -> S' .
-                        // 如果项目代表起始文法的末尾, 那么再遇到 EOF 就 accept 了
-                        status.setAction(TokenKind.eof(), Action.accept());
-                    } else {
-                        // A -> alpha .
-                        // 如果项目代表某个产生式的末尾, 那么再遇到对于任何位于 follow(A) 内的文法符号都应该规约 A
-                        final var production = item.production();
-                        final var head = production.head();
-                        for (final var a : follow.get(head)) {
-                            status.setAction(a, Action.reduce(production));
-                        }
-                    }
+        for (int state = 0; state < kernels.size(); state++) {
+            allStatusInIndexOrder.add(Status.create(state));
+        }
+
+        for (int state = 0; state < kernels.size(); state++) {
+            final var status = allStatusInIndexOrder.get(state);
 
+            // A -> alpha . a beta 移入终结符, A -> alpha . B beta 转移到 GO(I, B)
+            final var targets = transitions.get(state);
+            for (int symbol = 0; symbol < symbolCount; symbol++) {
+                if (targets[symbol] < 0) {
+                    continue;
+                }
+                final var next = allStatusInIndexOrder.get(targets[symbol]);
+                if (isTerminal(symbol)) {
+                    status.setAction(terminals.get(symbol), Action.shift(next));
                 } else {
-                    final var symbol = afterDotOpt.get();
-                    final var next = belongTo.get(constructGoto(including.get(status), symbol));
-
-                    if (symbol instanceof TokenKind tokenKind) {
-                        // A -> alpha . a beta
-                        // 如果项目代表某个产生式的中间, 并且接着一个终结符的情况, 我们就移入该终结符
-                        status.setAction(tokenKind, Action.shift(next));
-                    } else if (symbol instanceof NonTerminal nonTerminal) {
-                        // A -> alpha . B beta
-                        // 如果项目代表某个产生式的中间, 并且接着一个非终结符的情况,
-                        // 我们就转移到 B 解析之后的状态中去 (即 GO(I, B) 对应的状态)
-                        status.setGoto(nonTerminal, next);
-                    } else {
-                        throw new RuntimeException("Unknown type of Term");
-                    }
+                    status.setGoto(nonTerminals.get(symbol - terminals.size()), next);
                 }
             }
+
+            for (final var item : closures.get(state)) {
+                final var core = coreOf(item);
+                final var p = productionOf(core);
+                if (dotOf(core) != bodies[p].length) {
+                    continue;
+                }
+                if (p == 0) {
+                    // S -> S' .
+                    // 如果项目代表起始文法的末尾, 那么再遇到 EOF 就 accept 了
+                    status.setAction(TokenKind.eof(), Action.accept());
+                    continue;
+                }
+
+                // A -> alpha .
+                // 遇到向前看符号时规约 A, 三种构造方法的区别仅在于向前看符号的来源
+                final var production = productions.get(p);
+                final var reduce = Action.reduce(production);
+                switch (mode) {
+                    case SLR -> reduceOn(status, analysis.followBits(heads[p] - terminals.size()), reduce);
+                    case LALR -> reduceOn(status, lookaheads.get((long) state << 32 | p), reduce);
+                    case LR1 -> status.setAction(terminals.get(lookaheadOf(item)), reduce);
+                }
+            }
+        }
+    }
+
+    private void reduceOn(Status status, long[] lookaheads, Action reduce) {
+        for (int w = 0; w < lookaheads.length; w++) {
+            for (var rest = lookaheads[w]; rest != 0; rest &= rest - 1) {
+                status.setAction(terminals.get(w << 6 | Long.numberOfTrailingZeros(rest)), reduce);
+            }
         }
     }
 
     // 我们在 Status.setAction/setGoto 中检查规约-规约冲突与移入-规约冲突
     // 如果有冲突, 它们会抛出 RuntimeException
+
+    private String itemToString(long item) {
+        final var core = coreOf(item);
+        final var production = productions.get(productionOf(core));
+        final var dot = dotOf(core);
+        final var builder = new StringBuilder();
+
+        builder.append(production.head());
+        builder.append(" -> ");
+
+        final var body = production.body();
+        for (int i = 0; i < body.size(); i++) {
+            if (i == dot) {
+                builder.append(" .");
+            }
+            builder.append(" ").append(body.get(i));
+        }
+
+        if (dot == body.size()) {
+            builder.append(" .");
+        }
+
+        if (mode == Mode.LR1) {
+            builder.append(", ").append(terminals.get(lookaheadOf(item)));
+        }
+
+        return builder.toString();
+    }
+
+    private static final class IntList {
+        private int[] data = new int[8];
+        private int size = 0;
+
+        void add(int value) {
+            if (size == data.length) {
+                data = Arrays.copyOf(data, size * 2);
+            }
+            data[size++] = value;
+        }
+
+        int get(int index) {
+            return data[index];
+        }
+
+        int pop() {
+            return data[--size];
+        }
+
+        int size() {
+            return size;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(data, size);
+        }
+    }
+
+    private static final class LongList {
+        private long[] data = new long[8];
+        private int size = 0;
+
+        void add(long value) {
+            if (size == data.length) {
+                data = Arrays.copyOf(data, size * 2);
+            }
+            data[size++] = value;
+        }
+
+        long get(int index) {
+            return data[index];
+        }
+
+        int size() {
+            return size;
+        }
+
+        void clear() {
+            size = 0;
+        }
+
+        long[] toArray() {
+            return Arrays.copyOf(data, size);
+        }
+    }
 }
@@ -0,0 +1,159 @@
+package cn.edu.hitsz.compiler.parser.table;
+
+import cn.edu.hitsz.compiler.lexer.TokenKind;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * LR 分析表的后处理
+ * <br>
+ * 规范 LR(1) 分析表中有大量只能规约同一条产生式的状态, 它们只是向前看符号不同. 把这样的状态看作带有默认规约的状态
+ * (不论向前看符号是什么都规约), 再按 DFA 最小化的方式划分等价类: 初始时按每一行的动作类型与规约的产生式划分,
+ * 之后不断以移入与 GOTO 的目标所在的类细分, 直到稳定. 同一类中的状态合并为一个, 默认规约状态的向前看符号取并集.
+ * <br>
+ * 合并后, 对于合法的输入分析过程 (移入与规约序列) 不变; 对于非法的输入, 错误可能在若干次规约之后才被发现, 但不会多移入任何词法单元.
+ * 编译时的默认规约见 {@link CompiledLRTable#compile(LRTable, boolean)}, 单产生式链的合并见 {@link CompiledLRTable#collapseUnitChains(boolean[])}.
+ *
+ * @author chiro
+ */
+public final class TableOptimizer {
+    private TableOptimizer() {
+    }
+
+    /**
+     * 合并分析表中的等价状态并启用默认规约
+     *
+     * @param table LR 分析表
+     * @return 编译后的分析表
+     */
+    public static CompiledLRTable compile(LRTable table) {
+        return CompiledLRTable.compile(optimize(table), true);
+    }
+
+    /**
+     * 合并分析表中的等价状态, 原初始状态所在的类仍为初始状态, 其余状态按其中最小的原状态编号排序
+     *
+     * @param table LR 分析表
+     * @return 合并后的分析表
+     */
+    public static LRTable optimize(LRTable table) {
+        final var statuses = table.getStatuses();
+        final var terminals = table.getTerminals();
+        final var nonTerminals = table.getNonTerminals();
+        final var statusIds = new HashMap<Status, Integer>();
+        for (int id = 0; id < statuses.size(); id++) {
+            statusIds.put(statuses.get(id), id);
+        }
+
+        final var defaults = new Production[statuses.size()];
+        for (int id = 0; id < statuses.size(); id++) {
+            defaults[id] = defaultReduction(statuses.get(id), terminals);
+        }
+
+        // 各状态所在的类, 每轮按 (所在的类, 各列在本轮的签名) 重新编号, 类的数量不再增加时即稳定
+        var blocks = new int[statuses.size()];
+        var blockCount = 1;
+        while (true) {
+            final var signatures = new HashMap<List<Object>, Integer>();
+            final var refined = new int[statuses.size()];
+            for (int id = 0; id < statuses.size(); id++) {
+                final var signature = signature(statuses.get(id), defaults[id], blocks[id], terminals, nonTerminals,
+                    statusIds, blocks);
+                refined[id] = signatures.computeIfAbsent(signature, key -> signatures.size());
+            }
+            blocks = refined;
+            if (signatures.size() == blockCount) {
+                break;
+            }
+            blockCount = signatures.size();
+        }
+
+        // 按首次出现的顺序重新为类编号, 使初始状态仍为 0
+        final var renumber = new int[blockCount];
+        Arrays.fill(renumber, -1);
+        final var merged = new ArrayList<Status>();
+        for (int id = 0; id < statuses.size(); id++) {
+            if (renumber[blocks[id]] < 0) {
+                renumber[blocks[id]] = merged.size();
+                merged.add(Status.create(merged.size()));
+            }
+        }
+        for (int id = 0; id < statuses.size(); id++) {
+            final var status = statuses.get(id);
+            final var target = merged.get(renumber[blocks[id]]);
+            for (final var terminal : terminals) {
+                final var action = status.getAction(terminal);
+                switch (action.getKind()) {
+                    case Shift -> target.setAction(terminal,
+                        Action.shift(merged.get(renumber[blocks[statusIds.get(action.getStatus())]])));
+                    case Reduce, Accept -> target.setAction(terminal, action);
+                    case Error -> {
+                    }
+                }
+            }
+            for (final var nonTerminal : nonTerminals) {
+                final var to = status.getGoto(nonTerminal);
+                if (!to.isError()) {
+                    target.setGoto(nonTerminal, merged.get(renumber[blocks[statusIds.get(to)]]));
+                }
+            }
+        }
+
+        return new LRTable(merged, terminals, nonTerminals);
+    }
+
+    /**
+     * @return 若该状态的非错误动作都是规约同一条产生式, 返回该产生式, 否则返回 null
+     */
+    static Production defaultReduction(Status status, List<TokenKind> terminals) {
+        Production result = null;
+        for (final var terminal : terminals) {
+            final var action = status.getAction(terminal);
+            switch (action.getKind()) {
+                case Error -> {
+                }
+                case Reduce -> {
+                    if (result != null && !result.equals(action.getProduction())) {
+                        return null;
+                    }
+                    result = action.getProduction();
+                }
+                default -> {
+                    return null;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 一行的签名: 默认规约的状态只记录其产生式, 其余状态记录每一列的动作, 移入与 GOTO 的目标以其所在的类代替
+     */
+    private static List<Object> signature(Status status, Production defaultReduction, int block,
+                                          List<TokenKind> terminals, List<NonTerminal> nonTerminals,
+                                          HashMap<Status, Integer> statusIds, int[] blocks) {
+        final var signature = new ArrayList<Object>();
+        signature.add(block);
+        if (defaultReduction != null) {
+            signature.add(defaultReduction.index());
+        } else {
+            for (final var terminal : terminals) {
+                final var action = status.getAction(terminal);
+                signature.add(switch (action.getKind()) {
+                    case Shift -> "s" + blocks[statusIds.get(action.getStatus())];
+                    case Reduce -> "r" + action.getProduction().index();
+                    case Accept -> "acc";
+                    case Error -> "";
+                });
+            }
+        }
+        for (final var nonTerminal : nonTerminals) {
+            final var to = status.getGoto(nonTerminal);
+            signature.add(to.isError() ? -1 : blocks[statusIds.get(to)]);
+        }
+        return signature;
+    }
+}
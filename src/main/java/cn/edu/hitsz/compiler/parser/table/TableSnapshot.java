@@ -0,0 +1,124 @@
+package cn.edu.hitsz.compiler.parser.table;
+
+import cn.edu.hitsz.compiler.RunConfigs;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * 编译后的 LR 分析表的二进制快照
+ * <br>
+ * 解析 CSV 格式的分析表需要逐行切分, 逐格解析整数, 并按文本查找每个规约动作的产生式, 对于短小的源程序, 这往往是编译耗时的大头.
+ * 快照在第一次运行时由 CSV 编译并写入, 之后的运行直接映射快照文件读出各个数组.
+ * <br>
+ * 快照由以 int 为单位的头部与 {@link CompiledLRTable#write(IntBuffer)} 写入的内容组成, 头部依次为魔数, 格式版本,
+ * 64 位的输入散列值以及内容的长度. 散列值由 CSV 分析表, 语法文件与码点文件的全部字节算出, 任何一个文件发生变化,
+ * 或是格式版本不同, 快照都会被视为过期, 此时重新读取 CSV 并覆盖快照. 是否经过 {@link TableOptimizer} 优化也计入散列值.
+ *
+ * @author chiro
+ */
+public final class TableSnapshot {
+    private static final int MAGIC = 0x4C525442;
+    private static final int VERSION = 3;
+    private static final int HEADER_INTS = 5;
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private TableSnapshot() {
+    }
+
+    /**
+     * 读取快照, 快照不存在或已过期时从 CSV 编译分析表并写入快照
+     *
+     * @param csvPath      CSV 格式的分析表路径
+     * @param snapshotPath 快照路径
+     * @param optimize     是否以 {@link TableOptimizer} 合并等价状态并启用默认规约
+     * @param inputPaths   参与计算散列值的其它输入文件 (语法文件, 码点文件等)
+     * @return 编译后的分析表
+     */
+    public static CompiledLRTable load(String csvPath, String snapshotPath, boolean optimize, String... inputPaths) {
+        var hash = hash(FNV_OFFSET, csvPath);
+        for (final var path : inputPaths) {
+            hash = hash(hash, path);
+        }
+        hash = (hash ^ (optimize ? 1 : 0)) * FNV_PRIME;
+
+        final var snapshot = Paths.get(snapshotPath);
+        if (Files.isRegularFile(snapshot)) {
+            final var table = tryRead(snapshot, hash);
+            if (table != null) {
+                return table;
+            }
+        }
+
+        final var csv = new TableLoader().load(csvPath);
+        final var table = optimize ? TableOptimizer.compile(csv) : CompiledLRTable.compile(csv);
+        write(snapshot, hash, table);
+        return table;
+    }
+
+    /**
+     * @return 快照中的分析表, 快照过期或已损坏时返回 null
+     */
+    private static CompiledLRTable tryRead(Path snapshot, long hash) {
+        try (final var channel = FileChannel.open(snapshot, StandardOpenOption.READ)) {
+            final var size = channel.size();
+            if (size < HEADER_INTS * Integer.BYTES || size % Integer.BYTES != 0) {
+                return null;
+            }
+            final var ints = channel.map(FileChannel.MapMode.READ_ONLY, 0, size).asIntBuffer();
+            if (ints.get() != MAGIC || ints.get() != VERSION
+                || ints.get() != (int) (hash >>> 32) || ints.get() != (int) hash
+                || ints.get() != ints.remaining()) {
+                return null;
+            }
+            return CompiledLRTable.read(ints);
+        } catch (IOException | RuntimeException e) {
+            if (RunConfigs.DEBUG) {
+                System.out.printf("Discard LR table snapshot %s: %s\n", snapshot, e);
+            }
+            return null;
+        }
+    }
+
+    private static void write(Path snapshot, long hash, CompiledLRTable table) {
+        final var length = table.snapshotSize();
+        final var bytes = ByteBuffer.allocate((HEADER_INTS + length) * Integer.BYTES);
+        bytes.asIntBuffer()
+            .put(MAGIC).put(VERSION).put((int) (hash >>> 32)).put((int) hash).put(length);
+        table.write(bytes.position(HEADER_INTS * Integer.BYTES).asIntBuffer());
+        try {
+            if (snapshot.getParent() != null) {
+                Files.createDirectories(snapshot.getParent());
+            }
+            Files.write(snapshot, bytes.array());
+        } catch (IOException e) {
+            // 快照只是缓存, 写入失败时下次运行照常读取 CSV 即可
+            if (RunConfigs.DEBUG) {
+                System.out.printf("Can not write LR table snapshot %s: %s\n", snapshot, e);
+            }
+        }
+    }
+
+    /**
+     * 以 FNV-1a 把文件的全部字节及其长度累积进散列值
+     */
+    private static long hash(long hash, String path) {
+        final byte[] bytes;
+        try {
+            bytes = Files.readAllBytes(Paths.get(path));
+        } catch (IOException e) {
+            throw new RuntimeException("IO Exception on " + path, e);
+        }
+        for (final var b : bytes) {
+            hash = (hash ^ (b & 0xff)) * FNV_PRIME;
+        }
+        return (hash ^ bytes.length) * FNV_PRIME;
+    }
+}
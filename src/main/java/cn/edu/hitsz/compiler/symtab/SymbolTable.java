@@ -4,9 +4,9 @@ import cn.edu.hitsz.compiler.error.ErrorDescription;
 import cn.edu.hitsz.compiler.utils.FileUtils;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Comparator;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.List;
 
 /**
  * 符号表
@@ -14,11 +14,27 @@ import java.util.Map;
  * 由于源语言比较简易, 加之 Java 中具有非常好用的通用数据结构类型, 本项目其实并不一定需要一个集中的 "符号表" 来存储源语言中的
  * <b>所有符号的所有信息</b>. 但为了切合理论课程教学, 提高实验实践技能的通用性, 我们按照一般编译器项目中符号表的设计设计了该符号表.
  * 其在代码中的作用可能并不明显, 但我们希望同学们可以借此体验符号表的设计思想.
+ * <br>
+ * 符号表同时是标识符的驻留表: 每个符号在第一次出现时被分配一个从 0 开始的稠密编号, 条目按编号存放在数组中.
+ * 词法分析时直接以词素 (及其与 {@link String#hashCode()} 一致的散列值) 驻留, 之后的各个阶段只需携带编号即可取得条目,
+ * 不必反复对同一个字符串计算散列. 按文本查找使用开放定址的散列表, 槽中存放 "编号 + 1", 0 表示空槽.
+ * <br>
+ * 只有驻留会修改表的结构. 词法分析结束后表的结构不再变化, 此时按编号或文本查找都是只读的, 可以被按语句并行分析的多个线程共享;
+ * 条目的类型则由语义分析在 join 时按语句顺序设置, 见 {@link cn.edu.hitsz.compiler.parser.SemanticAnalyzer}.
  *
  * @author chiro
  */
 public class SymbolTable {
-    private final Map<String, SymbolTableEntry> table = new HashMap<>();
+    private static final int INITIAL_CAPACITY = 64;
+    /**
+     * 表示未知编号
+     */
+    public static final int NO_ID = -1;
+
+    private SymbolTableEntry[] entries = new SymbolTableEntry[INITIAL_CAPACITY];
+    private int[] hashes = new int[INITIAL_CAPACITY];
+    private int[] slots = new int[INITIAL_CAPACITY * 2];
+    private int size = 0;
 
     /**
      * 获取符号表中已有的条目
@@ -28,10 +44,22 @@ public class SymbolTable {
      * @throws RuntimeException 该符号在表中不存在
      */
     public SymbolTableEntry get(String text) {
-        if (!has(text)) {
+        final var id = idOf(text);
+        if (id == NO_ID) {
             throw new RuntimeException(String.format(ErrorDescription.NO_SYMBOL, text));
         }
-        return table.get(text);
+        return entries[id];
+    }
+
+    /**
+     * @param id 符号的编号
+     * @return 该编号对应的条目
+     */
+    public SymbolTableEntry get(int id) {
+        if (id < 0 || id >= size) {
+            throw new RuntimeException(String.format(ErrorDescription.NO_SYMBOL, "#" + id));
+        }
+        return entries[id];
     }
 
     /**
@@ -45,7 +73,7 @@ public class SymbolTable {
         if (has(text)) {
             throw new RuntimeException(String.format(ErrorDescription.HAS_SYMBOL, text));
         }
-        return table.put(text, new SymbolTableEntry(text));
+        return entries[intern(text)];
     }
 
     /**
@@ -55,7 +83,123 @@ public class SymbolTable {
      * @return 该符号的条目是否位于符号表中
      */
     public boolean has(String text) {
-        return table.containsKey(text);
+        return idOf(text) != NO_ID;
+    }
+
+    /**
+     * @param text 符号的文本表示
+     * @return 该符号的编号, 不存在时返回 {@link #NO_ID}
+     */
+    public int idOf(String text) {
+        final var slot = find(text, text.hashCode());
+        return slots[slot] - 1;
+    }
+
+    /**
+     * 词法分析时已驻留的符号直接使用其编号, 否则按文本查找
+     *
+     * @param id   词法分析时分配的编号, 未知时为 {@link #NO_ID}
+     * @param text 符号的文本表示
+     * @return 符号的编号
+     * @throws RuntimeException 该符号在表中不存在
+     */
+    public int resolve(int id, String text) {
+        final var resolved = id != NO_ID ? id : idOf(text);
+        if (resolved == NO_ID) {
+            throw new RuntimeException(String.format(ErrorDescription.NO_SYMBOL, text));
+        }
+        return resolved;
+    }
+
+    /**
+     * 驻留符号, 不存在时新增条目
+     *
+     * @param text 符号的文本表示
+     * @return 符号的编号
+     */
+    public int intern(String text) {
+        return intern(text, text.hashCode());
+    }
+
+    /**
+     * 驻留符号, 不存在时新增条目. 只有新增条目时才会把文本复制为 String
+     *
+     * @param text 符号的文本表示, 可以是源文本的一个视图
+     * @param hash 文本的散列值, 须与 {@link String#hashCode()} 一致
+     * @return 符号的编号
+     */
+    public int intern(CharSequence text, int hash) {
+        final var slot = find(text, hash);
+        if (slots[slot] != 0) {
+            return slots[slot] - 1;
+        }
+        final var id = size++;
+        if (id == entries.length) {
+            entries = Arrays.copyOf(entries, id * 2);
+            hashes = Arrays.copyOf(hashes, id * 2);
+        }
+        entries[id] = new SymbolTableEntry(text.toString());
+        hashes[id] = hash;
+        slots[slot] = id + 1;
+        // 装载因子超过 1/2 时扩容
+        if (size * 2 > slots.length) {
+            rehash();
+        }
+        return id;
+    }
+
+    /**
+     * @return 符号的数量, 所有编号都小于它
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return 文本所在的槽, 不存在时为应当插入的空槽
+     */
+    private int find(CharSequence text, int hash) {
+        final var mask = slots.length - 1;
+        int slot = mix(hash) & mask;
+        while (slots[slot] != 0) {
+            final var id = slots[slot] - 1;
+            if (hashes[id] == hash && contentEquals(entries[id].getText(), text)) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private static boolean contentEquals(String text, CharSequence other) {
+        if (text.length() != other.length()) {
+            return false;
+        }
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) != other.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 打散散列值的低位, 避免相近的标识符聚集在相邻的槽中
+     */
+    private static int mix(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    private void rehash() {
+        slots = new int[slots.length * 2];
+        final var mask = slots.length - 1;
+        for (int id = 0; id < size; id++) {
+            int slot = mix(hashes[id]) & mask;
+            while (slots[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            slots[slot] = id + 1;
+        }
     }
 
     /**
@@ -63,8 +207,8 @@ public class SymbolTable {
      *
      * @return 符号表的所有条目
      */
-    private Map<String, SymbolTableEntry> getAllEntries() {
-        return table;
+    private List<SymbolTableEntry> getAllEntries() {
+        return Arrays.asList(entries).subList(0, size);
     }
 
     /**
@@ -73,13 +217,27 @@ public class SymbolTable {
      * @param path 输出文件路径
      */
     public void dumpTable(String path) {
-        final var entriesInOrder = new ArrayList<>(getAllEntries().values());
+        dump(path, true);
+    }
+
+    /**
+     * 将符号表按格式输出, 但不输出条目的类型, 结果与语义分析之前调用 {@link #dumpTable(String)} 相同.
+     * 用于在语义分析已经设置了部分类型之后仍能得到语义分析前的符号表.
+     *
+     * @param path 输出文件路径
+     */
+    public void dumpNames(String path) {
+        dump(path, false);
+    }
+
+    private void dump(String path, boolean withTypes) {
+        final var entriesInOrder = new ArrayList<>(getAllEntries());
         entriesInOrder.sort(Comparator.comparing(SymbolTableEntry::getText));
 
         final var lines = new ArrayList<String>();
         for (final var entry : entriesInOrder) {
             // null in %s will be "null"
-            lines.add("(%s, %s)".formatted(entry.getText(), entry.getType()));
+            lines.add("(%s, %s)".formatted(entry.getText(), withTypes ? entry.getType() : null));
         }
 
         FileUtils.writeLines(path, lines);
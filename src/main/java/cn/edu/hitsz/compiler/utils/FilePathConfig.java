@@ -15,6 +15,11 @@ public final class FilePathConfig {
      */
     public static final String CODING_MAP_PATH = "data/in/coding_map.csv";
 
+    /**
+     * 词法规则
+     */
+    public static final String TOKEN_SPEC_PATH = "data/in/token_spec.txt";
+
     /**
      * 语法文件
      */
@@ -62,6 +67,16 @@ public final class FilePathConfig {
      */
     public static final String ASSEMBLY_LANGUAGE_PATH = "data/out/assembly_language.asm";
 
+    /**
+     * 编译后的 LR 分析表的二进制快照
+     */
+    public static final String LR1_TABLE_SNAPSHOT_PATH = "data/out/LR1_table.bin";
+
+    /**
+     * 语法分析事件日志
+     */
+    public static final String PARSE_EVENT_LOG_PATH = "data/out/parse_events.bin";
+
     private FilePathConfig() {
     }
 }
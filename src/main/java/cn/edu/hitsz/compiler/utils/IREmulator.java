@@ -1,76 +1,76 @@
 package cn.edu.hitsz.compiler.utils;
 
-import cn.edu.hitsz.compiler.ir.IRImmediate;
-import cn.edu.hitsz.compiler.ir.IRValue;
-import cn.edu.hitsz.compiler.ir.IRVariable;
 import cn.edu.hitsz.compiler.ir.Instruction;
+import cn.edu.hitsz.compiler.ir.InstructionBuffer;
 
-import java.util.HashMap;
+import java.util.BitSet;
 import java.util.List;
-import java.util.Map;
 import java.util.Optional;
 
 /**
  * 用来模拟执行 IR 的类
+ * <br>
+ * 直接在 {@link InstructionBuffer} 上执行, 变量的值以其在缓冲区中的编号存放在数组中, 位图记录哪些变量已被赋值.
  */
 public class IREmulator {
     public static IREmulator load(List<Instruction> instructions) {
+        return new IREmulator(InstructionBuffer.of(instructions));
+    }
+
+    public static IREmulator load(InstructionBuffer instructions) {
         return new IREmulator(instructions);
     }
 
     public Optional<Integer> execute() {
-        for (final var instruction : instructions) {
-            switch (instruction.getKind()) {
+        final var cursor = instructions.cursor();
+        while (cursor.advance()) {
+            final var kind = cursor.kind();
+            switch (kind) {
                 // TODO: add more instructions
-                case MOV -> {
-                    final var from = eval(instruction.getFrom());
-                    environment.put(instruction.getResult(), from);
-                }
+                case MOV -> assign(cursor.result(), eval(cursor.lhs(), cursor.isLhsImmediate()));
 
-                case ADD -> {
-                    final var lhs = eval(instruction.getLHS());
-                    final var rhs = eval(instruction.getRHS());
-                    environment.put(instruction.getResult(), lhs + rhs);
-                }
+                case ADD -> assign(cursor.result(),
+                    eval(cursor.lhs(), cursor.isLhsImmediate()) + eval(cursor.rhs(), cursor.isRhsImmediate()));
 
-                case SUB -> {
-                    final var lhs = eval(instruction.getLHS());
-                    final var rhs = eval(instruction.getRHS());
-                    environment.put(instruction.getResult(), lhs - rhs);
-                }
+                case SUB -> assign(cursor.result(),
+                    eval(cursor.lhs(), cursor.isLhsImmediate()) - eval(cursor.rhs(), cursor.isRhsImmediate()));
 
-                case MUL -> {
-                    final var lhs = eval(instruction.getLHS());
-                    final var rhs = eval(instruction.getRHS());
-                    environment.put(instruction.getResult(), lhs * rhs);
-                }
+                case MUL -> assign(cursor.result(),
+                    eval(cursor.lhs(), cursor.isLhsImmediate()) * eval(cursor.rhs(), cursor.isRhsImmediate()));
 
-                case RET -> this.returnValue = eval(instruction.getReturnValue());
+                case RET -> this.returnValue = eval(cursor.lhs(), cursor.isLhsImmediate());
 
-                default -> throw new RuntimeException("Unknown instruction kind: " + instruction.getKind());
+                default -> throw new RuntimeException("Unknown instruction kind: " + kind);
             }
         }
 
         return Optional.ofNullable(this.returnValue);
     }
 
-    public Integer eval(IRValue value) {
-        if (value instanceof IRImmediate immediate) {
-            return immediate.getValue();
-        } else if (value instanceof IRVariable variable) {
-            return environment.get(variable);
-        } else {
-            throw new RuntimeException("Unknown IR value type");
+    private int eval(int operand, boolean immediate) {
+        if (immediate) {
+            return operand;
+        }
+        if (!assigned.get(operand)) {
+            throw new RuntimeException("Variable %s is read before assignment".formatted(instructions.variable(operand)));
         }
+        return environment[operand];
+    }
+
+    private void assign(int variable, int value) {
+        environment[variable] = value;
+        assigned.set(variable);
     }
 
-    private IREmulator(List<Instruction> instructions) {
+    private IREmulator(InstructionBuffer instructions) {
         this.instructions = instructions;
-        this.environment = new HashMap<>();
+        this.environment = new int[instructions.variableCount()];
+        this.assigned = new BitSet(instructions.variableCount());
         this.returnValue = null;
     }
 
-    private final List<Instruction> instructions;
-    private final Map<IRVariable, Integer> environment;
+    private final InstructionBuffer instructions;
+    private final int[] environment;
+    private final BitSet assigned;
     private Integer returnValue;
 }
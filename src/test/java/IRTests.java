@@ -0,0 +1,107 @@
+package cn.edu.hitsz.compiler.ir;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class IRTests {
+    @Test
+    public void instructionBufferTest() {
+        final var variables = new IRVariableFactory();
+        final var a = variables.named("a");
+        final var b = variables.named("b");
+        final var t = variables.temp();
+        final var instructions = List.of(
+            Instruction.createMov(a, IRImmediate.of(-3)),
+            Instruction.createMul(t, a, IRImmediate.of(2)),
+            Instruction.createSub(b, IRImmediate.of(7), t),
+            Instruction.createRet(b));
+        final var buffer = InstructionBuffer.of(instructions);
+        assertEquals(4, buffer.size());
+        assertEquals(3, buffer.variableCount());
+        assertEquals(instructions.toString(), buffer.toInstructions().toString());
+        // 同名的变量是同一个对象, 编号按创建顺序分配; 较小的立即数被缓存
+        assertSame(a, variables.named("a"));
+        // 不属于任何工厂的变量按 name 等价, 与工厂创建的同名变量不等价
+        assertEquals(IRVariable.named("a"), IRVariable.named("a"));
+        assertNotEquals(a, IRVariable.named("a"));
+        assertEquals(2, t.getId());
+        assertEquals(3, variables.size());
+        assertSame(IRImmediate.of(-3), buffer.get(0).getFrom());
+        assertSame(buffer.get(0).getResult(), buffer.get(1).getLHS());
+
+        // 用游标把 MUL 改写为 ADD 的立即数形式, 并删除 MOV
+        final var cursor = buffer.cursor();
+        while (cursor.advance()) {
+            switch (cursor.kind()) {
+                case MOV -> cursor.remove();
+                case MUL -> {
+                    cursor.set(InstructionKind.ADD, cursor.result(), cursor.lhs(), false, 5, true);
+                    cursor.setLhs(1, true);
+                }
+                default -> {
+                }
+            }
+        }
+        assertEquals(3, buffer.liveSize());
+        assertTrue(buffer.isRemoved(0));
+        assertEquals("[(ADD, $0, 1, 5), (SUB, b, 7, $0), (RET, , b)]", buffer.toInstructions().toString());
+        buffer.compact();
+        assertEquals(3, buffer.size());
+        assertFalse(buffer.isRemoved(0));
+        assertTrue(buffer.isRhsImmediate(0));
+        assertFalse(buffer.isRhsImmediate(1));
+
+        // 追加时按映射重命名变量, 立即数保持不变
+        final var other = new InstructionBuffer();
+        final var c = other.variable(new IRVariableFactory().named("c"));
+        other.add(InstructionKind.ADD, c, c, false, 9, true);
+        final var combined = new InstructionBuffer();
+        final var remap = new int[buffer.variableCount()];
+        for (int id = 0; id < remap.length; id++) {
+            remap[id] = combined.variable(buffer.variable(id));
+        }
+        combined.appendAll(buffer, remap);
+        combined.appendAll(other, new int[]{combined.variable(a)});
+        assertEquals("[(ADD, $0, 1, 5), (SUB, b, 7, $0), (RET, , b), (ADD, a, a, 9)]", combined.toInstructions().toString());
+    }
+
+    @Test
+    public void constantFoldingTest() {
+        final var variables = new IRVariableFactory();
+        final var a = variables.named("a");
+        final var b = variables.named("b");
+        final var x = variables.named("x");
+        final var t0 = variables.temp();
+        final var t1 = variables.temp();
+        final var t2 = variables.temp();
+        // 完全由常量组成的程序只剩下一条 RET, 乘法按 32 位回绕
+        final var constant = InstructionBuffer.of(List.of(
+            Instruction.createMov(a, IRImmediate.of(65536)),
+            Instruction.createMul(t0, a, a),
+            Instruction.createSub(t1, IRImmediate.of(3), t0),
+            Instruction.createMov(b, t1),
+            Instruction.createRet(a),
+            Instruction.createRet(b)));
+        ConstantFolder.fold(constant);
+        assertEquals("[(RET, , 3)]", constant.toInstructions().toString());
+
+        // 读取未知变量的指令保留下来, 其中的已知操作数被替换为立即数, 结果不被读取的指令被删除
+        final var partial = InstructionBuffer.of(List.of(
+            Instruction.createMov(a, IRImmediate.of(2)),
+            Instruction.createAdd(t0, x, a),
+            Instruction.createMul(t1, a, IRImmediate.of(7)),
+            Instruction.createMul(t2, t0, t1),
+            Instruction.createMov(b, t2),
+            Instruction.createRet(b)));
+        ConstantFolder.fold(partial);
+        assertEquals("[(ADD, $0, x, 2), (MUL, $2, $0, 14), (MOV, b, $2), (RET, , b)]", partial.toInstructions().toString());
+        assertEquals(4, partial.size());
+    }
+}
@@ -0,0 +1,235 @@
+package cn.edu.hitsz.compiler.lexer;
+
+import cn.edu.hitsz.compiler.symtab.SourceCodeType;
+import cn.edu.hitsz.compiler.symtab.SymbolTable;
+import cn.edu.hitsz.compiler.utils.FilePathConfig;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class LexerTests {
+    private static void loadTokenKinds() {
+        if (TokenKind.allAllowedTokenKinds().isEmpty()) {
+            TokenKind.loadTokenKinds();
+        }
+    }
+
+    private static String sampleText() {
+        final var builder = new StringBuilder();
+        for (int i = 0; i < 10000; i++) {
+            builder.append((char) ('a' + i % 26));
+            if (i % 80 == 0) {
+                builder.append('\n');
+            }
+        }
+        return builder.toString();
+    }
+
+    private static void checkSource(CharSource source, String text) {
+        int position = 0;
+        while (source.hasNext()) {
+            assertEquals(position, source.position());
+            assertEquals(text.charAt(position), source.current());
+            // 前瞻距离超过初始容量时缓冲区应当自动扩容
+            final var lookahead = position % 37;
+            final var expected = position + lookahead < text.length() ? text.charAt(position + lookahead) : CharSource.DONE;
+            assertEquals(expected, source.current(lookahead));
+            if (position > 0) {
+                assertEquals(text.charAt(position - 1), source.last(1));
+            }
+            source.next();
+            position++;
+        }
+        assertEquals(text.length(), position);
+        assertEquals(CharSource.DONE, source.next());
+        assertEquals(text.length(), source.position());
+    }
+
+    @Test
+    public void ringBufferTest() {
+        final var text = sampleText();
+        checkSource(new CharRingBuffer(new StringReader(text), 4, 1), text);
+        checkSource(new CharRingBuffer(CharBuffer.wrap(text), 8, 2), text);
+    }
+
+    @Test
+    public void mappedSourceTest() throws IOException {
+        final var text = sampleText();
+        final var ascii = Files.createTempFile("lexer", ".txt");
+        final var unicode = Files.createTempFile("lexer", ".txt");
+        try {
+            Files.writeString(ascii, text, StandardCharsets.US_ASCII);
+            Files.writeString(unicode, text + "变量", StandardCharsets.UTF_8);
+            checkSource(MappedCharSource.map(ascii.toString()).orElseThrow(), text);
+            assertTrue(MappedCharSource.map(unicode.toString()).isEmpty());
+        } finally {
+            Files.delete(ascii);
+            Files.delete(unicode);
+        }
+    }
+
+    @Test
+    public void dfaScannerTest() {
+        loadTokenKinds();
+        final var dfa = DfaGenerator.fromFile(FilePathConfig.TOKEN_SPEC_PATH);
+        final var text = "int a1;\r\nreturn a1*(20 + integer)-b/c, 3;";
+        final var scanner = new DfaScanner(dfa, new CharRingBuffer(CharBuffer.wrap(text), 4, 1));
+        final var tokens = new ArrayList<String>();
+        int rule;
+        while ((rule = scanner.scan()) >= 0) {
+            final var matched = dfa.getRules().get(rule);
+            tokens.add(matched.literal() ? matched.name() : matched.name() + ":" + scanner.lexeme());
+        }
+        assertEquals(List.of("int", "id:a1", "Semicolon", "return", "id:a1", "*", "(", "IntConst:20", "+",
+            "id:integer", ")", "-", "id:b", "/", "id:c", ",", "IntConst:3", "Semicolon"), tokens);
+    }
+
+    @Test
+    public void lexemeSliceTest() {
+        loadTokenKinds();
+        final var dfa = DfaGenerator.fromFile(FilePathConfig.TOKEN_SPEC_PATH);
+        final var text = "a = 2147483647; b = a * 042; a = b;";
+        final var scanner = new DfaScanner(dfa, new CharRingBuffer(CharBuffer.wrap(text), 4, 1));
+        final var symbols = new SymbolTable();
+        final var ids = new ArrayList<Integer>();
+        final var values = new ArrayList<Integer>();
+        int rule;
+        while ((rule = scanner.scan()) >= 0) {
+            final var matched = dfa.getRules().get(rule);
+            if (matched.symbol()) {
+                ids.add(symbols.intern(scanner.lexemeView(), scanner.tokenHash()));
+            } else if (matched.integer()) {
+                values.add(scanner.intValue());
+            }
+        }
+        assertEquals(List.of(0, 1, 0, 0, 1), ids);
+        assertEquals(2, symbols.size());
+        assertSame(symbols.get(0), symbols.get(ids.get(2)));
+        assertEquals(1, symbols.idOf("b"));
+        assertEquals(1, symbols.resolve(SymbolTable.NO_ID, "b"));
+        assertEquals(List.of(Integer.MAX_VALUE, 42), values);
+
+        final var token = Token.integer(TokenKind.fromString("IntConst"), text, 4, 10, Integer.MAX_VALUE);
+        assertEquals(Integer.MAX_VALUE, token.getIntValue());
+        assertEquals("2147483647", token.getText());
+    }
+
+    @Test
+    public void symbolInternTest() {
+        final var symbols = new SymbolTable();
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(i, symbols.intern("v" + i));
+        }
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(i, symbols.intern("v" + i));
+            assertEquals("v" + i, symbols.get(i).getText());
+        }
+        assertEquals(SymbolTable.NO_ID, symbols.idOf("v1000"));
+        assertEquals(1000, symbols.size());
+    }
+
+    @Test
+    public void parallelLexTest() throws IOException {
+        loadTokenKinds();
+        final var builder = new StringBuilder("int result;\n");
+        for (int i = 0; i < 50000; i++) {
+            builder.append("int v").append(i).append(";\n");
+            builder.append("v").append(i).append(" = (v").append(i / 2).append(" + ").append(i).append(") * result;\n");
+        }
+        builder.append("return result;");
+        final var file = Files.createTempFile("parallel", ".txt");
+        Files.writeString(file, builder, StandardCharsets.US_ASCII);
+        try {
+            final var sequentialTable = new SymbolTable();
+            final var sequential = new LexicalAnalyzer(sequentialTable);
+            sequential.loadFile(file.toString());
+            sequential.run(false);
+            final var parallelTable = new SymbolTable();
+            final var parallel = new LexicalAnalyzer(parallelTable);
+            parallel.loadFile(file.toString());
+            parallel.run(true);
+
+            final var expected = sequential.getTokenBuffer();
+            final var actual = parallel.getTokenBuffer();
+            assertEquals(expected.size(), actual.size());
+            for (int i = 0; i < expected.size(); i++) {
+                assertEquals(expected.token(i).toString(), actual.token(i).toString());
+                assertEquals(expected.offset(i), actual.offset(i));
+                assertEquals(expected.value(i), actual.value(i));
+            }
+            for (int i = 0; i < 50000; i++) {
+                assertTrue(parallelTable.has("v" + i));
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void streamingSymbolTableTest() throws IOException {
+        loadTokenKinds();
+        final var file = Files.createTempFile("streaming", ".txt");
+        final var dump = Files.createTempFile("symbols", ".txt");
+        Files.writeString(file, "int b; int a; a = b; return a;", StandardCharsets.US_ASCII);
+        try {
+            final var symbols = new SymbolTable();
+            final var lexer = new LexicalAnalyzer(symbols);
+            lexer.loadFile(file.toString());
+            lexer.teeSymbolTable(dump.toString());
+            final var tokens = lexer.getTokens();
+            while (tokens.hasNext()) {
+                final var token = tokens.next();
+                // 模拟按需分析时语义分析在词法分析结束前设置的类型
+                if (token.getSymbolId() >= 0 && symbols.get(token.getSymbolId()).getType() == null) {
+                    symbols.get(token.getSymbolId()).setType(SourceCodeType.Int);
+                }
+            }
+            assertEquals(List.of("(a, null)", "(b, null)"), Files.readAllLines(dump));
+        } finally {
+            Files.delete(file);
+            Files.delete(dump);
+        }
+    }
+
+    private static List<String> scanAll(DfaTable dfa, ByteBuffer bytes, RunKernel kernel) {
+        final var source = new MappedCharSource(bytes, 0, bytes.limit());
+        final var scanner = new DfaScanner(dfa, source, kernel);
+        final var tokens = new ArrayList<String>();
+        int rule;
+        while ((rule = scanner.scan()) >= 0) {
+            final var matched = dfa.getRules().get(rule);
+            final var hash = matched.symbol() ? ":" + scanner.tokenHash() : "";
+            tokens.add(matched.name() + "@" + scanner.tokenStart() + ":" + scanner.lexeme() + hash);
+        }
+        return tokens;
+    }
+
+    @Test
+    public void runKernelTest() {
+        loadTokenKinds();
+        final var dfa = DfaGenerator.fromFile(FilePathConfig.TOKEN_SPEC_PATH);
+        final var builder = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            builder.append(" ".repeat(i % 40)).append("int ").append("x_".repeat(i % 23)).append(i).append(";\n");
+            builder.append("\t".repeat(i % 5)).append("y").append(i).append("=").append("9".repeat(i % 9 + 1))
+                .append("*(x_").append(i).append("+returned)").append(i % 3 == 0 ? "" : "\r\n").append(";");
+        }
+        final var bytes = ByteBuffer.wrap(builder.toString().getBytes(StandardCharsets.US_ASCII));
+        final var expected = scanAll(dfa, bytes, null);
+        assertEquals(expected, scanAll(dfa, bytes, new RunKernel(dfa, bytes, false)));
+        final var vector = new RunKernel(dfa, bytes, true);
+        assertTrue(vector.isVectorized());
+        assertEquals(expected, scanAll(dfa, bytes, vector));
+    }
+}
@@ -0,0 +1,526 @@
+package cn.edu.hitsz.compiler.parser.table;
+
+import cn.edu.hitsz.compiler.lexer.Token;
+import cn.edu.hitsz.compiler.lexer.TokenKind;
+import cn.edu.hitsz.compiler.parser.ActionObserver;
+import cn.edu.hitsz.compiler.parser.DirectCodedParser;
+import cn.edu.hitsz.compiler.parser.ParseEventLog;
+import cn.edu.hitsz.compiler.parser.SyntaxAnalyzer;
+import cn.edu.hitsz.compiler.symtab.SymbolTable;
+import cn.edu.hitsz.compiler.utils.FilePathConfig;
+import org.junit.jupiter.api.Test;
+
+import javax.tools.ToolProvider;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ParserTests {
+    /**
+     * 各测试共用的程序, 以空格分隔词法单元, $ 表示 EOF
+     */
+    private static final String SAMPLE = "int a ; a = ( a + 3 ) * a - 2 ; return a * ( 1 ) ; $";
+
+    private static LRTable loadTable() {
+        if (TokenKind.allAllowedTokenKinds().isEmpty()) {
+            TokenKind.loadTokenKinds();
+        }
+        return new TableLoader().load(FilePathConfig.LR1_TABLE_PATH);
+    }
+
+    @Test
+    public void tableSnapshotTest() throws IOException {
+        final var table = loadTable();
+        final var snapshot = Files.createTempFile("LR1_table", ".bin");
+        try {
+            for (final var optimize : List.of(false, true)) {
+                final var compiled = optimize ? TableOptimizer.compile(table) : CompiledLRTable.compile(table);
+                Files.delete(snapshot);
+                final var written = TableSnapshot.load(FilePathConfig.LR1_TABLE_PATH, snapshot.toString(), optimize, FilePathConfig.GRAMMAR_PATH);
+                assertTrue(Files.size(snapshot) > 0);
+                final var read = TableSnapshot.load(FilePathConfig.LR1_TABLE_PATH, snapshot.toString(), optimize, FilePathConfig.GRAMMAR_PATH);
+                for (final var loaded : List.of(written, read)) {
+                    assertEquals(compiled.getStatusCount(), loaded.getStatusCount());
+                    for (int s = 0; s < compiled.getStatusCount(); s++) {
+                        // 观察者收到的 Status 在冷启动与读取快照时应当完全相同
+                        final var expected = compiled.getStatus(s);
+                        final var actual = loaded.getStatus(s);
+                        assertEquals(expected, actual);
+                        for (final var terminal : table.getTerminals()) {
+                            assertEquals(compiled.action(s, terminal.getCode()), loaded.action(s, terminal.getCode()));
+                            assertEquals(expected.getAction(terminal), actual.getAction(terminal));
+                        }
+                        for (final var nonTerminal : table.getNonTerminals()) {
+                            assertEquals(expected.getGoto(nonTerminal), actual.getGoto(nonTerminal));
+                        }
+                    }
+                }
+            }
+
+            // 损坏的快照会被丢弃并重新写入
+            final var compiled = CompiledLRTable.compile(table);
+            Files.write(snapshot, new byte[]{1, 2, 3, 4, 5, 6, 7, 8});
+            final var rebuilt = TableSnapshot.load(FilePathConfig.LR1_TABLE_PATH, snapshot.toString(), false, FilePathConfig.GRAMMAR_PATH);
+            assertEquals(compiled.getPackedSize(), rebuilt.getPackedSize());
+            assertTrue(Files.size(snapshot) > 8);
+        } finally {
+            Files.deleteIfExists(snapshot);
+        }
+    }
+
+    @Test
+    public void compiledTableTest() {
+        final var table = loadTable();
+        final var compiled = CompiledLRTable.compile(table);
+        final var statuses = table.getStatuses();
+        assertEquals(statuses.size(), compiled.getStatusCount());
+        final var columns = table.getTerminals().size() + table.getNonTerminals().size();
+        assertTrue(compiled.getPackedSize() < statuses.size() * columns);
+
+        for (int s = 0; s < statuses.size(); s++) {
+            final var status = statuses.get(s);
+            assertEquals(status, compiled.getStatus(s));
+            for (final var terminal : table.getTerminals()) {
+                final var expected = status.getAction(terminal);
+                final var action = compiled.action(s, terminal.getCode());
+                final var kind = CompiledLRTable.kind(action);
+                final var operand = CompiledLRTable.operand(action);
+                switch (expected.getKind()) {
+                    case Shift -> {
+                        assertEquals(CompiledLRTable.SHIFT, kind);
+                        assertEquals(expected.getStatus(), compiled.getStatus(operand));
+                    }
+                    case Reduce -> {
+                        assertEquals(CompiledLRTable.REDUCE, kind);
+                        assertEquals(expected.getProduction(), compiled.getProduction(operand));
+                    }
+                    case Accept -> assertEquals(CompiledLRTable.ACCEPT, kind);
+                    case Error -> assertEquals(CompiledLRTable.ERROR, kind);
+                }
+            }
+            final var nonTerminals = table.getNonTerminals();
+            for (int n = 0; n < nonTerminals.size(); n++) {
+                final var expected = status.getGoto(nonTerminals.get(n));
+                final var target = compiled.goTo(s, n);
+                if (expected.isError()) {
+                    assertEquals(-1, target);
+                } else {
+                    assertEquals(expected, compiled.getStatus(target));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void deepStackTest() {
+        final var table = loadTable();
+        // a = ((...(1)...)); 嵌套层数超过状态栈的初始容量
+        final var depth = 1000;
+        final var tokens = new ArrayList<Token>();
+        tokens.add(Token.simple("int"));
+        tokens.add(Token.normal("id", "a"));
+        tokens.add(Token.simple("Semicolon"));
+        tokens.add(Token.normal("id", "a"));
+        tokens.add(Token.simple("="));
+        for (int i = 0; i < depth; i++) {
+            tokens.add(Token.simple("("));
+        }
+        tokens.add(Token.normal("IntConst", "1"));
+        for (int i = 0; i < depth; i++) {
+            tokens.add(Token.simple(")"));
+        }
+        tokens.add(Token.simple("Semicolon"));
+        tokens.add(Token.eof());
+
+        final var parser = new SyntaxAnalyzer(new SymbolTable());
+        final var reduced = new int[1];
+        final var accepted = new ArrayList<Term>();
+        parser.loadTokens(tokens.iterator());
+        parser.loadLRTable(table);
+        parser.registerObserver(new ActionObserver() {
+            @Override
+            public void whenShift(Status currentStatus, Token currentToken) {
+            }
+
+            @Override
+            public void whenReduce(Status currentStatus, Production production) {
+                reduced[0]++;
+            }
+
+            @Override
+            public void whenAccept(Status currentStatus) {
+                accepted.add(parser.symbolAt(0));
+                accepted.add(parser.symbolAt(1));
+            }
+
+            @Override
+            public void setSymbolTable(SymbolTable table) {
+            }
+
+            @Override
+            public boolean needsSymbolStack() {
+                return true;
+            }
+        });
+        parser.run();
+
+        assertEquals(List.of(GrammarInfo.getNonTerminal("S_list"), TokenKind.eof()), accepted);
+        // 每层括号规约出 B -> ( E ), A -> B, E -> A 三条产生式; 此外 D -> int, S -> D id, 最内层的 B -> IntConst, A -> B, E -> A,
+        // S -> id = E 以及两条 S_list 的规约各一次. 维护文法符号栈时不略过单产生式的规约
+        assertEquals(3 * depth + 8, reduced[0]);
+    }
+
+    /**
+     * @param text    以空格分隔的词法单元, $ 表示 EOF
+     * @param symbols 标识符驻留到的符号表
+     * @return 词法单元序列, 标识符带有其在符号表中的编号
+     */
+    private static List<Token> tokens(String text, SymbolTable symbols) {
+        final var tokens = new ArrayList<Token>();
+        for (final var word : text.split(" ")) {
+            if (word.equals("$")) {
+                tokens.add(Token.eof());
+            } else if (word.equals(";")) {
+                tokens.add(Token.simple("Semicolon"));
+            } else if (Character.isDigit(word.charAt(0))) {
+                tokens.add(Token.normal("IntConst", word));
+            } else if (TokenKind.isAllowed(word)) {
+                tokens.add(Token.simple(word));
+            } else {
+                tokens.add(Token.symbol(TokenKind.fromString("id"), word, symbols.intern(word)));
+            }
+        }
+        return tokens;
+    }
+
+    /**
+     * 只记录规约出的产生式的观察者, 接受时记为 accept
+     */
+    private static class ReductionObserver implements ActionObserver {
+        private final List<String> reductions = new ArrayList<>();
+        private final Predicate<Production> interest;
+
+        ReductionObserver(Predicate<Production> interest) {
+            this.interest = interest;
+        }
+
+        @Override
+        public void whenShift(Status currentStatus, Token currentToken) {
+        }
+
+        @Override
+        public boolean caresAboutShift() {
+            return false;
+        }
+
+        @Override
+        public void whenReduce(Status currentStatus, Production production) {
+            reductions.add(production.toString());
+        }
+
+        @Override
+        public boolean caresAboutReduce(Production production) {
+            return interest.test(production);
+        }
+
+        @Override
+        public void whenAccept(Status currentStatus) {
+            reductions.add("accept");
+        }
+
+        @Override
+        public void setSymbolTable(SymbolTable table) {
+        }
+    }
+
+    /**
+     * 以文本记录收到的全部事件的观察者
+     */
+    private static class TraceObserver implements ActionObserver {
+        private final List<String> events = new ArrayList<>();
+        private final List<Status> statuses = new ArrayList<>();
+
+        @Override
+        public void whenShift(Status currentStatus, Token currentToken) {
+            statuses.add(currentStatus);
+            events.add("shift %s %s %s".formatted(currentStatus, currentToken, currentToken.getSymbolId() >= 0));
+        }
+
+        @Override
+        public void whenReduce(Status currentStatus, Production production) {
+            statuses.add(currentStatus);
+            events.add("reduce %s %s".formatted(currentStatus, production));
+        }
+
+        @Override
+        public void whenAccept(Status currentStatus) {
+            statuses.add(currentStatus);
+            events.add("accept " + currentStatus);
+        }
+
+        @Override
+        public void setSymbolTable(SymbolTable table) {
+        }
+    }
+
+    @Test
+    public void eventLogTest() throws IOException {
+        final var table = loadTable();
+        final var symbols = new SymbolTable();
+        final var a = symbols.intern("a");
+        final var tokens = List.of(
+            Token.simple("int"), Token.symbol(TokenKind.fromString("id"), "a", a), Token.simple("Semicolon"),
+            Token.symbol(TokenKind.fromString("id"), "a", a), Token.simple("="), Token.normal("IntConst", "-7"),
+            Token.simple("*"), Token.normal("id", "b"), Token.simple("Semicolon"),
+            // 文本不是整数值的规范写法时, 回放出的词素仍与原来相同
+            Token.symbol(TokenKind.fromString("id"), "a", a), Token.simple("="),
+            Token.integer(TokenKind.fromString("IntConst"), "12+007", 3, 3, 7), Token.simple("-"),
+            Token.integer(TokenKind.fromString("IntConst"), "-12", 0, 3, -12), Token.simple("Semicolon"),
+            Token.simple("return"), Token.symbol(TokenKind.fromString("id"), "a", a), Token.simple("Semicolon"),
+            Token.eof());
+
+        final var log = Files.createTempFile("parse_events", ".bin");
+        try {
+            final var recorded = new TraceObserver();
+            final var parser = new SyntaxAnalyzer(symbols);
+            parser.loadTokens(tokens.iterator());
+            parser.loadLRTable(table);
+            parser.recordEvents(log.toString());
+            parser.registerObserver(recorded);
+            parser.run();
+
+            final var replayed = new TraceObserver();
+            final var replaySymbols = new SymbolTable();
+            final var replayer = new ParseEventLog.Replayer(replaySymbols);
+            replayer.registerObserver(replayed);
+            replayer.run(log.toString());
+
+            assertEquals(recorded.events, replayed.events);
+            assertTrue(replayed.events.get(replayed.events.size() - 1).startsWith("accept"));
+            assertEquals(1, replaySymbols.size());
+        } finally {
+            Files.deleteIfExists(log);
+        }
+    }
+
+    @Test
+    public void generatedParserTest() throws Exception {
+        final var table = loadTable();
+        final var source = ParserGenerator.generate(table, ParserGenerator.DEFAULT_PACKAGE, ParserGenerator.DEFAULT_CLASS);
+        final var directory = Files.createTempDirectory("parser");
+        final var file = directory.resolve(ParserGenerator.DEFAULT_CLASS + ".java");
+        Files.writeString(file, source);
+        final var compiler = ToolProvider.getSystemJavaCompiler();
+        assertEquals(0, compiler.run(null, null, null,
+            "-encoding", "UTF-8", "-cp", System.getProperty("java.class.path"), "-d", directory.toString(), file.toString()));
+
+        final var symbols = new SymbolTable();
+        final var tokens = tokens(SAMPLE, symbols);
+
+        final var expected = new TraceObserver();
+        final var tableDriven = new SyntaxAnalyzer(symbols);
+        tableDriven.loadTokens(tokens.iterator());
+        tableDriven.loadLRTable(table);
+        tableDriven.registerObserver(expected);
+        tableDriven.run();
+
+        final var actual = new TraceObserver();
+        try (final var loader = new URLClassLoader(new URL[]{directory.toUri().toURL()}, getClass().getClassLoader())) {
+            final var parserClass = loader.loadClass(ParserGenerator.DEFAULT_PACKAGE + "." + ParserGenerator.DEFAULT_CLASS);
+            final var parser = (DirectCodedParser) parserClass.getConstructor(SymbolTable.class).newInstance(symbols);
+            parser.loadTokens(tokens.iterator());
+            parser.registerObserver(actual);
+            parser.run();
+        }
+        assertEquals(expected.events, actual.events);
+        assertTrue(actual.events.get(actual.events.size() - 1).startsWith("accept"));
+        // 生成的分析器通知的状态带有与 LR 分析表相同的 ACTION 与 GOTO 表项
+        assertEquals(expected.statuses.size(), actual.statuses.size());
+        for (int i = 0; i < actual.statuses.size(); i++) {
+            final var expectedStatus = expected.statuses.get(i);
+            final var actualStatus = actual.statuses.get(i);
+            for (final var terminal : table.getTerminals()) {
+                assertEquals(expectedStatus.getAction(terminal), actualStatus.getAction(terminal));
+            }
+            for (final var nonTerminal : table.getNonTerminals()) {
+                assertEquals(expectedStatus.getGoto(nonTerminal), actualStatus.getGoto(nonTerminal));
+            }
+        }
+        assertTrue(actual.statuses.stream().anyMatch(status -> !status.action().isEmpty() && !status.goto_().isEmpty()));
+    }
+
+    /**
+     * 从形如 {@code A -> B c} 的文本构造产生式, 未登记为终结符的名字都视为非终结符
+     */
+    private static List<Production> grammar(String... lines) {
+        final var nonTerminals = new java.util.HashMap<String, NonTerminal>();
+        final var productions = new ArrayList<Production>();
+        for (final var line : lines) {
+            final var words = line.split(" -> ");
+            final var body = new ArrayList<Term>();
+            for (final var name : words[1].split(" ")) {
+                body.add(TokenKind.isAllowed(name) ? TokenKind.fromString(name) : nonTerminals.computeIfAbsent(name, NonTerminal::new));
+            }
+            productions.add(new Production(productions.size() + 1, nonTerminals.computeIfAbsent(words[0], NonTerminal::new), body));
+        }
+        return productions;
+    }
+
+    private static LRTable generate(List<Production> productions, TableGenerator.Mode mode) {
+        final var generator = new TableGenerator(productions, mode);
+        generator.run();
+        return generator.getTable();
+    }
+
+    @Test
+    public void tableGeneratorTest() {
+        final var table = loadTable();
+        final var tokens = tokens(SAMPLE, new SymbolTable());
+        final var expected = reductions(table, tokens);
+        for (final var mode : TableGenerator.Mode.values()) {
+            final var generated = generate(GrammarInfo.getProductionsInOrder(), mode);
+            assertEquals(expected, reductions(generated, tokens), mode.toString());
+        }
+        // LR1_table.csv 是规范 LR(1) 分析表, LALR(1) 合并了其中同心的状态
+        assertEquals(table.getStatuses().size(),
+            generate(GrammarInfo.getProductionsInOrder(), TableGenerator.Mode.LR1).getStatuses().size());
+        assertTrue(generate(GrammarInfo.getProductionsInOrder(), TableGenerator.Mode.LALR).getStatuses().size()
+            < table.getStatuses().size());
+
+        // S -> L = R | R, L -> * R | id, R -> L 是 LALR(1) 但不是 SLR(1) 的
+        final var assignments = grammar("S' -> S", "S -> L = R", "S -> R", "L -> * R", "L -> id", "R -> L");
+        assertThrows(RuntimeException.class, () -> generate(assignments, TableGenerator.Mode.SLR));
+        generate(assignments, TableGenerator.Mode.LALR);
+
+        // S -> a A d | b B d | a B e | b A e, A -> c, B -> c 是 LR(1) 但不是 LALR(1) 的
+        final var merged = grammar("S' -> S", "S -> int A Semicolon", "S -> return B Semicolon",
+            "S -> int B IntConst", "S -> return A IntConst", "A -> id", "B -> id");
+        assertThrows(RuntimeException.class, () -> generate(merged, TableGenerator.Mode.LALR));
+        final var canonical = generate(merged, TableGenerator.Mode.LR1);
+        final var input = List.of(Token.simple("return"), Token.normal("id", "c"), Token.normal("IntConst", "1"), Token.eof());
+        assertEquals(List.of("A -> id", "S -> return A IntConst", "accept"), reductions(canonical, input));
+    }
+
+    @Test
+    public void grammarAnalysisTest() {
+        loadTable();
+        final var analysis = new GrammarAnalysis();
+        final var kinds = (java.util.function.Function<String, Set<TokenKind>>) words ->
+            Arrays.stream(words.split(" ")).map(TokenKind::fromString).collect(Collectors.toSet());
+        assertEquals(kinds.apply("( id IntConst"), analysis.getFirst(GrammarInfo.getNonTerminal("E")));
+        assertEquals(kinds.apply("+ - ) Semicolon"), analysis.getFollow(GrammarInfo.getNonTerminal("E")));
+        assertEquals(kinds.apply("$"), analysis.getFollow(GrammarInfo.getNonTerminal("S_list")));
+
+        // S -> A B id, A -> ε | int, B -> ε | return
+        final var s = new NonTerminal("S");
+        final var a = new NonTerminal("A");
+        final var b = new NonTerminal("B");
+        final var id = TokenKind.fromString("id");
+        final var productions = List.of(
+            new Production(1, new NonTerminal("S'"), List.of(s)),
+            new Production(2, s, List.of(a, b, id)),
+            new Production(3, a, List.of()),
+            new Production(4, a, List.of(TokenKind.fromString("int"))),
+            new Production(5, b, List.of()),
+            new Production(6, b, List.of(TokenKind.fromString("return"))));
+        final var nullable = new GrammarAnalysis(productions);
+        assertTrue(nullable.isNullable(a) && nullable.isNullable(b) && !nullable.isNullable(s));
+        assertEquals(kinds.apply("int return id"), nullable.getFirst(s));
+        assertEquals(kinds.apply("return id"), nullable.getFollow(a));
+        assertEquals(kinds.apply("id"), nullable.getFollow(b));
+        assertEquals(List.of("A -> ", "B -> ", "S -> A B id", "accept"),
+            reductions(generate(productions, TableGenerator.Mode.LALR), List.of(Token.normal("id", "x"), Token.eof())));
+    }
+
+    @Test
+    public void tableOptimizerTest() {
+        final var table = loadTable();
+        final var optimized = TableOptimizer.optimize(table);
+        assertTrue(optimized.getStatuses().size() < table.getStatuses().size());
+        final var compiled = TableOptimizer.compile(table);
+        assertTrue(compiled.getPackedSize() < CompiledLRTable.compile(table).getPackedSize());
+
+        final var tokens = tokens(SAMPLE, new SymbolTable());
+        final var expected = reductions(table, tokens);
+        assertEquals(expected, reductions(optimized, tokens));
+        assertEquals(expected, compiledReductions(compiled, tokens));
+
+        // A -> B 所在的状态只有默认规约, 可以略过; E -> A 所在的状态还要移入 *, 不会被合并
+        final var skippable = new boolean[compiled.getProductionLimit()];
+        skippable[GrammarInfo.getProductionByText("E -> A").index()] = true;
+        skippable[GrammarInfo.getProductionByText("A -> B").index()] = true;
+        assertEquals(expected.stream().filter(p -> !p.equals("A -> B")).toList(),
+            compiledReductions(compiled.collapseUnitChains(skippable), tokens));
+
+        // 不关心单产生式的观察者看到的是去掉了单产生式的规约序列
+        final var withoutUnits = compiledReductions(compiled, tokens,
+            production -> !(production.body().size() == 1 && production.body().get(0) instanceof NonTerminal));
+        assertEquals(expected.stream().filter(p -> !p.equals("A -> B") && !p.equals("E -> A")).toList(), withoutUnits);
+    }
+
+    private static List<String> compiledReductions(CompiledLRTable table, List<Token> tokens) {
+        return compiledReductions(table, tokens, production -> true);
+    }
+
+    /**
+     * 以驱动程序在编译后的表上分析
+     *
+     * @param interest 观察者关心的产生式
+     * @return 观察者收到的规约出的产生式, 接受时记为 accept
+     */
+    private static List<String> compiledReductions(CompiledLRTable table, List<Token> tokens, Predicate<Production> interest) {
+        final var observer = new ReductionObserver(interest);
+        final var parser = new SyntaxAnalyzer(new SymbolTable());
+        parser.loadTokens(tokens.iterator());
+        parser.loadLRTable(table);
+        parser.registerObserver(observer);
+        parser.run();
+        return observer.reductions;
+    }
+
+    /**
+     * 直接按 LR 分析表 (而不是编译后的表, 它只认识 grammar.txt 中的产生式) 进行分析
+     *
+     * @return 分析过程中依次规约的产生式, 接受时记为 accept
+     */
+    private static List<String> reductions(LRTable table, List<Token> tokens) {
+        final var result = new ArrayList<String>();
+        final var stack = new ArrayList<Status>();
+        stack.add(table.getInit());
+        var position = 0;
+        while (true) {
+            final var action = table.getAction(stack.get(stack.size() - 1), tokens.get(position));
+            switch (action.getKind()) {
+                case Shift -> {
+                    stack.add(action.getStatus());
+                    position++;
+                }
+                case Reduce -> {
+                    final var production = action.getProduction();
+                    stack.subList(stack.size() - production.body().size(), stack.size()).clear();
+                    stack.add(table.getGoto(stack.get(stack.size() - 1), production.head()));
+                    result.add(production.toString());
+                }
+                case Accept -> {
+                    result.add("accept");
+                    return result;
+                }
+                case Error -> {
+                    result.add("error");
+                    return result;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,213 @@
+package cn.edu.hitsz.compiler.parser;
+
+import cn.edu.hitsz.compiler.lexer.LexicalAnalyzer;
+import cn.edu.hitsz.compiler.lexer.Token;
+import cn.edu.hitsz.compiler.lexer.TokenBuffer;
+import cn.edu.hitsz.compiler.lexer.TokenKind;
+import cn.edu.hitsz.compiler.parser.table.CompiledLRTable;
+import cn.edu.hitsz.compiler.parser.table.GrammarInfo;
+import cn.edu.hitsz.compiler.parser.table.Production;
+import cn.edu.hitsz.compiler.parser.table.Status;
+import cn.edu.hitsz.compiler.parser.table.TableLoader;
+import cn.edu.hitsz.compiler.symtab.SymbolTable;
+import cn.edu.hitsz.compiler.utils.FilePathConfig;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SyntaxAnalyzerTests {
+    private static final int TINY_CHUNK_SIZE = 8;
+    private static final int TINY_RING_SIZE = 4;
+
+    private static CompiledLRTable loadTable() {
+        if (TokenKind.allAllowedTokenKinds().isEmpty()) {
+            TokenKind.loadTokenKinds();
+        }
+        return CompiledLRTable.compile(new TableLoader().load(FilePathConfig.LR1_TABLE_PATH));
+    }
+
+    /**
+     * @param errorAt 在第几条语句处写入语法错误, 为负数时程序没有错误
+     */
+    private static String program(int statements, int errorAt) {
+        final var builder = new StringBuilder();
+        for (int i = 0; i < statements; i++) {
+            builder.append("int v").append(i).append(";\n");
+            if (i == errorAt) {
+                builder.append("v").append(i).append(" = (v0 + ;\n");
+            } else {
+                builder.append("v").append(i).append(" = (v").append(i / 2).append(" + ").append(i).append(") * v0 - 3;\n");
+            }
+        }
+        return builder.append("return v").append(statements - 1).append(";").toString();
+    }
+
+    private static TokenBuffer lex(Path file, SymbolTable symbols) {
+        final var lexer = new LexicalAnalyzer(symbols);
+        lexer.loadFile(file.toString());
+        lexer.run();
+        return lexer.getTokenBuffer();
+    }
+
+    /**
+     * 以产生式收集器, 语义分析器与 IR 生成器分析文件
+     *
+     * @return 规约出的产生式, 之后是生成的 IR 与符号表中各条目的类型
+     */
+    private static List<String> parse(Path file, CompiledLRTable table, boolean parallel) throws IOException {
+        final var symbols = new SymbolTable();
+        final var tokens = lex(file, symbols);
+
+        final var collector = new ProductionCollector(GrammarInfo.getBeginProduction());
+        final var irGenerator = new IRGenerator();
+        final var parser = new SyntaxAnalyzer(symbols);
+        parser.loadTokens(tokens);
+        parser.loadLRTable(table);
+        parser.registerObserver(collector);
+        parser.registerObserver(new SemanticAnalyzer());
+        parser.registerObserver(irGenerator);
+        parser.run(parallel, TINY_CHUNK_SIZE);
+
+        final var dump = Files.createTempFile("parser_list", ".txt");
+        try {
+            collector.dumpToFile(dump.toString());
+            final var result = new ArrayList<>(Files.readAllLines(dump));
+            result.add(irGenerator.getIR().toString());
+            for (int id = 0; id < symbols.size(); id++) {
+                result.add(symbols.get(id).getText() + ": " + symbols.get(id).getType());
+            }
+            return result;
+        } finally {
+            Files.delete(dump);
+        }
+    }
+
+    /**
+     * 以文本记录收到的事件的观察者, 可以在收到第 failAt 个事件时抛出异常
+     */
+    private static class RecordingObserver implements ActionObserver {
+        private final List<String> events = new ArrayList<>();
+        private final Set<Thread> threads = ConcurrentHashMap.newKeySet();
+        private final int failAt;
+
+        RecordingObserver(int failAt) {
+            this.failAt = failAt;
+        }
+
+        private void record(String event) {
+            threads.add(Thread.currentThread());
+            if (events.size() == failAt) {
+                throw new RuntimeException("Observer failed at event #" + failAt);
+            }
+            events.add(event);
+        }
+
+        @Override
+        public void whenShift(Status currentStatus, Token currentToken) {
+            record("shift %s %s".formatted(currentStatus, currentToken));
+        }
+
+        @Override
+        public void whenReduce(Status currentStatus, Production production) {
+            record("reduce %s %s".formatted(currentStatus, production));
+        }
+
+        @Override
+        public void whenAccept(Status currentStatus) {
+            record("accept " + currentStatus);
+        }
+
+        @Override
+        public void setSymbolTable(SymbolTable table) {
+        }
+    }
+
+    /**
+     * @return 各观察者收到的事件
+     */
+    private static List<List<String>> observe(Path file, CompiledLRTable table, boolean concurrent, RecordingObserver... observers) {
+        final var symbols = new SymbolTable();
+        final var parser = new SyntaxAnalyzer(symbols);
+        parser.loadTokens(lex(file, symbols));
+        parser.loadLRTable(table);
+        for (final var observer : observers) {
+            parser.registerObserver(observer);
+        }
+        try {
+            parser.run(false, TINY_CHUNK_SIZE, concurrent, TINY_RING_SIZE);
+        } finally {
+            // 无论分析如何结束, 观察者线程都已汇合
+            for (final var observer : observers) {
+                assertTrue(!concurrent || observer.threads.stream().noneMatch(Thread::isAlive));
+            }
+        }
+        return Arrays.stream(observers).map(observer -> observer.events).toList();
+    }
+
+    @Test
+    public void concurrentObserversTest() throws IOException {
+        final var table = loadTable();
+        final var file = Files.createTempFile("concurrent", ".txt");
+        try {
+            // 事件数远多于环形缓冲区的容量, 生产者需要反复等待最慢的消费者
+            Files.writeString(file, program(50, -1), StandardCharsets.US_ASCII);
+            final var expected = observe(file, table, false, new RecordingObserver(-1), new RecordingObserver(-1));
+            assertTrue(expected.get(0).size() > 100 * TINY_RING_SIZE);
+            final var observer = new RecordingObserver(-1);
+            final var actual = assertTimeoutPreemptively(Duration.ofSeconds(30),
+                () -> observe(file, table, true, observer, new RecordingObserver(-1)));
+            assertEquals(expected, actual);
+            assertTrue(observer.threads.stream().allMatch(thread -> thread.getName().startsWith("observer-")));
+
+            // 分析出错时观察者收到出错之前的全部事件
+            Files.writeString(file, program(50, 30), StandardCharsets.US_ASCII);
+            final var failed = observe(file, table, false, new RecordingObserver(-1));
+            assertEquals(failed, assertTimeoutPreemptively(Duration.ofSeconds(30),
+                () -> observe(file, table, true, new RecordingObserver(-1))));
+
+            // 某个观察者抛出异常时, 其余观察者照常消费完全部事件, 异常在汇合后由驱动程序抛出
+            final var sibling = new RecordingObserver(-1);
+            final var thrown = assertTimeoutPreemptively(Duration.ofSeconds(30), () -> assertThrows(RuntimeException.class,
+                () -> observe(file, table, true, new RecordingObserver(20), sibling)));
+            assertEquals("Observer failed at event #20", thrown.getMessage());
+            assertEquals(failed.get(0), sibling.events);
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void parallelParseTest() throws IOException {
+        final var table = loadTable();
+        final var file = Files.createTempFile("parallel", ".txt");
+        try {
+            // 各块只有一两条语句, 所有语句之间的拼接都会被覆盖到
+            Files.writeString(file, program(200, -1), StandardCharsets.US_ASCII);
+            final var expected = parse(file, table, false);
+            assertTrue(expected.contains(GrammarInfo.getBeginProduction().toString()));
+            assertEquals(expected, parse(file, table, true));
+
+            // 某一块出错时从该块开始改为顺序分析, 观察者收到的事件与顺序分析时相同
+            Files.writeString(file, program(200, 120), StandardCharsets.US_ASCII);
+            final var failed = parse(file, table, false);
+            assertTrue(!failed.contains(GrammarInfo.getBeginProduction().toString()));
+            assertEquals(failed, parse(file, table, true));
+        } finally {
+            Files.delete(file);
+        }
+    }
+}
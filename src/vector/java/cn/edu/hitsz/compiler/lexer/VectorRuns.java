@@ -0,0 +1,52 @@
+package cn.edu.hitsz.compiler.lexer;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * 基于 Vector API 越过连续段
+ * <br>
+ * 每次载入一整个向量的字节, 以 {@code c - lower <= upper - lower} (无符号比较) 判断是否落在各区间内并取并集.
+ * 该类位于单独的 vector 源集中, 是唯一以 {@code --add-modules jdk.incubator.vector} 编译的代码, 其余源集的编译不会因孵化模块而产生警告.
+ * {@link RunKernel} 在运行时以反射加载它, 该模块不可用 (运行时未加上同样的参数) 时退回逐字节查表.
+ *
+ * @author chiro
+ */
+final class VectorRuns {
+    private static final VectorSpecies<Byte> SPECIES = ByteVector.SPECIES_PREFERRED.length() > 32
+        ? ByteVector.SPECIES_256 : ByteVector.SPECIES_PREFERRED;
+
+    private VectorRuns() {
+    }
+
+    /**
+     * 以整个向量为单位越过全部落在区间内的字节
+     *
+     * @param bytes  字节
+     * @param lowers {@code RunKernel.MAX_RANGES} 个区间的下界
+     * @param spans  {@code RunKernel.MAX_RANGES} 个区间的跨度
+     * @param from   开始位置
+     * @param to     结束位置 (不含)
+     * @return 第一个含有区间外字节的向量的开始位置, 或剩余不足一个向量的开始位置
+     */
+    static int skip(ByteBuffer bytes, byte[] lowers, byte[] spans, int from, int to) {
+        final var width = SPECIES.length();
+        int i = from;
+        for (; i + width <= to; i += width) {
+            final var vector = ByteVector.fromByteBuffer(SPECIES, bytes, i, ByteOrder.nativeOrder());
+            final var in = vector.sub(lowers[0]).compare(VectorOperators.UNSIGNED_LE, spans[0])
+                .or(vector.sub(lowers[1]).compare(VectorOperators.UNSIGNED_LE, spans[1]))
+                .or(vector.sub(lowers[2]).compare(VectorOperators.UNSIGNED_LE, spans[2]))
+                .or(vector.sub(lowers[3]).compare(VectorOperators.UNSIGNED_LE, spans[3]));
+            // 查询掩码中第一个 false 的位置代价较高, 交给调用者逐字节判断
+            if (!in.allTrue()) {
+                break;
+            }
+        }
+        return i;
+    }
+}